@@ -0,0 +1,129 @@
+package org.dvle.java_cli;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+
+/**
+ * The commands and the lines used by the benchmarks.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class BenchmarkCommands {
+
+	/**
+	 * The types of the arguments, used in turn.
+	 */
+	private static final ArgumentValueType[] TYPES = { ArgumentValueType.STRING, ArgumentValueType.INTEGER,
+			ArgumentValueType.LONG, ArgumentValueType.DECIMAL, ArgumentValueType.BOOLEAN, ArgumentValueType.FILE_PATH };
+
+	/**
+	 * A command that does nothing, to measure the terminal.
+	 */
+	static final class NopCommand extends ParsedCommandDescription {
+
+		NopCommand(String name) {
+			super(name);
+		}
+
+		@Override
+		public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {
+			// nothing to do
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	}
+
+	private BenchmarkCommands() {
+	}
+
+	/**
+	 * Create a command with arguments of all the types.
+	 *
+	 * @param name          the name of the command
+	 * @param argumentCount the number of arguments
+	 * @return the command
+	 */
+	static CommandDescription command(String name, int argumentCount) {
+		CommandDescription cd = new NopCommand(name);
+
+		for (int i = 0; i < argumentCount; i++) {
+			cd.addArgument(new ArgumentDescription("argument" + i, TYPES[i % TYPES.length], false));
+		}
+
+		return cd;
+	}
+
+	/**
+	 * Create a registry of commands named cmd0, cmd1, ...
+	 *
+	 * @param commandCount  the number of commands
+	 * @param argumentCount the number of arguments of each command
+	 * @return the registry
+	 */
+	static CommandRegistry registry(int commandCount, int argumentCount) {
+		CommandRegistry registry = new CommandRegistry();
+
+		for (int i = 0; i < commandCount; i++) {
+			registry.addCommand(command("cmd" + i, argumentCount));
+		}
+
+		return registry;
+	}
+
+	/**
+	 * Create a line that sets all the arguments of a command. The string
+	 * arguments are padded to reach the length of the line, if possible.
+	 *
+	 * @param name          the name of the command
+	 * @param argumentCount the number of arguments
+	 * @param lineLength    the minimum length of the line
+	 * @return the line
+	 */
+	static String line(String name, int argumentCount, int lineLength) {
+		StringBuilder line = new StringBuilder(name);
+
+		for (int i = 0; i < argumentCount; i++) {
+			line.append(" --argument").append(i).append('=').append(value(TYPES[i % TYPES.length], i));
+		}
+
+		int missing = lineLength - line.length();
+		if (missing > 0 && argumentCount > 0) {
+			// the first argument is a string
+			int end = line.indexOf(" ", name.length() + 1);
+			StringBuilder padding = new StringBuilder(missing);
+			for (int i = 0; i < missing; i++) {
+				padding.append((char) ('a' + i % 26));
+			}
+			line.insert(end < 0 ? line.length() : end, padding);
+		}
+
+		return line.toString();
+	}
+
+	/**
+	 * Get a valid value of a type.
+	 *
+	 * @param type  the type
+	 * @param index the index of the argument
+	 * @return the value
+	 */
+	static String value(ArgumentValueType type, int index) {
+		switch (type) {
+		case INTEGER:
+			return Integer.toString(index * 1000 + 7);
+		case LONG:
+			return Long.toString(index * 10_000_000_000L + 7);
+		case DECIMAL:
+			return index + ".25";
+		case BOOLEAN:
+			return index % 2 == 0 ? "true" : "false";
+		case FILE_PATH:
+			return "/tmp/file" + index;
+		default:
+			return "value" + index;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package org.dvle.java_cli;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the readers of the lines of the interactive terminal over a
+ * file of generated commands: the {@link ChannelLineSource} of
+ * {@link Terminal#run()} against the {@link Scanner} it replaced, the
+ * {@link MappedLineSource} of {@link Terminal#runMappedScript(Path)}, and a
+ * {@link BufferedReader} for reference. The score is the time to read the
+ * whole file; the size is given in megabytes, use
+ * {@literal -p megabytes=1024} to read 1 GB.
+ *
+ * @author federicosilvestri
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+@State(Scope.Benchmark)
+public class LineReaderBenchmark {
+
+	@Param({ "64" })
+	int megabytes;
+
+	@Param({ "64" })
+	int lineLength;
+
+	private Path file;
+
+	@Setup
+	public void setUp() throws IOException {
+		file = Files.createTempFile("java-cli-lines", ".txt");
+		byte[] line = (BenchmarkCommands.line("cmd", 4, lineLength) + "\r\n").getBytes(StandardCharsets.UTF_8);
+		long size = (long) megabytes * 1024 * 1024;
+
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+			for (long written = 0; written < size; written += line.length) {
+				out.write(line);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public long channelLineSource() throws IOException {
+		long chars = 0;
+
+		try (ChannelLineSource source = new ChannelLineSource(Channels.newChannel(Files.newInputStream(file)),
+				StandardCharsets.UTF_8)) {
+			CharSequence line;
+			while ((line = source.nextLine()) != null) {
+				chars += line.length();
+			}
+		}
+
+		return chars;
+	}
+
+	@Benchmark
+	public long mappedLineSource() throws IOException {
+		long chars = 0;
+
+		try (MappedLineSource source = new MappedLineSource(file)) {
+			CharSequence line;
+			while ((line = source.nextLine()) != null) {
+				chars += line.length();
+			}
+		}
+
+		return chars;
+	}
+
+	@Benchmark
+	public long scanner() throws IOException {
+		long chars = 0;
+
+		try (InputStream in = Files.newInputStream(file); Scanner scanner = new Scanner(in, "UTF-8")) {
+			while (true) {
+				try {
+					chars += scanner.nextLine().length();
+				} catch (NoSuchElementException e) {
+					break;
+				}
+			}
+		}
+
+		return chars;
+	}
+
+	@Benchmark
+	public long bufferedReader() throws IOException {
+		long chars = 0;
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				chars += line.length();
+			}
+		}
+
+		return chars;
+	}
+}
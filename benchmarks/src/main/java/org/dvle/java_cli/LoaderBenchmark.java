@@ -0,0 +1,79 @@
+package org.dvle.java_cli;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link CommandLoader#loadFromPackage(String)}, reading the
+ * command index or scanning the package when the index is hidden. The classes
+ * are loaded by the first invocation, so this measures the warm path: reading
+ * the index or listing the package, and creating the commands.
+ *
+ * @author federicosilvestri
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoaderBenchmark {
+
+	private static final String PACKAGE = "org.dvle.java_cli.bench.commands";
+
+	@Param({ "index", "scan" })
+	String discovery;
+
+	private ClassLoader contextClassLoader;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+		if ("scan".equals(discovery)) {
+			Thread.currentThread().setContextClassLoader(new ClassLoader(contextClassLoader) {
+
+				@Override
+				public URL getResource(String name) {
+					return CommandIndexProcessor.INDEX_RESOURCE.equals(name) ? null : super.getResource(name);
+				}
+
+				@Override
+				public Enumeration<URL> getResources(String name) throws IOException {
+					return CommandIndexProcessor.INDEX_RESOURCE.equals(name) ? Collections.emptyEnumeration()
+							: super.getResources(name);
+				}
+			});
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Thread.currentThread().setContextClassLoader(contextClassLoader);
+	}
+
+	@Benchmark
+	public CommandRegistry loadFromPackage() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		new CommandLoader(registry).loadFromPackage(PACKAGE);
+		return registry;
+	}
+}
@@ -0,0 +1,94 @@
+package org.dvle.java_cli;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.fusesource.jansi.Ansi;
+import org.fusesource.jansi.Ansi.Color;
+import org.fusesource.jansi.AnsiConsole;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the output of a command that prints many rows, some of them
+ * colored, to a sink that is not a console: the stream of
+ * {@link TerminalOutputStream#wrap(PrintStream)} against the one of
+ * {@link AnsiConsole#wrapSystemOut(PrintStream)} it replaced. The score is the
+ * time to print the rows and flush them.
+ *
+ * @author federicosilvestri
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputBenchmark {
+
+	@Param({ "100000" })
+	int rows;
+
+	@Param({ "0", "10" })
+	int coloredPercent;
+
+	private String[] lines;
+
+	private PrintStream jansi;
+
+	private PrintStream terminal;
+
+	@Setup
+	public void setUp() {
+		lines = new String[100];
+		for (int i = 0; i < lines.length; i++) {
+			String row = BenchmarkCommands.line("row" + i, 4, 64);
+			lines[i] = i < coloredPercent ? Ansi.ansi().fg(Color.RED).a(row).reset().toString() : row;
+		}
+
+		OutputStream sink = new OutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				// discarded
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				// discarded
+			}
+		};
+		jansi = AnsiConsole.wrapSystemOut(new PrintStream(sink));
+		terminal = TerminalOutputStream.wrap(new PrintStream(sink));
+	}
+
+	@Benchmark
+	public PrintStream jansi() {
+		return print(jansi);
+	}
+
+	@Benchmark
+	public PrintStream terminalOutputStream() {
+		return print(terminal);
+	}
+
+	private PrintStream print(PrintStream out) {
+		for (int i = 0; i < rows; i++) {
+			out.println(lines[i % lines.length]);
+		}
+		out.flush();
+		return out;
+	}
+}
@@ -0,0 +1,111 @@
+package org.dvle.java_cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the stages of the parsing of a line. The tokenizer replaced
+ * the old extractCommand and extractArguments methods, so these stages are
+ * measured on {@link LineTokenizer}:
+ * <ul>
+ * <li>extractCommand: tokenize the line and search the command</li>
+ * <li>extractArguments: tokenize the line and search the arguments</li>
+ * <li>parseArguments: detect the command and convert the values of the
+ * arguments</li>
+ * <li>executeLine: parse the line and execute the command</li>
+ * </ul>
+ *
+ * @author federicosilvestri
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+	@Param({ "1", "8", "32" })
+	int argumentCount;
+
+	@Param({ "10", "1000" })
+	int commandCount;
+
+	@Param({ "32", "256" })
+	int lineLength;
+
+	private Terminal terminal;
+
+	private NameTable<CommandDescription> commandTable;
+
+	private NameTable<ArgumentDescription> argumentTable;
+
+	private LineContext context;
+
+	private LineTokenizer tokenizer;
+
+	private String line;
+
+	@Setup
+	public void setUp() {
+		CommandRegistry registry = BenchmarkCommands.registry(commandCount, argumentCount);
+		PrintStream out = new PrintStream(new OutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				// discarded
+			}
+		});
+		terminal = new Terminal(new ByteArrayInputStream(new byte[0]), out, ExitCommandDescription.DEFAULT, registry,
+				false);
+		terminal.freeze();
+
+		String name = "cmd" + (commandCount / 2);
+		commandTable = registry.getTable();
+		argumentTable = registry.getCommand(name).getArgumentTable();
+		context = new LineContext(out);
+		tokenizer = new LineTokenizer();
+		line = BenchmarkCommands.line(name, argumentCount, lineLength);
+	}
+
+	@Benchmark
+	public CommandDescription extractCommand() throws CommandSyntaxError {
+		tokenizer.tokenize(line);
+		return tokenizer.lookupCommand(commandTable);
+	}
+
+	@Benchmark
+	public void extractArguments(Blackhole blackhole) throws CommandSyntaxError {
+		tokenizer.tokenize(line);
+		for (int i = 0; i < tokenizer.argumentCount(); i++) {
+			blackhole.consume(tokenizer.lookupArgument(i, argumentTable));
+		}
+	}
+
+	@Benchmark
+	public CommandInvocation parseArguments() throws CommandSyntaxError, ArgumentParseException {
+		return terminal.detectCommand(line, line.length(), context);
+	}
+
+	@Benchmark
+	public boolean executeLine() {
+		return terminal.executeLine(line, context);
+	}
+}
@@ -0,0 +1,67 @@
+package org.dvle.java_cli;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the conversion of a value for each type, through the public
+ * {@link ArgumentDescription#parseValue(String)} that returns an object, and
+ * through the tokenizer that stores primitives in {@link ParsedArguments}.
+ *
+ * @author federicosilvestri
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseValueBenchmark {
+
+	@Param({ "STRING", "INTEGER", "LONG", "DECIMAL", "BOOLEAN", "FILE_PATH" })
+	ArgumentValueType type;
+
+	private ArgumentDescription description;
+
+	private String value;
+
+	private LineTokenizer tokenizer;
+
+	private ParsedArguments arguments;
+
+	@Setup
+	public void setUp() throws CommandSyntaxError {
+		description = new ArgumentDescription("argument", type, false);
+		value = BenchmarkCommands.value(type, 42);
+
+		CommandDescription command = new BenchmarkCommands.NopCommand("cmd");
+		command.addArgument(description);
+		arguments = new ParsedArguments(command.getArgumentTable());
+		tokenizer = new LineTokenizer();
+		tokenizer.tokenize("cmd --argument=" + value);
+	}
+
+	@Benchmark
+	public Object parseValue() throws ArgumentParseException {
+		return description.parseValue(value);
+	}
+
+	@Benchmark
+	public ParsedArguments parseArgumentValue() throws ArgumentParseException {
+		tokenizer.parseArgumentValue(0, description, arguments, 0);
+		return arguments;
+	}
+}
@@ -0,0 +1,123 @@
+package org.dvle.java_cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of the time spent by a command to send an event to a slow
+ * listener: synchronously, or through a {@link CommandEventBus} that blocks
+ * the command or drops the event when it is full.
+ *
+ * @author federicosilvestri
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropagateBenchmark {
+
+	/**
+	 * How the events are delivered: sync, block or drop.
+	 */
+	@Param({ "sync", "block", "drop" })
+	String delivery;
+
+	/**
+	 * The work of the listener for each event, in JMH tokens.
+	 */
+	@Param({ "0", "1000" })
+	int listenerWork;
+
+	private Terminal terminal;
+
+	private LineContext context;
+
+	private CommandEventBus bus;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		PrintStream output = new PrintStream(new OutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				// discarded
+			}
+		});
+		InputStream input = new InputStream() {
+
+			@Override
+			public int read() throws IOException {
+				return -1;
+			}
+		};
+
+		terminal = new Terminal(input, output, ExitCommandDescription.DEFAULT, new CommandRegistry(), false);
+		terminal.addCommand(new ParsedCommandDescription("send") {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {
+				exe.sendCommandToHandlers(null);
+			}
+
+			@Override
+			public boolean isThreadSafe() {
+				return true;
+			}
+		});
+		terminal.addListener(new CommandListener() {
+
+			@Override
+			public void commandRequest(CommandEvent cmdEvt) {
+				Blackhole.consumeCPU(listenerWork);
+			}
+
+			@Override
+			public void stopRequest(CommandEvent cmdEvt) {
+			}
+		});
+
+		if (!delivery.equals("sync")) {
+			bus = terminal.enableEventBus(1024, CommandEventBus.WaitStrategy.YIELD,
+					delivery.equals("block") ? CommandEventBus.OverflowPolicy.BLOCK
+							: CommandEventBus.OverflowPolicy.DROP);
+		}
+
+		context = new LineContext(output);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		terminal.disableEventBus();
+
+		if (bus != null) {
+			System.out.println();
+			System.out.println("published " + bus.getPublishedCount() + ", dropped " + bus.getDroppedCount());
+		}
+	}
+
+	@Benchmark
+	public boolean send() {
+		return terminal.executeLine("send", context);
+	}
+}
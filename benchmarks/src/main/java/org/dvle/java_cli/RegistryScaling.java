@@ -0,0 +1,393 @@
+package org.dvle.java_cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This program measures how the library scales with the size of the registry,
+ * on synthetic commands generated by {@link SyntheticCommands}. For each number
+ * of commands it measures:
+ * <ul>
+ * <li>the discovery time of {@link CommandLoader#loadFromPackage(String)} from
+ * a directory and from a jar, with the command index and scanning, each time
+ * in a new class loader so the classes are loaded cold</li>
+ * <li>the heap retained by the commands and their name tables, when the tables
+ * are built by the first lines and when they are built by
+ * {@link CommandRegistry#freeze()}: the tables are the same, so the two should
+ * be equal</li>
+ * <li>the average latency of a line dispatched to a random command, before and
+ * after {@link CommandRegistry#freeze()}</li>
+ * </ul>
+ *
+ * Then it flags super-linear behaviour: time and heap per command, and latency
+ * per line, should not grow with the number of commands. The exit status is 1
+ * if something is flagged.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar org.dvle.java_cli.RegistryScaling [sizes] [arguments] [directory]
+ * java -cp target/benchmarks.jar org.dvle.java_cli.RegistryScaling 1000,2000,5000,10000 50
+ * </pre>
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class RegistryScaling {
+
+	/**
+	 * The maximum growth exponent of the discovery time and of the heap, that
+	 * should be linear.
+	 */
+	private static final double LINEAR_EXPONENT = 1.2;
+
+	/**
+	 * The maximum growth exponent of the dispatch latency, that should be
+	 * constant. The processor caches make it grow with the size of the
+	 * registry, but much less than a linear search.
+	 */
+	private static final double CONSTANT_EXPONENT = 0.5;
+
+	/**
+	 * The number of arguments set by each dispatched line.
+	 */
+	private static final int LINE_ARGUMENTS = 3;
+
+	/**
+	 * The number of different lines dispatched.
+	 */
+	private static final int LINES = 4096;
+
+	/**
+	 * The number of lines dispatched before measuring.
+	 */
+	private static final int WARMUP_LINES = 300_000;
+
+	/**
+	 * The number of lines dispatched while measuring.
+	 */
+	private static final int MEASURED_LINES = 500_000;
+
+	/**
+	 * The objects kept alive while measuring the heap.
+	 */
+	private static Object retained;
+
+	/**
+	 * The measures of a number of commands.
+	 */
+	private static final class Result {
+
+		final int commands;
+
+		double directoryIndexMillis;
+
+		double directoryScanMillis;
+
+		double jarIndexMillis;
+
+		double jarScanMillis;
+
+		long heapBytes;
+
+		long frozenHeapBytes;
+
+		double dispatchNanos;
+
+		double frozenDispatchNanos;
+
+		Result(int commands) {
+			this.commands = commands;
+		}
+	}
+
+	private RegistryScaling() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] sizeArguments = (args.length > 0 ? args[0] : "1000,2000,5000,10000").split(",");
+		int argumentCount = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		Path directory = args.length > 2 ? Paths.get(args[2]) : Files.createTempDirectory("java-cli-scaling");
+
+		List<Result> results = new ArrayList<>();
+		for (String sizeArgument : sizeArguments) {
+			int size = Integer.parseInt(sizeArgument.trim());
+			Path sizeDirectory = directory.resolve(Integer.toString(size));
+
+			if (!Files.exists(sizeDirectory.resolve("commands.jar"))) {
+				long start = System.nanoTime();
+				SyntheticCommands.generate(sizeDirectory, size, argumentCount);
+				System.out.printf("generated %d commands with %d arguments in %.0f ms%n", size, argumentCount,
+						(System.nanoTime() - start) / 1e6);
+			}
+
+			results.add(measure(sizeDirectory, size, argumentCount));
+		}
+
+		print(results);
+		System.exit(analyze(results) ? 1 : 0);
+	}
+
+	/**
+	 * Measure a number of commands.
+	 *
+	 * @param directory     the directory of the generated commands
+	 * @param size          the number of commands
+	 * @param argumentCount the number of arguments of each command
+	 * @return the measures
+	 */
+	private static Result measure(Path directory, int size, int argumentCount) throws Exception {
+		Result result = new Result(size);
+		URL classes = directory.resolve("classes").toUri().toURL();
+		URL jar = directory.resolve("commands.jar").toUri().toURL();
+
+		Discovery discovery = discover(jar, false);
+		result.jarIndexMillis = discovery.millis;
+
+		if (discovery.registry.size() != size) {
+			throw new IllegalStateException("Found " + discovery.registry.size() + " commands instead of " + size);
+		}
+
+		// the classes are already loaded, so only the commands are measured
+		long before = usedHeap();
+		CommandRegistry frozen = load(discovery.classLoader);
+		retained = frozen;
+
+		// the tables that the first lines build, otherwise only freeze() would count them
+		frozen.getTable();
+		for (CommandDescription cd : frozen.getCommands()) {
+			cd.getArgumentTable();
+		}
+		result.heapBytes = usedHeap() - before;
+
+		frozen.freeze();
+		result.frozenHeapBytes = usedHeap() - before;
+		retained = null;
+
+		// the other class loaders are measured after the heap, since they are
+		// collected slowly
+		result.directoryIndexMillis = discover(classes, false).millis;
+		result.directoryScanMillis = discover(classes, true).millis;
+		result.jarScanMillis = discover(jar, true).millis;
+
+		result.dispatchNanos = dispatch(discovery.registry, size, argumentCount);
+		result.frozenDispatchNanos = dispatch(frozen, size, argumentCount);
+
+		return result;
+	}
+
+	/**
+	 * The result of a discovery.
+	 */
+	private static final class Discovery {
+
+		ClassLoader classLoader;
+
+		CommandRegistry registry;
+
+		double millis;
+	}
+
+	/**
+	 * Load the commands in a new class loader.
+	 *
+	 * @param location  the directory or the jar of the commands
+	 * @param hideIndex true to scan the package instead of reading the index
+	 * @return the discovery
+	 */
+	private static Discovery discover(URL location, boolean hideIndex) throws Exception {
+		Discovery discovery = new Discovery();
+		ClassLoader classLoader = new URLClassLoader(new URL[] { location }, RegistryScaling.class.getClassLoader());
+
+		if (hideIndex) {
+			classLoader = new ClassLoader(classLoader) {
+
+				@Override
+				public URL getResource(String name) {
+					return CommandIndexProcessor.INDEX_RESOURCE.equals(name) ? null : super.getResource(name);
+				}
+
+				@Override
+				public Enumeration<URL> getResources(String name) throws IOException {
+					return CommandIndexProcessor.INDEX_RESOURCE.equals(name) ? Collections.emptyEnumeration()
+							: super.getResources(name);
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		discovery.registry = load(classLoader);
+		discovery.millis = (System.nanoTime() - start) / 1e6;
+		discovery.classLoader = classLoader;
+
+		return discovery;
+	}
+
+	/**
+	 * Load the commands of a class loader in a new registry.
+	 *
+	 * @param classLoader the class loader
+	 * @return the registry
+	 */
+	private static CommandRegistry load(ClassLoader classLoader) throws Exception {
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(classLoader);
+		try {
+			CommandRegistry registry = new CommandRegistry();
+			new CommandLoader(registry).loadFromPackage(SyntheticCommands.PACKAGE);
+			return registry;
+		} finally {
+			Thread.currentThread().setContextClassLoader(contextClassLoader);
+		}
+	}
+
+	/**
+	 * Get the used heap after some collections, when it does not decrease
+	 * anymore: the objects freed by cleaners need more than one collection.
+	 *
+	 * @return the used heap in bytes
+	 */
+	private static long usedHeap() throws InterruptedException {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		long used = Long.MAX_VALUE;
+
+		for (int i = 0; i < 20; i++) {
+			System.gc();
+			Thread.sleep(50);
+
+			long current = memory.getHeapMemoryUsage().getUsed();
+			if (current >= used) {
+				break;
+			}
+			used = current;
+		}
+
+		return used;
+	}
+
+	/**
+	 * Measure the average latency of lines dispatched to random commands.
+	 *
+	 * @param registry      the registry
+	 * @param size          the number of commands
+	 * @param argumentCount the number of arguments of each command
+	 * @return the latency in nanoseconds
+	 */
+	private static double dispatch(CommandRegistry registry, int size, int argumentCount) {
+		PrintStream out = new PrintStream(new OutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				// discarded
+			}
+		});
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]), out, ExitCommandDescription.DEFAULT,
+				registry, false);
+		LineContext context = new LineContext(out);
+
+		Random random = new Random(42);
+		String[] lines = new String[LINES];
+		for (int i = 0; i < lines.length; i++) {
+			StringBuilder line = new StringBuilder("cmd").append(random.nextInt(size));
+			for (int j = 0; j < Math.min(LINE_ARGUMENTS, argumentCount); j++) {
+				line.append(" --").append(SyntheticCommands.argumentName(j)).append('=')
+						.append(BenchmarkCommands.value(SyntheticCommands.argumentType(j), j));
+			}
+			lines[i] = line.toString();
+		}
+
+		for (int i = 0; i < WARMUP_LINES; i++) {
+			if (!terminal.executeLine(lines[i % lines.length], context)) {
+				throw new IllegalStateException("Cannot execute " + lines[i % lines.length]);
+			}
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_LINES; i++) {
+			terminal.executeLine(lines[i % lines.length], context);
+		}
+		return (System.nanoTime() - start) / (double) MEASURED_LINES;
+	}
+
+	/**
+	 * Print the measures.
+	 *
+	 * @param results the measures
+	 */
+	private static void print(List<Result> results) {
+		System.out.printf("%n%9s %12s %12s %12s %12s %14s %14s %12s %12s%n", "commands", "dir index", "dir scan",
+				"jar index", "jar scan", "heap", "frozen heap", "dispatch", "frozen");
+		for (Result r : results) {
+			System.out.printf("%9d %9.0f ms %9.0f ms %9.0f ms %9.0f ms %11d KiB %11d KiB %9.0f ns %9.0f ns%n",
+					r.commands, r.directoryIndexMillis, r.directoryScanMillis, r.jarIndexMillis, r.jarScanMillis,
+					r.heapBytes / 1024, r.frozenHeapBytes / 1024, r.dispatchNanos, r.frozenDispatchNanos);
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Flag the measures that grow faster than expected between the smallest and
+	 * the largest number of commands.
+	 *
+	 * @param results the measures
+	 * @return true if something is flagged
+	 */
+	private static boolean analyze(List<Result> results) {
+		if (results.size() < 2) {
+			return false;
+		}
+
+		Result first = results.get(0);
+		Result last = results.get(results.size() - 1);
+		double sizes = (double) last.commands / first.commands;
+		boolean flagged = false;
+
+		flagged |= check("discovery from directory with index", first.directoryIndexMillis,
+				last.directoryIndexMillis, sizes, LINEAR_EXPONENT);
+		flagged |= check("discovery from directory by scan", first.directoryScanMillis, last.directoryScanMillis,
+				sizes, LINEAR_EXPONENT);
+		flagged |= check("discovery from jar with index", first.jarIndexMillis, last.jarIndexMillis, sizes,
+				LINEAR_EXPONENT);
+		flagged |= check("discovery from jar by scan", first.jarScanMillis, last.jarScanMillis, sizes,
+				LINEAR_EXPONENT);
+		flagged |= check("heap", first.heapBytes, last.heapBytes, sizes, LINEAR_EXPONENT);
+		flagged |= check("frozen heap", first.frozenHeapBytes, last.frozenHeapBytes, sizes, LINEAR_EXPONENT);
+		flagged |= check("dispatch latency", first.dispatchNanos, last.dispatchNanos, sizes, CONSTANT_EXPONENT);
+		flagged |= check("frozen dispatch latency", first.frozenDispatchNanos, last.frozenDispatchNanos, sizes,
+				CONSTANT_EXPONENT);
+
+		return flagged;
+	}
+
+	/**
+	 * Print the growth exponent of a measure, and flag it if it is too large.
+	 *
+	 * @param name        the name of the measure
+	 * @param first       the measure with the smallest number of commands
+	 * @param last        the measure with the largest number of commands
+	 * @param sizes       the ratio between the largest and the smallest number of
+	 *                    commands
+	 * @param maxExponent the maximum expected exponent
+	 * @return true if flagged
+	 */
+	private static boolean check(String name, double first, double last, double sizes, double maxExponent) {
+		double exponent = Math.log(last / first) / Math.log(sizes);
+		boolean flagged = exponent > maxExponent;
+
+		System.out.printf("%-40s grows as n^%.2f%s%n", name, exponent,
+				flagged ? "  FLAGGED, expected at most n^" + maxExponent : "");
+		return flagged;
+	}
+}
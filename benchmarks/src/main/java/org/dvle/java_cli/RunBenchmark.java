@@ -0,0 +1,89 @@
+package org.dvle.java_cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end benchmark of {@link Terminal#run()} over lines piped in its
+ * input, followed by the exit command. The score is the number of runs per
+ * second: multiply it by the number of lines for the lines per second.
+ *
+ * @author federicosilvestri
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RunBenchmark {
+
+	@Param({ "1000" })
+	int lines;
+
+	@Param({ "1", "8" })
+	int argumentCount;
+
+	@Param({ "10", "1000" })
+	int commandCount;
+
+	@Param({ "32", "256" })
+	int lineLength;
+
+	private CommandRegistry registry;
+
+	private byte[] input;
+
+	private PrintStream output;
+
+	@Setup
+	public void setUp() {
+		registry = BenchmarkCommands.registry(commandCount, argumentCount);
+		registry.freeze();
+
+		StringBuilder script = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			script.append(BenchmarkCommands.line("cmd" + (i % commandCount), argumentCount, lineLength)).append('\n');
+		}
+		script.append(ExitCommandDescription.DEFAULT.name).append('\n');
+		input = script.toString().getBytes(StandardCharsets.UTF_8);
+
+		output = new PrintStream(new OutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				// discarded
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				// discarded
+			}
+		});
+	}
+
+	@Benchmark
+	public Terminal run() {
+		Terminal terminal = new Terminal(new ByteArrayInputStream(input), output, ExitCommandDescription.DEFAULT,
+				registry, false);
+		terminal.run();
+		return terminal;
+	}
+}
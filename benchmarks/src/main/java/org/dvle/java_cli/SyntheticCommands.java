@@ -0,0 +1,169 @@
+package org.dvle.java_cli;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+
+/**
+ * This class generates synthetic command classes, named {@literal Cmd<i>Command}
+ * in the package {@value #PACKAGE}, with optional arguments of all the types.
+ * The classes are compiled with the command index processor in a directory of
+ * classes, that is then copied in a jar.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class SyntheticCommands {
+
+	/**
+	 * The package of the generated commands.
+	 */
+	static final String PACKAGE = "gen";
+
+	/**
+	 * The types of the arguments, used in turn.
+	 */
+	private static final ArgumentValueType[] TYPES = ArgumentValueType.values();
+
+	private SyntheticCommands() {
+	}
+
+	/**
+	 * Get the name of an argument.
+	 *
+	 * @param index the index of the argument
+	 * @return the name
+	 */
+	static String argumentName(int index) {
+		return "argument" + index;
+	}
+
+	/**
+	 * Get the type of an argument.
+	 *
+	 * @param index the index of the argument
+	 * @return the type
+	 */
+	static ArgumentValueType argumentType(int index) {
+		return TYPES[index % TYPES.length];
+	}
+
+	/**
+	 * Generate and compile the commands.
+	 *
+	 * @param directory     the directory where the sources, the classes
+	 *                      ({@literal classes}) and the jar
+	 *                      ({@literal commands.jar}) are written
+	 * @param commandCount  the number of commands
+	 * @param argumentCount the number of arguments of each command
+	 * @throws IOException if the files cannot be written or the compilation fails
+	 */
+	static void generate(Path directory, int commandCount, int argumentCount) throws IOException {
+		Path sources = directory.resolve("src").resolve(PACKAGE);
+		Path classes = directory.resolve("classes");
+		Files.createDirectories(sources);
+		Files.createDirectories(classes);
+
+		List<String> arguments = new ArrayList<>();
+		arguments.add("-implicit:none");
+		arguments.add("-cp");
+		arguments.add(System.getProperty("java.class.path"));
+		arguments.add("-d");
+		arguments.add(classes.toString());
+
+		for (int i = 0; i < commandCount; i++) {
+			Path source = sources.resolve("Cmd" + i + "Command.java");
+			try (Writer writer = Files.newBufferedWriter(source, StandardCharsets.UTF_8)) {
+				writer.write(source(i, argumentCount));
+			}
+			arguments.add(source.toString());
+		}
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IOException("The compiler is not available, run with a JDK");
+		}
+
+		if (compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])) != 0) {
+			throw new IOException("Cannot compile the synthetic commands");
+		}
+
+		writeJar(classes, directory.resolve("commands.jar"));
+	}
+
+	/**
+	 * Get the source of a command.
+	 *
+	 * @param index         the index of the command
+	 * @param argumentCount the number of arguments
+	 * @return the source
+	 */
+	private static String source(int index, int argumentCount) {
+		StringBuilder source = new StringBuilder();
+		source.append("package ").append(PACKAGE).append(";\n\n");
+		source.append("import org.dvle.java_cli.*;\n");
+		source.append("import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;\n\n");
+		source.append("public class Cmd").append(index).append("Command extends ParsedCommandDescription {\n");
+		source.append("\tpublic Cmd").append(index).append("Command() {\n");
+		source.append("\t\tsuper(\"cmd").append(index).append("\");\n");
+		for (int i = 0; i < argumentCount; i++) {
+			source.append("\t\taddArgument(new ArgumentDescription(\"").append(argumentName(i))
+					.append("\", ArgumentValueType.").append(argumentType(i)).append(", false));\n");
+		}
+		source.append("\t}\n\n");
+		source.append("\t@Override\n");
+		source.append("\tpublic void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {\n");
+		source.append("\t}\n\n");
+		source.append("\t@Override\n");
+		source.append("\tpublic boolean isThreadSafe() {\n");
+		source.append("\t\treturn true;\n");
+		source.append("\t}\n");
+		source.append("}\n");
+		return source.toString();
+	}
+
+	/**
+	 * Copy a directory of classes in a jar, with the entries of the directories.
+	 *
+	 * @param classes the directory of classes
+	 * @param jar     the jar
+	 * @throws IOException if the jar cannot be written
+	 */
+	private static void writeJar(Path classes, Path jar) throws IOException {
+		List<Path> files;
+		try (Stream<Path> stream = Files.walk(classes)) {
+			files = stream.sorted().collect(Collectors.toList());
+		}
+
+		try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out)) {
+			for (Path file : files) {
+				if (file.equals(classes)) {
+					continue;
+				}
+
+				String name = classes.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+				if (Files.isDirectory(file)) {
+					jarOut.putNextEntry(new JarEntry(name + "/"));
+				} else {
+					jarOut.putNextEntry(new JarEntry(name));
+					Files.copy(file, jarOut);
+				}
+				jarOut.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package org.dvle.java_cli.bench.commands;
+
+import org.dvle.java_cli.ArgumentDescription;
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.dvle.java_cli.ExecutionEnvironment;
+import org.dvle.java_cli.ParsedArguments;
+import org.dvle.java_cli.ParsedCommandDescription;
+
+/**
+ * A command loaded by the loader benchmark.
+ *
+ * @author federicosilvestri
+ *
+ */
+public class MoveCommand extends ParsedCommandDescription {
+
+	private final ArgumentDescription path;
+
+	public MoveCommand() {
+		super("move");
+		addArgument(new ArgumentDescription("verbose"));
+		path = new ArgumentDescription("path", ArgumentValueType.FILE_PATH, true);
+		addArgument(path);
+	}
+
+	@Override
+	public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {
+		exe.out.println(arguments.getFile(path));
+	}
+}
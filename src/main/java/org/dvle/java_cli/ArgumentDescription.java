@@ -155,4 +155,68 @@ public final class ArgumentDescription {
 		}
 	}
 
+	/**
+	 * Parse the value of the argument given by a region of a character sequence
+	 * and store it in a slot of parsed arguments. Integer, long and boolean values
+	 * are parsed directly on the sequence, without creating a string, and
+	 * primitive values are never boxed.
+	 * 
+	 * @param sequence the character sequence
+	 * @param from     start of the value (inclusive)
+	 * @param to       end of the value (exclusive)
+	 * @param target   the parsed arguments where the value is stored
+	 * @param slot     the slot of this argument
+	 * @throws ArgumentParseException in case of any error occurs during parsing
+	 */
+	void parseValue(CharSequence sequence, int from, int to, ParsedArguments target, int slot)
+			throws ArgumentParseException {
+		try {
+			switch (type) {
+			case INTEGER:
+				target.setPrimitive(slot, Integer.parseInt(sequence, from, to, 10));
+				break;
+			case LONG:
+				target.setPrimitive(slot, Long.parseLong(sequence, from, to, 10));
+				break;
+			case BOOLEAN:
+				target.setPrimitive(slot, parseBoolean(sequence, from, to) ? 1 : 0);
+				break;
+			case DECIMAL:
+				target.setDecimal(slot, Double.parseDouble(sequence.subSequence(from, to).toString()));
+				break;
+			default:
+				target.setObject(slot, parseValue(sequence.subSequence(from, to).toString()));
+				break;
+			}
+		} catch (NumberFormatException ex) {
+			// parse again the string to have the usual error message
+			parseValue(sequence.subSequence(from, to).toString());
+			throw new ArgumentParseException(ex.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Parse a boolean like {@link Boolean#parseBoolean(String)} does.
+	 * 
+	 * @param sequence the character sequence
+	 * @param from     start of the value (inclusive)
+	 * @param to       end of the value (exclusive)
+	 * @return true if the region is equal, ignoring case, to "true"
+	 */
+	private static boolean parseBoolean(CharSequence sequence, int from, int to) {
+		String expected = "true";
+
+		if (to - from != expected.length()) {
+			return false;
+		}
+
+		for (int i = 0; i < expected.length(); i++) {
+			if (Character.toLowerCase(sequence.charAt(from + i)) != expected.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 }
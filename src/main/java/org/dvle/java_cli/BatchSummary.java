@@ -0,0 +1,51 @@
+package org.dvle.java_cli;
+
+import java.time.Duration;
+
+/**
+ * This class represents the result of a non-interactive execution of the
+ * terminal, for example the execution of a script.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class BatchSummary {
+
+	/**
+	 * Number of commands executed without errors.
+	 */
+	public final long executed;
+
+	/**
+	 * Number of lines that failed, because of a syntax error, an unknown command
+	 * or an exception thrown by the command.
+	 */
+	public final long failed;
+
+	/**
+	 * Time spent to execute the whole batch.
+	 */
+	public final Duration elapsed;
+
+	/**
+	 * Create a new summary.
+	 *
+	 * @param executed number of commands executed without errors
+	 * @param failed   number of failed lines
+	 * @param elapsed  elapsed time
+	 */
+	BatchSummary(long executed, long failed, Duration elapsed) {
+		if (elapsed == null) {
+			throw new NullPointerException();
+		}
+
+		this.executed = executed;
+		this.failed = failed;
+		this.elapsed = elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "executed=" + executed + ", failed=" + failed + ", elapsed=" + elapsed.toMillis() + "ms";
+	}
+}
@@ -0,0 +1,105 @@
+package org.dvle.java_cli;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is a view of a region of a byte buffer as a sequence of
+ * characters, where each byte is a character. It is used to tokenize UTF-8
+ * lines without decoding them: all the characters that are meaningful for the
+ * terminal syntax are ASCII, and bytes of multi-byte UTF-8 characters are never
+ * in the ASCII range. Only {@link #toString()} decodes the bytes, so only the
+ * pieces of the line that are really needed become strings.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class ByteCharSequence implements CharSequence {
+
+	/**
+	 * The buffer that contains the bytes.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Start of the region (inclusive).
+	 */
+	private int start;
+
+	/**
+	 * End of the region (exclusive).
+	 */
+	private int end;
+
+	/**
+	 * Create an empty sequence.
+	 */
+	ByteCharSequence() {
+		this.buffer = null;
+		this.start = 0;
+		this.end = 0;
+	}
+
+	/**
+	 * Create a sequence over a region of a buffer.
+	 *
+	 * @param buffer the buffer
+	 * @param start  start of the region (inclusive)
+	 * @param end    end of the region (exclusive)
+	 */
+	ByteCharSequence(ByteBuffer buffer, int start, int end) {
+		set(buffer, start, end);
+	}
+
+	/**
+	 * Move this view on another region.
+	 *
+	 * @param buffer the buffer
+	 * @param start  start of the region (inclusive)
+	 * @param end    end of the region (exclusive)
+	 */
+	void set(ByteBuffer buffer, int start, int end) {
+		assert (buffer != null);
+		assert (start >= 0 && start <= end && end <= buffer.limit());
+
+		this.buffer = buffer;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - start) {
+			throw new IndexOutOfBoundsException("Index out of range: " + index);
+		}
+
+		return (char) (buffer.get(start + index) & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		if (from < 0 || from > to || to > end - start) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		return new ByteCharSequence(buffer, start + from, start + to);
+	}
+
+	/**
+	 * Decode the region as UTF-8.
+	 */
+	@Override
+	public String toString() {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
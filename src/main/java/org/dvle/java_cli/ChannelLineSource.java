@@ -0,0 +1,230 @@
+package org.dvle.java_cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This class reads the lines of a channel, for the interactive execution of
+ * the terminal. The bytes are read in a byte buffer and decoded in a char
+ * buffer, both allocated once, and the line is accumulated in an array that
+ * doubles when it is full: so a line costs no allocation in steady state and
+ * a very long line is copied a constant number of times per char. The byte
+ * buffer is not direct, because the decoders of the JDK are much faster on
+ * arrays than on direct buffers.
+ *
+ * Lines end with LF or CRLF, and the last line can be without terminator or
+ * with a CR only. At the end of the channel {@link #nextLine()} returns null.
+ * A read blocked on an interruptible channel, like the ones of
+ * {@link java.nio.channels.Channels#newChannel(java.io.InputStream)}, is
+ * stopped by interrupting the thread: the channel is closed and
+ * {@link java.nio.channels.ClosedByInterruptException} is thrown.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class ChannelLineSource implements LineSource, Closeable {
+
+	/**
+	 * Default size of the byte and char buffers.
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * Minimum size of the byte and char buffers, enough for the bytes of a char
+	 * and for a surrogate pair.
+	 */
+	private static final int MIN_BUFFER_SIZE = 8;
+
+	/**
+	 * The channel of the lines.
+	 */
+	private final ReadableByteChannel channel;
+
+	/**
+	 * The decoder of the bytes.
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * The bytes read and not decoded yet, ready to be written.
+	 */
+	private final ByteBuffer bytes;
+
+	/**
+	 * The chars decoded and not returned yet, ready to be read.
+	 */
+	private final CharBuffer chars;
+
+	/**
+	 * The chars of the current line.
+	 */
+	private char[] line;
+
+	/**
+	 * The view of the current line returned by {@link #nextLine()}.
+	 */
+	private CharBuffer lineView;
+
+	/**
+	 * True when the end of the channel has been read and decoded.
+	 */
+	private boolean endOfInput;
+
+	/**
+	 * Create a source with the default buffer size.
+	 *
+	 * @param channel the channel of the lines
+	 * @param charset the charset of the lines
+	 */
+	ChannelLineSource(ReadableByteChannel channel, Charset charset) {
+		this(channel, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a source.
+	 *
+	 * @param channel    the channel of the lines
+	 * @param charset    the charset of the lines
+	 * @param bufferSize the size of the byte and char buffers, at least 8
+	 */
+	ChannelLineSource(ReadableByteChannel channel, Charset charset, int bufferSize) {
+		if (channel == null || charset == null) {
+			throw new NullPointerException();
+		}
+
+		if (bufferSize < MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("Buffer size must be >= " + MIN_BUFFER_SIZE);
+		}
+
+		this.channel = channel;
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.bytes = ByteBuffer.allocate(bufferSize);
+		this.chars = CharBuffer.allocate(bufferSize);
+		this.chars.flip();
+		this.line = new char[128];
+		this.lineView = CharBuffer.wrap(line);
+		this.endOfInput = false;
+	}
+
+	@Override
+	public CharSequence nextLine() throws IOException {
+		int length = 0;
+		boolean started = false;
+
+		while (true) {
+			char[] decoded = chars.array();
+			int position = chars.position();
+			int limit = chars.limit();
+			int end = position;
+
+			while (end < limit && decoded[end] != '\n') {
+				end++;
+			}
+
+			int count = end - position;
+			if (count > 0 || end < limit) {
+				started = true;
+			}
+
+			if (length + count > line.length) {
+				grow(length + count);
+			}
+			System.arraycopy(decoded, position, line, length, count);
+			length += count;
+
+			if (end < limit) {
+				// skip the terminator, the CR of CRLF can be in the previous chunk
+				chars.position(end + 1);
+				if (length > 0 && line[length - 1] == '\r') {
+					length--;
+				}
+
+				return view(length);
+			}
+
+			chars.position(limit);
+			if (endOfInput) {
+				if (!started) {
+					return null;
+				}
+
+				// the last line can end with a CR without LF
+				if (length > 0 && line[length - 1] == '\r') {
+					length--;
+				}
+
+				return view(length);
+			}
+
+			fill();
+		}
+	}
+
+	/**
+	 * Get the view of the current line.
+	 *
+	 * @param length the length of the line
+	 * @return the view
+	 */
+	private CharSequence view(int length) {
+		lineView.clear();
+		lineView.limit(length);
+		return lineView;
+	}
+
+	/**
+	 * Grow the array of the line, doubling its size.
+	 *
+	 * @param minimum the minimum size
+	 */
+	private void grow(int minimum) {
+		if (minimum < 0) {
+			throw new OutOfMemoryError("Line too long");
+		}
+
+		// the double of a size larger than 1 GB overflows
+		int size = Math.max(line.length * 2, minimum);
+		char[] grown = new char[size];
+		System.arraycopy(line, 0, grown, 0, line.length);
+		line = grown;
+		lineView = CharBuffer.wrap(line);
+	}
+
+	/**
+	 * Read and decode new chars. The chars buffer must be empty.
+	 *
+	 * @throws IOException if the channel cannot be read
+	 */
+	private void fill() throws IOException {
+		chars.clear();
+
+		try {
+			while (chars.position() == 0 && !endOfInput) {
+				boolean end = channel.read(bytes) < 0;
+
+				bytes.flip();
+				CoderResult result = decoder.decode(bytes, chars, end);
+				bytes.compact();
+
+				if (end && result.isUnderflow() && decoder.flush(chars).isUnderflow()) {
+					endOfInput = true;
+				}
+			}
+		} finally {
+			chars.flip();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
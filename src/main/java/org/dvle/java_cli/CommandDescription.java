@@ -1,6 +1,6 @@
 package org.dvle.java_cli;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -12,6 +12,9 @@ import java.util.Map;
  * {@literal <ls , [-l,
  * -a, -R, /dev/null]>}
  * 
+ * Commands that read their arguments without boxing extend
+ * {@link ParsedCommandDescription}.
+ * 
  * @author federicosilvestri
  *
  */
@@ -22,14 +25,27 @@ public abstract class CommandDescription {
 	final String name;
 
 	/**
-	 * A map of argument-name, argument-description description.
+	 * The arguments in order of insertion. The position of an argument is its
+	 * slot in the invocations of this command.
+	 */
+	private final List<ArgumentDescription> argumentSlots;
+
+	/**
+	 * The table of arguments by name, built when needed.
+	 */
+	private volatile NameTable<ArgumentDescription> argumentTable;
+
+	/**
+	 * True if arguments cannot be added anymore.
 	 */
-	final Map<String, ArgumentDescription> arguments;
+	private volatile boolean frozen;
 
 	/**
-	 * A list of mandatory arguments.
+	 * The lock that serializes the executions of a command that is not thread
+	 * safe during the parallel execution of a script. It is not visible to the
+	 * commands, so their code cannot hold it.
 	 */
-	private final List<ArgumentDescription> mandatoryArguments;
+	final Object executionLock = new Object();
 
 	/**
 	 * Create a new description of a command.
@@ -44,33 +60,64 @@ public abstract class CommandDescription {
 		}
 
 		this.name = name;
-		this.arguments = new HashMap<>();
-		this.mandatoryArguments = new LinkedList<>();
+		this.argumentSlots = new ArrayList<>();
+		this.argumentTable = null;
+		this.frozen = false;
 	}
 
 	/**
 	 * Add an argument to this command.
 	 * 
 	 * @param ad an argument description, that must be != null
+	 * @throws IllegalStateException if the command is frozen
 	 */
 	public void addArgument(ArgumentDescription ad) {
 		if (ad == null) {
 			throw new NullPointerException();
 		}
 
-		if (arguments.containsValue(ad)) {
+		if (frozen) {
+			throw new IllegalStateException("The arguments of a frozen command cannot be changed");
+		}
+
+		if (argumentSlots.contains(ad)) {
 			throw new RuntimeException("You have already inserted this argument description!");
 		}
 
-		arguments.put(ad.name, ad);
+		argumentSlots.add(ad);
+		argumentTable = null;
+	}
+
+	/**
+	 * Build the table of the arguments and forbid the addition of other
+	 * arguments. It is called when the terminal that contains this command is
+	 * frozen.
+	 */
+	void freeze() {
+		getArgumentTable();
+		frozen = true;
+	}
 
-		/*
-		 * if command is mandatory add it to mandatory list, to speedup checking of
-		 * command validity.
-		 */
-		if (ad.mandatory) {
-			mandatoryArguments.add(ad);
+	/**
+	 * Get the table of the arguments of this command, where the index of each
+	 * argument is its slot.
+	 * 
+	 * @return the table of arguments
+	 */
+	NameTable<ArgumentDescription> getArgumentTable() {
+		NameTable<ArgumentDescription> table = argumentTable;
+
+		if (table == null) {
+			List<String> names = new ArrayList<>(argumentSlots.size());
+			for (ArgumentDescription ad : argumentSlots) {
+				names.add(ad.name);
+			}
+
+			table = new NameTable<>(names, argumentSlots);
+			argumentTable = table;
 		}
+
+		return table;
 	}
 
 	/**
@@ -80,8 +127,13 @@ public abstract class CommandDescription {
 	 *         CommandDescription
 	 */
 	public List<ArgumentDescription> getMandatoryArguments() {
-		LinkedList<ArgumentDescription> returnCopy;
-		returnCopy = new LinkedList<>(mandatoryArguments);
+		LinkedList<ArgumentDescription> returnCopy = new LinkedList<>();
+
+		for (ArgumentDescription ad : argumentSlots) {
+			if (ad.mandatory) {
+				returnCopy.add(ad);
+			}
+		}
 
 		return returnCopy;
 	}
@@ -105,9 +157,28 @@ public abstract class CommandDescription {
 		return false;
 	}
 
+	/**
+	 * Return true if {@link #runCommand(ParsedArguments, ExecutionEnvironment)} can be
+	 * executed by many threads at the same time, for example during the parallel
+	 * execution of a script, that never executes concurrently a command that is
+	 * not thread safe. The other ways of execution do not serialize the
+	 * commands: background jobs and the sessions of a {@link TerminalServer}
+	 * can execute the same command at the same time, without waiting for each
+	 * other. The default implementation returns false.
+	 * 
+	 * @return true if the command is thread safe
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
+
 	/**
 	 * Execute the command given the argument.
 	 * 
+	 * The map and the environment are reused by the next line executed by the
+	 * same thread, so they must not be kept after this call: a command that
+	 * passes its arguments to another thread must copy them.
+	 * 
 	 * @param arguments map between argument formal description and value. This
 	 *                  value can be null if command has no parameters.
 	 * @param exe       the execution environment of this command
@@ -115,4 +186,22 @@ public abstract class CommandDescription {
 	 */
 	public abstract void runCommand(Map<ArgumentDescription, Object> arguments, ExecutionEnvironment exe)
 			throws CommandExecutionException;
+
+	/**
+	 * Execute the command given the parsed arguments. This is the method called
+	 * by the terminal: the default implementation calls
+	 * {@link #runCommand(Map, ExecutionEnvironment)} with the map view of the
+	 * arguments, that boxes the primitive values when they are read.
+	 * 
+	 * The arguments are reused by the next line executed by the same thread, so
+	 * they must be copied with {@link ParsedArguments#copy()} to be kept after
+	 * this call.
+	 * 
+	 * @param arguments the parsed arguments, valid only during this call
+	 * @param exe       the execution environment of this command
+	 * @throws CommandExecutionException if the execution causes problems
+	 */
+	public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) throws CommandExecutionException {
+		runCommand(arguments.asMap(), exe);
+	}
 }
@@ -37,6 +37,16 @@ public final class CommandEvent {
 		this.data = null;
 	}
 
+	/**
+	 * Prepare the event for a new propagation, to reuse it.
+	 * 
+	 * @param data the data of the event
+	 */
+	void reuse(Object data) {
+		this.consumed = false;
+		this.data = data;
+	}
+
 	/**
 	 * Consume the event. If a event is consumed propagation will be stopped as soon
 	 * as possible.
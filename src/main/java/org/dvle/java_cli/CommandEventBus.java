@@ -0,0 +1,570 @@
+package org.dvle.java_cli;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class delivers the command events of a terminal to its listeners
+ * asynchronously, so a command does not wait for slow listeners. It is
+ * enabled with {@link Terminal#enableEventBus(int, WaitStrategy, OverflowPolicy)}.
+ *
+ * The events are written in a ring buffer of preallocated slots, by any number
+ * of command threads, and read by one thread that calls the listeners as
+ * {@link Terminal#propagateCommand(CommandEvent)} does: in order, until an
+ * event is consumed. The reader takes all the events available at once (a
+ * batch), calls {@link CommandListener#endOfBatch()} at the end and then
+ * releases the slots together.
+ *
+ * Each slot keeps its {@link CommandEvent} and a copy of the invocation of the
+ * command: the copy is reused while the slot receives the same command, so
+ * publishing an event does not allocate in steady state. When the buffer is
+ * full, the {@link OverflowPolicy} decides if the command waits for a free
+ * slot or if the event is dropped. The counters of published, delivered and
+ * dropped events and the lag of the reader can be read at any time.
+ *
+ * Any error thrown by a listener, also an {@link Error}, is counted as a
+ * failure and the event is delivered to the next listeners. If the reader
+ * stops anyway, the bus is closed, so the next events are dropped and no
+ * command waits for a slot that is never freed.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class CommandEventBus implements Closeable {
+
+	/**
+	 * How the threads wait for events or for free slots.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	public enum WaitStrategy {
+		/**
+		 * Spin on the processor: the lowest latency, but a processor is always
+		 * busy.
+		 */
+		BUSY_SPIN,
+
+		/**
+		 * Yield the processor to other threads between checks.
+		 */
+		YIELD,
+
+		/**
+		 * Sleep for a short time between checks.
+		 */
+		SLEEP,
+
+		/**
+		 * Block the reader until an event is published: the highest latency, but
+		 * no processor is used while there are no events.
+		 */
+		BLOCK
+	}
+
+	/**
+	 * What happens when an event is published and the buffer is full.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The command waits for a free slot, so the reader slows down the
+		 * commands. An interrupted command drops the event.
+		 */
+		BLOCK,
+
+		/**
+		 * The event is dropped and counted.
+		 */
+		DROP
+	}
+
+	/**
+	 * The time slept by the {@link WaitStrategy#SLEEP} strategy and by the
+	 * commands waiting for a free slot, in nanoseconds.
+	 */
+	private static final long SLEEP_NANOS = 50_000;
+
+	/**
+	 * The longest time the reader blocks without checking the buffer, in
+	 * nanoseconds.
+	 */
+	private static final long BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * The bit of the cursor set when the bus is closed, so no sequence number
+	 * can be claimed after the close.
+	 */
+	private static final long CLOSED = Long.MIN_VALUE;
+
+	/**
+	 * The listeners that receive the events.
+	 */
+	private final CommandListeners listeners;
+
+	/**
+	 * The slots of the buffer.
+	 */
+	private final Slot[] slots;
+
+	/**
+	 * The mask that gives the slot of a sequence number.
+	 */
+	private final int mask;
+
+	/**
+	 * The sequence number of the event published in each slot, -1 if none.
+	 */
+	private final AtomicLongArray published;
+
+	/**
+	 * The next sequence number to claim, with the {@link #CLOSED} bit when the
+	 * bus is closed.
+	 */
+	private final AtomicLong cursor;
+
+	/**
+	 * The number of events delivered, also the next sequence number to read.
+	 */
+	private final AtomicLong delivered;
+
+	/**
+	 * The number of dropped events.
+	 */
+	private final AtomicLong dropped;
+
+	/**
+	 * The number of listener errors.
+	 */
+	private final AtomicLong failures;
+
+	/**
+	 * How the threads wait.
+	 */
+	private final WaitStrategy waitStrategy;
+
+	/**
+	 * What happens when the buffer is full.
+	 */
+	private final OverflowPolicy overflowPolicy;
+
+	/**
+	 * The lock of the blocked reader.
+	 */
+	private final ReentrantLock lock;
+
+	/**
+	 * The condition signalled when an event is published to the blocked reader.
+	 */
+	private final Condition notEmpty;
+
+	/**
+	 * True while the reader is blocked, so the commands must signal it.
+	 */
+	private volatile boolean readerBlocked;
+
+	/**
+	 * The last error of a listener, null if none.
+	 */
+	private volatile Throwable lastFailure;
+
+	/**
+	 * The thread that reads the events.
+	 */
+	private final Thread thread;
+
+	/**
+	 * Create a bus and start its reader.
+	 *
+	 * @param listeners      the listeners that receive the events
+	 * @param capacity       the number of slots, a power of two
+	 * @param waitStrategy   how the threads wait
+	 * @param overflowPolicy what happens when the buffer is full
+	 */
+	CommandEventBus(CommandListeners listeners, int capacity, WaitStrategy waitStrategy,
+			OverflowPolicy overflowPolicy) {
+		if (listeners == null || waitStrategy == null || overflowPolicy == null) {
+			throw new NullPointerException();
+		}
+
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("The capacity must be a power of two");
+		}
+
+		this.listeners = listeners;
+		this.slots = new Slot[capacity];
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new Slot();
+		}
+		this.mask = capacity - 1;
+		this.published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			published.set(i, -1);
+		}
+		this.cursor = new AtomicLong();
+		this.delivered = new AtomicLong();
+		this.dropped = new AtomicLong();
+		this.failures = new AtomicLong();
+		this.waitStrategy = waitStrategy;
+		this.overflowPolicy = overflowPolicy;
+		this.lock = new ReentrantLock();
+		this.notEmpty = lock.newCondition();
+
+		this.thread = new Thread(this::read, "command-event-bus");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Publish an event of a command. The invocation is copied, so it can be
+	 * reused by the caller.
+	 *
+	 * @param invocation the invocation of the command
+	 * @param data       the data of the event
+	 * @param stop       true if the event is the exit command, delivered to
+	 *                   {@link CommandListener#stopRequest(CommandEvent)}
+	 * @return true if the event is published, false if it is dropped
+	 */
+	boolean publish(CommandInvocation invocation, Object data, boolean stop) {
+		long sequence = claim();
+		if (sequence < 0) {
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		slots[(int) sequence & mask].fill(invocation, data, stop);
+		published.set((int) sequence & mask, sequence);
+
+		if (readerBlocked) {
+			lock.lock();
+			try {
+				notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Claim the sequence number of a new event.
+	 *
+	 * @return the sequence number, -1 if the event must be dropped
+	 */
+	private long claim() {
+		int capacity = slots.length;
+
+		while (true) {
+			long sequence = cursor.get();
+
+			if (sequence < 0) {
+				// the bus is closed
+				return -1;
+			}
+
+			if (sequence - delivered.get() >= capacity) {
+				// the buffer is full
+				if (overflowPolicy == OverflowPolicy.DROP || Thread.currentThread().isInterrupted()) {
+					return -1;
+				}
+
+				waitForSpace();
+			} else if (cursor.compareAndSet(sequence, sequence + 1)) {
+				return sequence;
+			}
+		}
+	}
+
+	/**
+	 * Wait for a free slot, according to the wait strategy.
+	 */
+	private void waitForSpace() {
+		switch (waitStrategy) {
+		case BUSY_SPIN:
+			Thread.onSpinWait();
+			break;
+		case YIELD:
+			Thread.yield();
+			break;
+		default:
+			LockSupport.parkNanos(SLEEP_NANOS);
+			break;
+		}
+	}
+
+	/**
+	 * Wait for a published event, according to the wait strategy.
+	 *
+	 * @param sequence the sequence number of the event
+	 * @throws InterruptedException if the reader is interrupted
+	 */
+	private void waitForEvent(long sequence) throws InterruptedException {
+		switch (waitStrategy) {
+		case BUSY_SPIN:
+			Thread.onSpinWait();
+			break;
+		case YIELD:
+			Thread.yield();
+			break;
+		case SLEEP:
+			LockSupport.parkNanos(SLEEP_NANOS);
+			break;
+		default:
+			lock.lock();
+			try {
+				readerBlocked = true;
+				if (published.get((int) sequence & mask) != sequence && !isClosed()) {
+					notEmpty.awaitNanos(BLOCK_NANOS);
+				}
+			} finally {
+				readerBlocked = false;
+				lock.unlock();
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Read the events until the bus is closed and all the events claimed before
+	 * the close are delivered.
+	 */
+	private void read() {
+		long next = 0;
+
+		try {
+			while (true) {
+				if (published.get((int) next & mask) != next) {
+					// the last claimed event can still be written by its command
+					if (cursor.get() == (next | CLOSED)) {
+						return;
+					}
+
+					waitForEvent(next);
+					continue;
+				}
+
+				// the batch is made of all the events published after the first one
+				long end = next + 1;
+				long limit = next + slots.length;
+				while (end < limit && published.get((int) end & mask) == end) {
+					end++;
+				}
+
+				for (long sequence = next; sequence < end; sequence++) {
+					deliver(slots[(int) sequence & mask]);
+				}
+
+				try {
+					listeners.endOfBatch();
+				} catch (Throwable t) {
+					failed(t);
+				}
+
+				next = end;
+				delivered.set(next);
+			}
+		} catch (InterruptedException e) {
+			// the bus is closed without draining
+		} finally {
+			// the commands must not wait for a reader that has stopped
+			markClosed();
+		}
+	}
+
+	/**
+	 * Deliver the event of a slot to the listeners.
+	 *
+	 * @param slot the slot
+	 */
+	private void deliver(Slot slot) {
+		try {
+			if (slot.stop) {
+				listeners.stop(slot.event);
+			} else {
+				listeners.propagate(slot.event);
+			}
+		} catch (Throwable t) {
+			failed(t);
+		} finally {
+			// the data is not kept until the slot is reused
+			slot.event.data = null;
+		}
+	}
+
+	/**
+	 * Record the error of a listener.
+	 *
+	 * @param t the error
+	 */
+	private void failed(Throwable t) {
+		failures.incrementAndGet();
+		lastFailure = t;
+	}
+
+	/**
+	 * Get the capacity of the buffer.
+	 *
+	 * @return the number of slots
+	 */
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Get the number of events published.
+	 *
+	 * @return the number of events
+	 */
+	public long getPublishedCount() {
+		return cursor.get() & ~CLOSED;
+	}
+
+	/**
+	 * Get the number of events delivered to the listeners.
+	 *
+	 * @return the number of events
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/**
+	 * Get the number of events dropped because the buffer was full or the bus
+	 * was closed.
+	 *
+	 * @return the number of events
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Get the lag of the reader: the number of events published and not yet
+	 * delivered.
+	 *
+	 * @return the number of events
+	 */
+	public long getLag() {
+		return Math.max(0, (cursor.get() & ~CLOSED) - delivered.get());
+	}
+
+	/**
+	 * Get the number of errors thrown by the listeners. The event is delivered
+	 * to the other listeners anyway.
+	 *
+	 * @return the number of errors
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Get the last error thrown by a listener.
+	 *
+	 * @return the error, null if none
+	 */
+	public Throwable getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Check if the bus is closed, by {@link #close()} or because the reader has
+	 * stopped. The events published to a closed bus are dropped.
+	 *
+	 * @return true if it is closed
+	 */
+	public boolean isClosed() {
+		return cursor.get() < 0;
+	}
+
+	/**
+	 * Set the {@link #CLOSED} bit of the cursor, so the next events are dropped.
+	 */
+	private void markClosed() {
+		long sequence;
+		do {
+			sequence = cursor.get();
+		} while (sequence >= 0 && !cursor.compareAndSet(sequence, sequence | CLOSED));
+	}
+
+	/**
+	 * Close the bus. The events already published are delivered before the
+	 * reader stops, the next ones are dropped. The reader is not waited when
+	 * a listener closes the bus, because it is the calling thread: it stops
+	 * after the events already published.
+	 */
+	@Override
+	public void close() {
+		markClosed();
+
+		lock.lock();
+		try {
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+
+		if (Thread.currentThread() == thread) {
+			return;
+		}
+
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			thread.interrupt();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * This class is a slot of the buffer.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class Slot {
+
+		/**
+		 * The copy of the invocation of the last command written in this slot.
+		 */
+		private CommandInvocation invocation;
+
+		/**
+		 * The event of the invocation, reused while the command is the same.
+		 */
+		CommandEvent event;
+
+		/**
+		 * True if the event is the exit command.
+		 */
+		boolean stop;
+
+		/**
+		 * Write an event in this slot.
+		 *
+		 * @param source the invocation of the command
+		 * @param data   the data of the event
+		 * @param stop   true if the event is the exit command
+		 */
+		void fill(CommandInvocation source, Object data, boolean stop) {
+			if (invocation != null && invocation.command == source.command
+					&& invocation.argumentTable == source.argumentTable) {
+				invocation.arguments.copyFrom(source.arguments);
+			} else {
+				invocation = source.copy();
+				event = new CommandEvent(invocation);
+			}
+
+			event.reuse(data);
+			this.stop = stop;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package org.dvle.java_cli;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dvle.java_cli.CommandEventBus.OverflowPolicy;
+
+/**
+ * This class publishes the command events of a terminal as a
+ * {@link Flow.Publisher}, so they can be consumed with back pressure: each
+ * subscriber requests the events it can process and receives no more than
+ * that. It is created with
+ * {@link Terminal#createEventPublisher(java.util.function.Predicate, int, OverflowPolicy)}.
+ *
+ * The publisher is a listener of the terminal that copies each event and
+ * offers it to the subscribers through a {@link SubmissionPublisher}: each
+ * subscriber has a buffer of events and is called on an executor, so a slow
+ * subscriber does not delay the command until its buffer is full. Then the
+ * {@link OverflowPolicy} decides if the command waits for the subscriber or if
+ * the event is dropped for that subscriber. The subscribers receive copies of
+ * the events, so consuming them has no effect on the other listeners.
+ *
+ * The stop of the terminal (see
+ * {@link CommandListener#stopRequest(CommandEvent)}), by the exit command or
+ * at the end of its input, closes the publisher: the subscribers receive
+ * {@link Flow.Subscriber#onComplete()} after the events already in their
+ * buffers.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class CommandEventPublisher implements Flow.Publisher<CommandEvent>, AutoCloseable {
+
+	/**
+	 * The listeners of the terminal.
+	 */
+	private final CommandListeners listeners;
+
+	/**
+	 * The publisher that buffers the events of each subscriber.
+	 */
+	private final SubmissionPublisher<CommandEvent> publisher;
+
+	/**
+	 * What happens when the buffer of a subscriber is full.
+	 */
+	private final OverflowPolicy overflowPolicy;
+
+	/**
+	 * The number of events dropped for a subscriber.
+	 */
+	private final AtomicLong dropped;
+
+	/**
+	 * The listener of the terminal that publishes the events.
+	 */
+	private final CommandListener listener;
+
+	/**
+	 * Create a publisher. It is subscribed to the terminal by the caller.
+	 *
+	 * @param listeners      the listeners of the terminal
+	 * @param executor       the executor of the subscribers
+	 * @param bufferCapacity the number of events buffered for each subscriber
+	 * @param overflowPolicy what happens when the buffer of a subscriber is full
+	 */
+	CommandEventPublisher(CommandListeners listeners, Executor executor, int bufferCapacity,
+			OverflowPolicy overflowPolicy) {
+		if (listeners == null || executor == null || overflowPolicy == null) {
+			throw new NullPointerException();
+		}
+
+		if (bufferCapacity < 1) {
+			throw new IllegalArgumentException("The buffer capacity must be positive");
+		}
+
+		this.listeners = listeners;
+		this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+		this.overflowPolicy = overflowPolicy;
+		this.dropped = new AtomicLong();
+		this.listener = new CommandListener() {
+
+			@Override
+			public void commandRequest(CommandEvent cmdEvt) {
+				publish(cmdEvt);
+			}
+
+			@Override
+			public void stopRequest(CommandEvent cmdEvt) {
+				close();
+			}
+		};
+	}
+
+	/**
+	 * Get the listener of the terminal that publishes the events.
+	 *
+	 * @return the listener
+	 */
+	CommandListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Publish a copy of an event to the subscribers.
+	 *
+	 * @param commandEvent the event
+	 */
+	private void publish(CommandEvent commandEvent) {
+		if (publisher.isClosed() || !publisher.hasSubscribers()) {
+			return;
+		}
+
+		// the invocation is reused by the terminal after the propagation
+		CommandEvent copy = new CommandEvent(commandEvent.commandInvocation.copy());
+		copy.data = commandEvent.data;
+
+		try {
+			if (overflowPolicy == OverflowPolicy.BLOCK) {
+				publisher.submit(copy);
+			} else {
+				publisher.offer(copy, (subscriber, event) -> {
+					dropped.incrementAndGet();
+					return false;
+				});
+			}
+		} catch (IllegalStateException e) {
+			// closed meanwhile
+		}
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super CommandEvent> subscriber) {
+		publisher.subscribe(subscriber);
+	}
+
+	/**
+	 * Get the number of subscribers.
+	 *
+	 * @return the number of subscribers
+	 */
+	public int getNumberOfSubscribers() {
+		return publisher.getNumberOfSubscribers();
+	}
+
+	/**
+	 * Get the largest number of events buffered and not yet received by a
+	 * subscriber.
+	 *
+	 * @return the number of events
+	 */
+	public int getMaximumLag() {
+		return publisher.estimateMaximumLag();
+	}
+
+	/**
+	 * Get the number of events dropped because the buffer of a subscriber was
+	 * full. An event dropped for many subscribers is counted for each of them.
+	 *
+	 * @return the number of dropped events
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Check if the publisher is closed.
+	 *
+	 * @return true if it is closed
+	 */
+	public boolean isClosed() {
+		return publisher.isClosed();
+	}
+
+	/**
+	 * Stop publishing the events of the terminal. The subscribers receive
+	 * {@link Flow.Subscriber#onComplete()} after the events already in their
+	 * buffers.
+	 */
+	@Override
+	public void close() {
+		listeners.remove(listener);
+		publisher.close();
+	}
+}
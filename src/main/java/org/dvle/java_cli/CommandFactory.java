@@ -0,0 +1,134 @@
+package org.dvle.java_cli;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+
+/**
+ * This class creates the instances of a command class. The public constructor
+ * without parameters of the class is resolved once in a method handle, that is
+ * faster than reflection when the command is created many times, for example
+ * by a command created for each execution, see
+ * {@link #perInvocation(Supplier)}.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class CommandFactory implements Supplier<CommandDescription> {
+
+	/**
+	 * The type of the constructors after the adaptation.
+	 */
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(CommandDescription.class);
+
+	/**
+	 * The class of the commands.
+	 */
+	private final Class<? extends CommandDescription> commandClass;
+
+	/**
+	 * The constructor, that returns a {@link CommandDescription}.
+	 */
+	private final MethodHandle constructor;
+
+	/**
+	 * Create a factory.
+	 *
+	 * @param commandClass the class of the commands
+	 * @param constructor  the constructor
+	 */
+	private CommandFactory(Class<? extends CommandDescription> commandClass, MethodHandle constructor) {
+		this.commandClass = commandClass;
+		this.constructor = constructor;
+	}
+
+	/**
+	 * Create the factory of a command class.
+	 *
+	 * @param commandClass the class of the commands
+	 * @return the factory
+	 * @throws NoSuchMethodException  if the class has not a public constructor
+	 *                                without parameters
+	 * @throws IllegalAccessException if the class is not public
+	 * @throws InstantiationException if the class is abstract
+	 */
+	public static CommandFactory of(Class<? extends CommandDescription> commandClass)
+			throws NoSuchMethodException, IllegalAccessException, InstantiationException {
+		if (commandClass == null) {
+			throw new NullPointerException();
+		}
+
+		if (!CommandDescription.class.isAssignableFrom(commandClass)) {
+			throw new ClassCastException(commandClass.getName() + " is not a command description");
+		}
+
+		if (Modifier.isAbstract(commandClass.getModifiers())) {
+			throw new InstantiationException(commandClass.getName());
+		}
+
+		MethodHandle constructor = MethodHandles.publicLookup()
+				.findConstructor(commandClass, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+		return new CommandFactory(commandClass, constructor);
+	}
+
+	/**
+	 * Create a command that creates a new instance of the commands of a supplier
+	 * for each execution, for commands that keep the state of an execution in
+	 * their fields. An instance is created at once, to read the name and the
+	 * arguments of the command. Since each execution has its own instance, the
+	 * command can be executed by many threads at the same time.
+	 *
+	 * @param supplier the supplier of the instances, for example a
+	 *                 {@link CommandFactory} or a constructor reference
+	 * @return the command
+	 */
+	public static CommandDescription perInvocation(Supplier<? extends CommandDescription> supplier) {
+		if (supplier == null) {
+			throw new NullPointerException();
+		}
+
+		return new PerInvocationCommandDescription(supplier);
+	}
+
+	/**
+	 * Get the class of the commands.
+	 *
+	 * @return the class
+	 */
+	public Class<? extends CommandDescription> getCommandClass() {
+		return commandClass;
+	}
+
+	/**
+	 * Create a command.
+	 *
+	 * @return the command
+	 * @throws InvocationTargetException if the constructor throws an exception
+	 */
+	CommandDescription newInstance() throws InvocationTargetException {
+		try {
+			return (CommandDescription) constructor.invokeExact();
+		} catch (Throwable e) {
+			// as Constructor.newInstance
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	/**
+	 * Create a command.
+	 *
+	 * @return the command
+	 * @throws RuntimeException if the constructor throws an exception
+	 */
+	@Override
+	public CommandDescription get() {
+		try {
+			return newInstance();
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Cannot create the command " + commandClass.getName(), e.getCause());
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package org.dvle.java_cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * This class is an annotation processor that writes the index of the commands
+ * of a compilation in {@value #INDEX_RESOURCE}. The index contains the binary
+ * name of every public concrete subclass of {@link CommandDescription} with a
+ * public constructor without parameters, one per line, and it is read by
+ * {@link CommandLoader} instead of scanning the classpath.
+ *
+ * The entry of a command annotated with {@link CommandInfo} also contains its
+ * name and its arguments, separated by tabs: {@literal name:TYPE:mandatory},
+ * {@literal name:TYPE:optional} or {@literal name:SINGLE}, preceded by
+ * {@value #PER_INVOCATION} if an instance is created for each execution. These
+ * commands are registered without loading their class.
+ *
+ * The processor is registered as a service, so it runs whenever the library is
+ * in the classpath of the compiler. Entries written by a previous compilation
+ * are kept if their class still exists, to support incremental builds.
+ *
+ * @author federicosilvestri
+ *
+ */
+@SupportedAnnotationTypes("*")
+public final class CommandIndexProcessor extends AbstractProcessor {
+
+	/**
+	 * The resource that contains the index.
+	 */
+	public static final String INDEX_RESOURCE = "META-INF/java-cli/commands";
+
+	/**
+	 * The separator of the fields of an entry.
+	 */
+	static final char FIELD_SEPARATOR = '\t';
+
+	/**
+	 * The separator of the properties of an argument.
+	 */
+	static final char PROPERTY_SEPARATOR = ':';
+
+	/**
+	 * The type of single arguments in the index.
+	 */
+	static final String SINGLE = "SINGLE";
+
+	/**
+	 * The field of the commands created for each execution.
+	 */
+	static final String PER_INVOCATION = "perInvocation";
+
+	/**
+	 * The entries of the commands found in all the rounds, by class.
+	 */
+	private final Map<String, String> commands = new TreeMap<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		TypeElement commandType = processingEnv.getElementUtils()
+				.getTypeElement(CommandDescription.class.getCanonicalName());
+
+		if (commandType == null) {
+			return false;
+		}
+
+		TypeMirror command = processingEnv.getTypeUtils().erasure(commandType.asType());
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			collect(type, command);
+		}
+
+		if (roundEnv.processingOver()) {
+			writeIndex();
+		}
+
+		// other processors can process the same annotations
+		return false;
+	}
+
+	/**
+	 * Add a type and its nested types to the index if they are commands.
+	 *
+	 * @param type    the type
+	 * @param command the type of command descriptions
+	 */
+	private void collect(TypeElement type, TypeMirror command) {
+		CommandInfo info = type.getAnnotation(CommandInfo.class);
+
+		if (isCommand(type, command)) {
+			String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+			commands.put(binaryName, info == null ? binaryName : entry(binaryName, info, type));
+		} else if (info != null) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@" + CommandInfo.class.getSimpleName()
+					+ " can be used only on public commands with a public constructor without parameters", type);
+		}
+
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			collect(nested, command);
+		}
+	}
+
+	/**
+	 * Check if a type can be instantiated by the command loader.
+	 *
+	 * @param type    the type
+	 * @param command the type of command descriptions
+	 * @return true if the type is a command
+	 */
+	private boolean isCommand(TypeElement type, TypeMirror command) {
+		Set<Modifier> modifiers = type.getModifiers();
+
+		if (type.getKind() != ElementKind.CLASS || !modifiers.contains(Modifier.PUBLIC)
+				|| modifiers.contains(Modifier.ABSTRACT)) {
+			return false;
+		}
+
+		if (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+			return false;
+		}
+
+		if (!processingEnv.getTypeUtils().isSubtype(type.asType(), command)) {
+			return false;
+		}
+
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Create the entry of an annotated command.
+	 *
+	 * @param binaryName the binary name of the command
+	 * @param info       the description of the command
+	 * @param type       the type, where errors are reported
+	 * @return the entry
+	 */
+	private String entry(String binaryName, CommandInfo info, TypeElement type) {
+		StringBuilder entry = new StringBuilder(binaryName);
+		Set<String> names = new HashSet<>();
+
+		checkName(info.name(), type);
+		entry.append(FIELD_SEPARATOR).append(info.name());
+		if (info.perInvocation()) {
+			entry.append(FIELD_SEPARATOR).append(PER_INVOCATION);
+		}
+
+		for (CommandInfo.Argument argument : info.arguments()) {
+			checkName(argument.name(), type);
+			if (!names.add(argument.name())) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Duplicated argument \"" + argument.name() + "\"", type);
+			}
+
+			entry.append(FIELD_SEPARATOR).append(argument.name()).append(PROPERTY_SEPARATOR);
+			if (argument.single()) {
+				if (argument.mandatory()) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+							"The single argument \"" + argument.name() + "\" cannot be mandatory", type);
+				}
+				entry.append(SINGLE);
+			} else {
+				entry.append(argument.type().name()).append(PROPERTY_SEPARATOR)
+						.append(argument.mandatory() ? "mandatory" : "optional");
+			}
+		}
+
+		return entry.toString();
+	}
+
+	/**
+	 * Report an error if a name cannot be written in the index.
+	 *
+	 * @param name the name of a command or of an argument
+	 * @param type the type, where errors are reported
+	 */
+	private void checkName(String name, TypeElement type) {
+		boolean valid = name.length() > 0;
+
+		for (int i = 0; i < name.length() && valid; i++) {
+			char c = name.charAt(i);
+			valid = !Character.isWhitespace(c) && c != PROPERTY_SEPARATOR;
+		}
+
+		if (!valid) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Invalid name \"" + name + "\"", type);
+		}
+	}
+
+	/**
+	 * Write the index, merging the entries of a previous compilation.
+	 */
+	private void writeIndex() {
+		Map<String, String> entries = new TreeMap<>();
+
+		try {
+			FileObject previous = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					INDEX_RESOURCE);
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(previous.openInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					int separator = line.indexOf(FIELD_SEPARATOR);
+					String binaryName = separator < 0 ? line : line.substring(0, separator);
+					if (line.length() > 0 && exists(binaryName)) {
+						entries.put(binaryName, line);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// there is no previous index
+		}
+
+		// the commands of this compilation replace their previous entries
+		entries.putAll(commands);
+
+		if (entries.isEmpty()) {
+			return;
+		}
+
+		try {
+			FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					INDEX_RESOURCE);
+			try (Writer writer = index.openWriter()) {
+				for (String entry : entries.values()) {
+					writer.write(entry);
+					writer.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Cannot write " + INDEX_RESOURCE + ": " + e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Check if a class of a previous index still exists.
+	 *
+	 * @param binaryName the binary name of the class
+	 * @return true if the class exists
+	 */
+	private boolean exists(String binaryName) {
+		Element element = processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.'));
+		return element != null;
+	}
+}
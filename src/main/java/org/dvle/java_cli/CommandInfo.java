@@ -0,0 +1,97 @@
+package org.dvle.java_cli;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+
+/**
+ * This annotation describes the name and the arguments of a command at compile
+ * time. The {@link CommandIndexProcessor} writes them in the command index, so
+ * {@link CommandLoader} registers the command without loading its class: the
+ * class is loaded and instantiated the first time the command is executed.
+ *
+ * The description must be the same given to the constructor of the command,
+ * otherwise the first execution of the command fails. For example:
+ *
+ * <pre>
+ * &#64;CommandInfo(name = "get", arguments = { &#64;Argument(name = "verbose", single = true),
+ * 		&#64;Argument(name = "file", type = ArgumentValueType.FILE_PATH, mandatory = true) })
+ * public class GetCommand extends CommandDescription {
+ * </pre>
+ *
+ * @author federicosilvestri
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface CommandInfo {
+
+	/**
+	 * The name of the command.
+	 *
+	 * @return the name
+	 */
+	String name();
+
+	/**
+	 * The arguments of the command, in the order they are added by the command.
+	 *
+	 * @return the arguments
+	 */
+	Argument[] arguments() default {};
+
+	/**
+	 * True if a new instance of the command is created for each execution, for
+	 * commands that keep the state of an execution in their fields. See
+	 * {@link CommandFactory#perInvocation(java.util.function.Supplier)}.
+	 *
+	 * @return true if an instance is created for each execution
+	 */
+	boolean perInvocation() default false;
+
+	/**
+	 * This annotation describes an argument of a command, see
+	 * {@link ArgumentDescription}.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	@Documented
+	@Retention(RetentionPolicy.CLASS)
+	@Target({})
+	@interface Argument {
+
+		/**
+		 * The name of the argument.
+		 *
+		 * @return the name
+		 */
+		String name();
+
+		/**
+		 * The type of the value, ignored for single arguments.
+		 *
+		 * @return the type
+		 */
+		ArgumentValueType type() default ArgumentValueType.STRING;
+
+		/**
+		 * True if the argument is mandatory.
+		 *
+		 * @return true if mandatory
+		 */
+		boolean mandatory() default false;
+
+		/**
+		 * True if the argument does not accept values.
+		 *
+		 * @return true if single
+		 */
+		boolean single() default false;
+	}
+}
@@ -1,22 +1,21 @@
 package org.dvle.java_cli;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * This class represents the invocation of a command, so a pair of
- * {@literal <CommandDescription, Map<ArgumentDescription, Object>}.
- * 
+ * {@literal <CommandDescription, ParsedArguments>}.
+ *
  * For example if the line string is {@code ln --file=foo.txt --name=ov.txt},
  * the command invocation is {@literal <CommandDescription(ln),
  * {<ArgumentDescription(file), "foo.txt">,<ArgumentDescription(name),
  * "ov.txt">}>}
- * 
+ *
  * NOTE: this class allows to specify only one value per command. For example
  * you cannot parse command like {@code copy --file=foo.txt --file=bar.txt}. To
  * extend this class with multiple arguments you use a Map of
  * {@literal <ArgumentDescription, List<Object>>}.
- * 
+ *
+ * An invocation can be reset and reused for another line of the same command.
+ *
  * @author federicosilvestri
  */
 final class CommandInvocation {
@@ -26,19 +25,54 @@ final class CommandInvocation {
 	final CommandDescription command;
 
 	/**
-	 * The map between argument description and the related value.
+	 * The arguments and their values.
+	 */
+	final ParsedArguments arguments;
+
+	/**
+	 * The table of the arguments of the command, when the invocation has been
+	 * created.
 	 */
-	final Map<ArgumentDescription, Object> arguments;
+	final NameTable<ArgumentDescription> argumentTable;
 
 	/**
 	 * Create a new invocation of a given command.
-	 * 
+	 *
 	 * @param command the command description
 	 */
 	CommandInvocation(CommandDescription command) {
+		this(command, command.getArgumentTable(), new ParsedArguments(command.getArgumentTable()));
+	}
+
+	/**
+	 * Create a new invocation of a given command with the given arguments.
+	 *
+	 * @param command       the command description
+	 * @param argumentTable the table of the arguments of the command
+	 * @param arguments     the arguments
+	 */
+	private CommandInvocation(CommandDescription command, NameTable<ArgumentDescription> argumentTable,
+			ParsedArguments arguments) {
 		super();
 		this.command = command;
-		this.arguments = new HashMap<>();
+		this.argumentTable = argumentTable;
+		this.arguments = arguments;
 	}
 
+	/**
+	 * Remove all the arguments, to reuse this invocation.
+	 */
+	void reset() {
+		arguments.reset();
+	}
+
+	/**
+	 * Create a copy of this invocation, that is not affected by the reuse of this
+	 * one.
+	 *
+	 * @return a copy
+	 */
+	CommandInvocation copy() {
+		return new CommandInvocation(command, argumentTable, arguments.copy());
+	}
 }
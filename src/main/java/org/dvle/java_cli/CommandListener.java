@@ -1,6 +1,13 @@
 package org.dvle.java_cli;
 
 /**
+ * This interface receives the events of the commands executed by a terminal.
+ * 
+ * The events and their invocations are reused by the terminal for the next
+ * lines, so they are valid only during the call that receives them. A listener
+ * that keeps the arguments of an event must copy them with
+ * {@link ParsedArguments#copy()}; {@link CommandEventPublisher} gives copies
+ * of the events that can be kept.
  * 
  * @author federicosilvestri
  *
@@ -15,9 +22,20 @@ public interface CommandListener {
 	public void commandRequest(CommandEvent cmdEvt);
 
 	/**
-	 * Receives the stop event.
+	 * Receives the stop event: the terminal has received the exit command or
+	 * its execution has ended without it, at the end of the input, of a batch or
+	 * because the thread has been interrupted. Then the command of the event is
+	 * the exit command.
 	 * 
 	 * @param cmdEvt stop event to wrap
 	 */
 	public void stopRequest(CommandEvent cmdEvt);
+
+	/**
+	 * Receives the end of a batch of events from an asynchronous event bus (see
+	 * {@link CommandEventBus}), for example to flush the events written to a
+	 * slow sink. The default implementation does nothing.
+	 */
+	public default void endOfBatch() {
+	}
 }
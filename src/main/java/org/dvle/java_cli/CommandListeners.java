@@ -0,0 +1,397 @@
+package org.dvle.java_cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * This class contains the listeners of the commands of a terminal. A listener
+ * subscribes to all the commands, to the commands with a given name or to the
+ * commands whose name is accepted by a predicate.
+ *
+ * The subscriptions are kept in an immutable snapshot that is replaced at each
+ * change (copy on write), like the commands of a {@link CommandRegistry}: they
+ * can be changed by any thread, also during a propagation. Each snapshot caches
+ * the listeners of each command name, so after the first event of a command
+ * the listeners are found with a map lookup. For this reason the predicates
+ * must always give the same result for the same name.
+ *
+ * Ordered listeners receive the events in the order of subscription, on the
+ * thread of the command, until one of them consumes the event. Independent
+ * listeners receive all the events, on an executor, without delaying the
+ * command: the propagation does not wait for them, so they receive a copy of
+ * the event, because the invocation of the command is reused by the next
+ * line. They can be called after the end of the command and in any order, and
+ * their errors go to the executor instead of the command.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class CommandListeners {
+
+	/**
+	 * The listeners of a command without subscriptions.
+	 */
+	private static final Dispatch EMPTY = new Dispatch(new CommandListener[0], new CommandListener[0]);
+
+	/**
+	 * The current snapshot of the subscriptions.
+	 */
+	private final AtomicReference<Snapshot> snapshot;
+
+	/**
+	 * The executor of the independent listeners.
+	 */
+	private volatile Executor executor;
+
+	/**
+	 * Create a set of listeners without subscriptions.
+	 *
+	 * @param executor the executor of the independent listeners
+	 */
+	CommandListeners(Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException();
+		}
+
+		this.snapshot = new AtomicReference<>(new Snapshot(new Subscription[0]));
+		this.executor = executor;
+	}
+
+	/**
+	 * Set the executor of the independent listeners.
+	 *
+	 * @param executor the executor
+	 */
+	void setExecutor(Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException();
+		}
+
+		this.executor = executor;
+	}
+
+	/**
+	 * Subscribe a listener. The same listener can subscribe many times with
+	 * different filters, a subscription equal to an existing one is ignored.
+	 *
+	 * @param listener    the listener
+	 * @param commandName the name of the commands, null for all the commands
+	 *                    accepted by the filter
+	 * @param filter      the filter of the command names, null to accept all of
+	 *                    them
+	 * @param independent true to call the listener on the executor, without
+	 *                    waiting for it
+	 */
+	void add(CommandListener listener, String commandName, Predicate<String> filter, boolean independent) {
+		if (listener == null) {
+			throw new NullPointerException();
+		}
+
+		Subscription subscription = new Subscription(listener, commandName, filter, independent);
+		Snapshot current;
+		Snapshot next;
+		do {
+			current = snapshot.get();
+
+			for (Subscription existing : current.subscriptions) {
+				if (existing.sameAs(subscription)) {
+					return;
+				}
+			}
+
+			Subscription[] added = Arrays.copyOf(current.subscriptions, current.subscriptions.length + 1);
+			added[current.subscriptions.length] = subscription;
+			next = new Snapshot(added);
+		} while (!snapshot.compareAndSet(current, next));
+	}
+
+	/**
+	 * Remove all the subscriptions of a listener.
+	 *
+	 * @param listener the listener
+	 * @return true if the listener had subscriptions
+	 */
+	boolean remove(CommandListener listener) {
+		if (listener == null) {
+			throw new NullPointerException();
+		}
+
+		Snapshot current;
+		Snapshot next;
+		do {
+			current = snapshot.get();
+
+			List<Subscription> kept = new ArrayList<>(current.subscriptions.length);
+			for (Subscription subscription : current.subscriptions) {
+				if (subscription.listener != listener) {
+					kept.add(subscription);
+				}
+			}
+
+			if (kept.size() == current.subscriptions.length) {
+				return false;
+			}
+
+			next = new Snapshot(kept.toArray(new Subscription[kept.size()]));
+		} while (!snapshot.compareAndSet(current, next));
+
+		return true;
+	}
+
+	/**
+	 * Propagate an event to the listeners of its command.
+	 *
+	 * @param commandEvent the event
+	 */
+	void propagate(CommandEvent commandEvent) {
+		Dispatch dispatch = snapshot.get().dispatchOf(commandEvent.commandInvocation.command.name);
+
+		if (dispatch.independent.length == 0) {
+			propagateOrdered(dispatch.ordered, commandEvent);
+			return;
+		}
+
+		// the independent listeners are not awaited, the invocation is reused by the next line
+		CommandEvent copy = new CommandEvent(commandEvent.commandInvocation.copy());
+		copy.data = commandEvent.data;
+
+		Executor currentExecutor = executor;
+		for (CommandListener listener : dispatch.independent) {
+			currentExecutor.execute(() -> listener.commandRequest(copy));
+		}
+
+		propagateOrdered(dispatch.ordered, commandEvent);
+	}
+
+	/**
+	 * Notify all the listeners of the end of a batch of events. A listener with
+	 * many subscriptions is notified once.
+	 */
+	void endOfBatch() {
+		for (CommandListener cl : snapshot.get().listeners) {
+			cl.endOfBatch();
+		}
+	}
+
+	/**
+	 * Notify all the listeners that the terminal has received the exit command,
+	 * in the order of subscription. A listener with many subscriptions is
+	 * notified once.
+	 *
+	 * @param commandEvent the event of the exit command
+	 */
+	void stop(CommandEvent commandEvent) {
+		for (CommandListener cl : snapshot.get().listeners) {
+			cl.stopRequest(commandEvent);
+		}
+	}
+
+	/**
+	 * Call the ordered listeners until the event is consumed.
+	 *
+	 * @param listeners    the listeners
+	 * @param commandEvent the event
+	 */
+	private static void propagateOrdered(CommandListener[] listeners, CommandEvent commandEvent) {
+		for (CommandListener cl : listeners) {
+			cl.commandRequest(commandEvent);
+
+			if (commandEvent.consumed) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * This class represents the subscription of a listener.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class Subscription {
+
+		/**
+		 * The listener.
+		 */
+		final CommandListener listener;
+
+		/**
+		 * The name of the commands, null for all the commands accepted by the
+		 * filter.
+		 */
+		final String commandName;
+
+		/**
+		 * The filter of the command names, null to accept all of them.
+		 */
+		final Predicate<String> filter;
+
+		/**
+		 * True if the listener is called on the executor, without waiting.
+		 */
+		final boolean independent;
+
+		/**
+		 * Create a subscription.
+		 *
+		 * @param listener    the listener
+		 * @param commandName the name of the commands
+		 * @param filter      the filter of the command names
+		 * @param independent true if the listener is called without waiting
+		 */
+		Subscription(CommandListener listener, String commandName, Predicate<String> filter, boolean independent) {
+			this.listener = listener;
+			this.commandName = commandName;
+			this.filter = filter;
+			this.independent = independent;
+		}
+
+		/**
+		 * Check if the subscription receives the events of a command.
+		 *
+		 * @param name the name of the command
+		 * @return true if the events are received
+		 */
+		boolean accepts(String name) {
+			return (commandName == null || commandName.equals(name)) && (filter == null || filter.test(name));
+		}
+
+		/**
+		 * Check if this subscription is equal to another one.
+		 *
+		 * @param other the other subscription
+		 * @return true if they are equal
+		 */
+		boolean sameAs(Subscription other) {
+			return listener == other.listener && independent == other.independent && filter == other.filter
+					&& (commandName == null ? other.commandName == null : commandName.equals(other.commandName));
+		}
+	}
+
+	/**
+	 * This class contains the listeners of a command.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class Dispatch {
+
+		/**
+		 * The listeners called in order.
+		 */
+		final CommandListener[] ordered;
+
+		/**
+		 * The listeners called on the executor.
+		 */
+		final CommandListener[] independent;
+
+		/**
+		 * Create the listeners of a command.
+		 *
+		 * @param ordered     the listeners called in order
+		 * @param independent the listeners called on the executor
+		 */
+		Dispatch(CommandListener[] ordered, CommandListener[] independent) {
+			this.ordered = ordered;
+			this.independent = independent;
+		}
+	}
+
+	/**
+	 * This class is an immutable snapshot of the subscriptions.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class Snapshot {
+
+		/**
+		 * The subscriptions, in the order of subscription.
+		 */
+		final Subscription[] subscriptions;
+
+		/**
+		 * The subscribed listeners, each one once.
+		 */
+		final CommandListener[] listeners;
+
+		/**
+		 * The listeners of the command names already propagated.
+		 */
+		private final Map<String, Dispatch> dispatches;
+
+		/**
+		 * Create a snapshot.
+		 *
+		 * @param subscriptions the subscriptions
+		 */
+		Snapshot(Subscription[] subscriptions) {
+			this.subscriptions = subscriptions;
+			this.dispatches = new ConcurrentHashMap<>();
+
+			List<CommandListener> unique = new ArrayList<>(subscriptions.length);
+			for (Subscription subscription : subscriptions) {
+				if (!unique.contains(subscription.listener)) {
+					unique.add(subscription.listener);
+				}
+			}
+			this.listeners = unique.toArray(new CommandListener[unique.size()]);
+		}
+
+		/**
+		 * Get the listeners of a command.
+		 *
+		 * @param name the name of the command
+		 * @return the listeners
+		 */
+		Dispatch dispatchOf(String name) {
+			if (subscriptions.length == 0) {
+				return EMPTY;
+			}
+
+			Dispatch dispatch = dispatches.get(name);
+
+			if (dispatch == null) {
+				dispatch = dispatches.computeIfAbsent(name, this::createDispatch);
+			}
+
+			return dispatch;
+		}
+
+		/**
+		 * Find the listeners of a command.
+		 *
+		 * @param name the name of the command
+		 * @return the listeners
+		 */
+		private Dispatch createDispatch(String name) {
+			List<CommandListener> ordered = new ArrayList<>();
+			List<CommandListener> independent = new ArrayList<>();
+
+			for (Subscription subscription : subscriptions) {
+				if (subscription.accepts(name)) {
+					List<CommandListener> target = subscription.independent ? independent : ordered;
+
+					// a listener with many matching subscriptions is called once
+					if (!target.contains(subscription.listener)) {
+						target.add(subscription.listener);
+					}
+				}
+			}
+
+			if (ordered.isEmpty() && independent.isEmpty()) {
+				return EMPTY;
+			}
+
+			return new Dispatch(ordered.toArray(new CommandListener[ordered.size()]),
+					independent.toArray(new CommandListener[independent.size()]));
+		}
+	}
+}
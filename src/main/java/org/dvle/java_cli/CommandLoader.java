@@ -1,16 +1,35 @@
 package org.dvle.java_cli;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
+import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
 
 /**
  * This class is used to dynamically load classes that represents a command
@@ -28,9 +47,14 @@ public class CommandLoader {
 	public static final String CLASS_NAME_PATTERN = "(.)*Command\\.class";
 
 	/**
-	 * The instance of terminal.
+	 * The compiled CLASS_NAME_PATTERN.
 	 */
-	private final Terminal terminal;
+	static final Pattern CLASS_NAME = Pattern.compile(CLASS_NAME_PATTERN);
+
+	/**
+	 * The registry where commands are loaded.
+	 */
+	private final CommandRegistry registry;
 
 	/**
 	 * Default class loader.
@@ -38,26 +62,57 @@ public class CommandLoader {
 	private final ClassLoader classLoader;
 
 	/**
-	 * A list of loaded classes.
+	 * A list of loaded classes, also changed by the terminals that execute lazy
+	 * commands.
+	 */
+	private final List<String> loadedClasses;
+
+	/**
+	 * The cache of the classes found in jars, null if jars are always scanned.
+	 */
+	private volatile JarScanCache scanCache;
+
+	/**
+	 * The entries of the command index by package, null if not yet read.
 	 */
-	private final LinkedList<String> loadedClasses;
+	private Map<String, List<String>> index;
 
 	/**
-	 * Create a new instance of command loader.
+	 * Create a new instance of command loader, that loads commands into the
+	 * registry of a terminal.
 	 */
 	public CommandLoader(Terminal terminal) {
-		if (terminal == null) {
+		this(terminal.getRegistry());
+	}
+
+	/**
+	 * Create a new instance of command loader, that loads commands into a
+	 * registry. The registry can be shared by many terminals, that see the loaded
+	 * commands without being stopped.
+	 */
+	public CommandLoader(CommandRegistry registry) {
+		if (registry == null) {
 			throw new NullPointerException();
 		}
 
-		this.terminal = terminal;
+		this.registry = registry;
 		this.classLoader = Thread.currentThread().getContextClassLoader();
-		this.loadedClasses = new LinkedList<>();
+		this.loadedClasses = Collections.synchronizedList(new ArrayList<>());
 	}
 
 	/**
 	 * This method loads all the classes with name that matches with
-	 * CLASS_NAME_PATTERN into terminal instance.
+	 * CLASS_NAME_PATTERN into the registry. The commands of the package are added
+	 * all together, so terminals never see only a part of them.
+	 * 
+	 * The classes are taken from the index written at compile time by
+	 * {@link CommandIndexProcessor}. The package is scanned only if the index does
+	 * not contain any of its classes, for example when the commands are compiled
+	 * without the processor.
+	 * 
+	 * The classes of the commands annotated with {@link CommandInfo} are not
+	 * loaded: their commands are described by the index, and each class is loaded
+	 * and instantiated at the first execution of its command.
 	 * 
 	 * @param packageName the name of the package to search
 	 * @throws NoSuchMethodException     if the default constructor does not exists
@@ -77,27 +132,20 @@ public class CommandLoader {
 			throw new NullPointerException();
 		}
 
-		// sanitize the string
-		String slashedPackageName = convertPackageName(packageName);
-		// get the class URL
-		URL resource = classLoader.getResource(slashedPackageName);
-
-		if (resource.toString().startsWith("jar:")) {
-			try {
-				JarFile jarFile = new JarFile(getClass().getProtectionDomain().getCodeSource().getLocation().getPath());
-				loadFromJar(jarFile, packageName);
-			} catch (IOException e) {
-				throw new RuntimeException("Cannot load resource from Jar file", e);
-			}
-		} else {
-			loadFromFile(new File(resource.getFile()), packageName);
-		}
+		loadFromPackages(packageName);
 	}
 
 	/**
-	 * This method loads all the classes if files are not inside jar.
+	 * This method loads the commands of many packages into the registry, like
+	 * {@link #loadFromPackage(String)}. The commands of all the packages are
+	 * added all together.
 	 * 
-	 * @param packageName the name of the package to search
+	 * The packages that are not in the index are scanned in parallel, in all
+	 * their locations: the same package can be in many directories and jars of
+	 * the class loader.
+	 * 
+	 * @param packageNames the names of the packages to search
+	 * @throws FileNotFoundException     if a package does not exist
 	 * @throws NoSuchMethodException     if the default constructor does not exists
 	 * @throws InvocationTargetException if the target of invocation is not
 	 *                                   acceptable
@@ -108,62 +156,338 @@ public class CommandLoader {
 	 * @throws InstantiationException    if we can't instantiate the command
 	 *                                   description
 	 */
-	private void loadFromFile(File classDir, String packageName)
+	public void loadFromPackages(String... packageNames)
 			throws FileNotFoundException, ClassNotFoundException, NoSuchMethodException, SecurityException,
 			InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		if (packageNames == null) {
+			throw new NullPointerException();
+		}
+
+		List<CommandDescription> commands = new ArrayList<>();
+		List<String> indexedClasses = new ArrayList<>();
+		List<Callable<List<String>>> scans = new ArrayList<>();
+
+		for (String packageName : packageNames) {
+			if (packageName == null) {
+				throw new NullPointerException();
+			}
+
+			// sanitize the string
+			String slashedPackageName = convertPackageName(packageName);
+
+			List<String> entries = getIndex().get(packageName);
+			if (entries != null) {
+				for (String entry : entries) {
+					if (entry.indexOf(CommandIndexProcessor.FIELD_SEPARATOR) < 0) {
+						indexedClasses.add(entry);
+					} else {
+						commands.add(createLazyCommand(entry));
+					}
+				}
+				continue;
+			}
+
+			// get the class URLs
+			Enumeration<URL> resources;
+			try {
+				resources = classLoader.getResources(slashedPackageName);
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot find the package " + packageName, e);
+			}
+
+			if (!resources.hasMoreElements()) {
+				throw new FileNotFoundException("The package " + packageName + " does not exist");
+			}
+
+			while (resources.hasMoreElements()) {
+				URL resource = resources.nextElement();
+				scans.add(() -> scan(resource, packageName));
+			}
+		}
+
+		Set<String> classNames = scans.isEmpty() ? new LinkedHashSet<>() : scanAll(scans);
+		classNames.addAll(indexedClasses);
+		for (String className : classNames) {
+			commands.add(loadClass(className));
+		}
+
+		registry.addCommands(commands);
+	}
+
+	/**
+	 * Watch the class files of a package and reload its commands when they
+	 * change, for example after a compilation, without restarting the terminals.
+	 * Only the changed classes are loaded again, in a new class loader that is
+	 * discarded with their old versions, and their commands replace the old ones
+	 * all together. Invocations already running finish with the old version. See
+	 * {@link CommandWatcher}.
+	 * 
+	 * @param directory   the root directory of the classes, that contains the
+	 *                    directories of the packages
+	 * @param packageName the name of the package to watch
+	 * @return the watcher, that must be closed to stop watching
+	 * @throws IOException           if the directory of the package cannot be
+	 *                               watched
+	 * @throws IllegalStateException if the registry is frozen
+	 */
+	public CommandWatcher watch(File directory, String packageName) throws IOException {
+		if (directory == null || packageName == null) {
+			throw new NullPointerException();
+		}
+
+		if (registry.isFrozen()) {
+			throw new IllegalStateException("The commands of a frozen registry cannot be changed");
+		}
+
+		Path packageDirectory = directory.toPath().resolve(convertPackageName(packageName));
+		return new CommandWatcher(registry, classLoader, packageDirectory, packageName);
+	}
+
+	/**
+	 * Set the directory where the classes found by scanning jars are stored. A
+	 * jar is not scanned again while its path, size and modification time do not
+	 * change, also after a restart.
+	 * 
+	 * @param directory the directory, or null to always scan jars
+	 */
+	public void setScanCache(File directory) {
+		this.scanCache = directory == null ? null : new JarScanCache(directory.toPath());
+	}
+
+	/**
+	 * Get the command index, reading it at the first call. The index is the union
+	 * of all the {@value CommandIndexProcessor#INDEX_RESOURCE} resources of the
+	 * class loader. Only the classes with name that matches with
+	 * CLASS_NAME_PATTERN are kept, as for scanning.
+	 * 
+	 * @return the entries of the classes by package
+	 */
+	private Map<String, List<String>> getIndex() {
+		if (index != null) {
+			return index;
+		}
+
+		Map<String, List<String>> classes = new HashMap<>();
+		try {
+			Enumeration<URL> resources = classLoader.getResources(CommandIndexProcessor.INDEX_RESOURCE);
+			while (resources.hasMoreElements()) {
+				URL resource = resources.nextElement();
+				try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						line = line.trim();
+						int separator = line.indexOf(CommandIndexProcessor.FIELD_SEPARATOR);
+						String className = separator < 0 ? line : line.substring(0, separator);
+						int dot = className.lastIndexOf('.');
+						if (dot < 1 || !CLASS_NAME.matcher(className.substring(dot + 1) + ".class").matches()) {
+							continue;
+						}
+
+						classes.computeIfAbsent(className.substring(0, dot), k -> new ArrayList<>()).add(line);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read the command index", e);
+		}
+
+		index = classes;
+		return index;
+	}
+
+	/**
+	 * Create a command that is loaded at the first execution from an entry of the
+	 * index written for a class annotated with {@link CommandInfo}.
+	 * 
+	 * @param entry the entry of the index
+	 * @return the command
+	 */
+	private CommandDescription createLazyCommand(String entry) {
+		String[] fields = entry.split(String.valueOf(CommandIndexProcessor.FIELD_SEPARATOR));
+		List<ArgumentDescription> arguments = new ArrayList<>(fields.length - 2);
+		boolean perInvocation = false;
+
+		try {
+			for (int i = 2; i < fields.length; i++) {
+				if (CommandIndexProcessor.PER_INVOCATION.equals(fields[i])) {
+					perInvocation = true;
+					continue;
+				}
+
+				String[] properties = fields[i].split(String.valueOf(CommandIndexProcessor.PROPERTY_SEPARATOR));
+				if (properties.length == 2 && CommandIndexProcessor.SINGLE.equals(properties[1])) {
+					arguments.add(new ArgumentDescription(properties[0]));
+				} else if (properties.length == 3) {
+					arguments.add(new ArgumentDescription(properties[0], ArgumentValueType.valueOf(properties[1]),
+							"mandatory".equals(properties[2])));
+				} else {
+					throw new IllegalArgumentException(fields[i]);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException("Invalid entry of the command index: " + entry, e);
+		}
+
+		return new LazyCommandDescription(this, fields[0], fields[1], arguments, perInvocation);
+	}
+
+	/**
+	 * Scan in parallel the locations of the packages, and return the classes
+	 * found in all of them.
+	 * 
+	 * @param scans the scans of the locations
+	 * @return the binary names of the classes
+	 * @throws FileNotFoundException if a location does not exist
+	 */
+	private Set<String> scanAll(List<Callable<List<String>>> scans) throws FileNotFoundException {
+		Set<String> classNames = new LinkedHashSet<>();
+
+		if (scans.size() == 1) {
+			try {
+				classNames.addAll(scans.get(0).call());
+			} catch (Exception e) {
+				throw scanFailure(e);
+			}
+
+			return classNames;
+		}
+
+		List<Future<List<String>>> results = ForkJoinPool.commonPool().invokeAll(scans);
+		for (Future<List<String>> result : results) {
+			try {
+				classNames.addAll(result.get());
+			} catch (ExecutionException e) {
+				throw scanFailure(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while scanning the packages", e);
+			}
+		}
+
+		return classNames;
+	}
+
+	/**
+	 * Convert the failure of a scan in the exception thrown by the loader.
+	 * 
+	 * @param cause the failure
+	 * @return the exception
+	 * @throws FileNotFoundException if a location does not exist
+	 */
+	private RuntimeException scanFailure(Throwable cause) throws FileNotFoundException {
+		if (cause instanceof FileNotFoundException) {
+			throw (FileNotFoundException) cause;
+		}
+
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+
+		return new RuntimeException("Cannot load resource from Jar file", cause);
+	}
+
+	/**
+	 * Find the classes of a package in one of its locations, that is a directory
+	 * or a jar.
+	 * 
+	 * @param resource    the location of the package
+	 * @param packageName the name of the package
+	 * @return the binary names of the classes
+	 * @throws IOException if the location cannot be read
+	 */
+	private List<String> scan(URL resource, String packageName) throws IOException {
+		if (!"jar".equals(resource.getProtocol())) {
+			File classDir;
+			try {
+				classDir = new File(resource.toURI());
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				classDir = new File(resource.getFile());
+			}
+
+			return scanDirectory(classDir, packageName);
+		}
+
+		Path jar;
+		try {
+			jar = Paths.get(((JarURLConnection) resource.openConnection()).getJarFileURL().toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			throw new IOException("Cannot find the Jar file of " + resource, e);
+		}
+
+		String prefix = packageName + ".";
+		List<String> classNames = new ArrayList<>();
+		for (String className : scanJar(jar)) {
+			if (className.startsWith(prefix)) {
+				classNames.add(className);
+			}
+		}
+
+		return classNames;
+	}
+
+	/**
+	 * This method finds all the classes if files are not inside jar.
+	 * 
+	 * @param classDir    the directory of the package
+	 * @param packageName the name of the package
+	 * @return the binary names of the classes
+	 * @throws FileNotFoundException if the directory does not exist
+	 */
+	private List<String> scanDirectory(File classDir, String packageName) throws FileNotFoundException {
 		if (!classDir.exists() || !classDir.isDirectory()) {
 			throw new FileNotFoundException("Assertions failed during loading of terminal commands");
 		}
 
+		List<String> classNames = new ArrayList<>();
 		for (File file : classDir.listFiles()) {
 			String fileName = file.getName();
 			if (!file.isFile()) {
 				continue;
 			}
 
-			if (fileName.matches(CLASS_NAME_PATTERN)) {
-				// load it
-				String sanitizedClassName = sanitizeClassName(fileName, packageName);
-				loadClass(sanitizedClassName);
+			if (CLASS_NAME.matcher(fileName).matches()) {
+				classNames.add(sanitizeClassName(fileName, packageName));
 			}
 		}
 
+		return classNames;
 	}
 
 	/**
-	 * This method loads all the classes if files are inside jar file.
+	 * This method finds all the classes of a jar, of all its packages. The
+	 * entries of the jar are enumerated only if the scan cache does not contain
+	 * the classes of the current content of the jar.
 	 * 
-	 * @param packageName the name of the package to search
-	 * @throws NoSuchMethodException     if the default constructor does not exists
-	 * @throws InvocationTargetException if the target of invocation is not
-	 *                                   acceptable
-	 * @throws IllegalArgumentException  if the argument of constructor are not
-	 *                                   valid
-	 * @throws IllegalAccessException    if the access to a class property is not
-	 *                                   legal
-	 * @throws InstantiationException    if we can't instantiate the command
-	 *                                   description
+	 * @param jar the jar
+	 * @return the binary names of the classes
+	 * @throws IOException if the jar cannot be read
 	 */
-	private void loadFromJar(JarFile jarFile, String packageName)
-			throws ClassNotFoundException, NoSuchMethodException, SecurityException, InstantiationException,
-			IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-		Enumeration<JarEntry> entries = jarFile.entries();
-		String slashedNotation = convertPackageName(packageName);
+	private List<String> scanJar(Path jar) throws IOException {
+		JarScanCache cache = scanCache;
+		String[] key = cache == null ? null : JarScanCache.key(jar);
 
-		while (entries.hasMoreElements()) {
-			JarEntry entry = entries.nextElement();
-			String entryName = entry.getName();
+		List<String> classNames = cache == null ? null : cache.get(jar, key);
+		if (classNames != null) {
+			return classNames;
+		}
 
-			if (!entryName.startsWith(slashedNotation)) {
-				continue;
+		classNames = new ArrayList<>();
+		try (JarFile jarFile = new JarFile(jar.toFile())) {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				String entryName = entries.nextElement().getName();
+				if (CLASS_NAME.matcher(entryName).matches()) {
+					classNames.add(convertToPackageName(entryName));
+				}
 			}
+		}
 
-			if (entryName.matches(CLASS_NAME_PATTERN)) {
-				// load it
-				String packageString = convertToPackageName(entryName);
-				loadClass(packageString);
-			}
+		if (cache != null) {
+			cache.put(jar, key, classNames);
 		}
+
+		return classNames;
 	}
 
 	/**
@@ -223,9 +547,10 @@ public class CommandLoader {
 	}
 
 	/**
-	 * Load the command inside terminal.
+	 * Instantiate a command.
 	 * 
-	 * @param className the class name to instantiate and load into terminal
+	 * @param className the class name to instantiate
+	 * @return the command
 	 * @throws ClassNotFoundException    in case of class is not found
 	 * @throws SecurityException         in case of constructor of command is not
 	 *                                   accessible
@@ -239,39 +564,53 @@ public class CommandLoader {
 	 * @throws InstantiationException    if we can't instantiate the command
 	 *                                   description
 	 */
-	private void loadClass(String className) throws ClassNotFoundException, NoSuchMethodException, SecurityException,
+	CommandDescription loadClass(String className) throws ClassNotFoundException, NoSuchMethodException, SecurityException,
 			InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		return loadFactory(className).newInstance();
+	}
+
+	/**
+	 * Load a command class and resolve its constructor.
+	 * 
+	 * @param className the class name to load
+	 * @return the factory of the commands of the class
+	 * @throws ClassNotFoundException in case of class is not found
+	 * @throws NoSuchMethodException  if the default constructor does not exists
+	 * @throws IllegalAccessException if the access to the constructor is not
+	 *                                legal
+	 * @throws InstantiationException if the class is abstract
+	 */
+	CommandFactory loadFactory(String className)
+			throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException, InstantiationException {
 		assert (className != null);
 		assert (className.length() > 0);
 
-		Class<?> clazz = Class.forName(className);
-		Constructor<?> constructor = clazz.getConstructor();
-		Object instance = constructor.newInstance();
+		Class<?> clazz = Class.forName(className, true, classLoader);
 
 		/*
 		 * casting
 		 */
-		if (!(instance instanceof CommandDescription)) {
+		if (!CommandDescription.class.isAssignableFrom(clazz)) {
 			throw new ClassCastException();
 		}
-		CommandDescription cd = (CommandDescription) instance;
+		CommandFactory factory = CommandFactory.of(clazz.asSubclass(CommandDescription.class));
 
 		// for info purposes
 		loadedClasses.add(className);
 
-		/*
-		 * Adding to terminal
-		 */
-		terminal.addCommand(cd);
+		return factory;
 	}
 
 	/**
-	 * Returns a list of loaded classes, useful for debugging.
+	 * Returns a list of loaded classes, useful for debugging. The classes of lazy
+	 * commands are in the list only after the first execution of the command.
 	 * 
 	 * @return a list of loaded classes.
 	 */
 	public List<String> getLoadedClasses() {
-		return new LinkedList<>(this.loadedClasses);
+		synchronized (loadedClasses) {
+			return new LinkedList<>(this.loadedClasses);
+		}
 	}
 
 }
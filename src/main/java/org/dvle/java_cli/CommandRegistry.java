@@ -0,0 +1,383 @@
+package org.dvle.java_cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class contains the commands that can be executed by one or more
+ * terminals. A registry can be shared by many terminals, also running in
+ * different threads, so the commands are stored once per JVM and not once per
+ * session.
+ *
+ * The commands are kept in an immutable snapshot that is replaced at each
+ * change (copy on write): reading the commands is wait-free, and commands can
+ * be added or removed while terminals are running. A line always uses the
+ * snapshot that was current when its command was searched. For many commands
+ * use {@link #addCommands(Collection)}, that copies the snapshot once.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class CommandRegistry {
+
+	/**
+	 * The current snapshot of the commands.
+	 */
+	private final AtomicReference<Snapshot> snapshot;
+
+	/**
+	 * Create an empty registry.
+	 */
+	public CommandRegistry() {
+		this.snapshot = new AtomicReference<>(new Snapshot(new CommandDescription[0], false));
+	}
+
+	/**
+	 * Add a command.
+	 *
+	 * @param cd the command description
+	 * @throws IllegalStateException if the registry is frozen
+	 */
+	public void addCommand(CommandDescription cd) {
+		if (cd == null) {
+			throw new NullPointerException();
+		}
+
+		addCommands(Collections.singletonList(cd));
+	}
+
+	/**
+	 * Add many commands at once. Either all the commands are added or none of
+	 * them.
+	 *
+	 * @param commands the command descriptions
+	 * @throws IllegalStateException if the registry is frozen
+	 */
+	public void addCommands(Collection<? extends CommandDescription> commands) {
+		if (commands == null || commands.contains(null)) {
+			throw new NullPointerException();
+		}
+
+		Snapshot current;
+		Snapshot next;
+		do {
+			current = snapshot.get();
+			checkNotFrozen(current);
+
+			// a single command is searched in the snapshot, without building a set
+			Set<String> names = new HashSet<>();
+			if (commands.size() > 1) {
+				for (CommandDescription cd : current.commands) {
+					names.add(cd.name);
+				}
+			}
+
+			CommandDescription[] added = Arrays.copyOf(current.commands, current.commands.length + commands.size());
+			int i = current.commands.length;
+			for (CommandDescription cd : commands) {
+				if (!names.add(cd.name) || (commands.size() == 1 && current.find(cd.name) != null)) {
+					throw new RuntimeException("You cannot add more command with the same name!");
+				}
+				added[i++] = cd;
+			}
+
+			next = new Snapshot(added, false);
+		} while (!snapshot.compareAndSet(current, next));
+	}
+
+	/**
+	 * Add many commands at once, replacing the commands with the same names. A
+	 * replaced command keeps its position, and lines already parsed continue to
+	 * execute it. Either all the commands are added or replaced or none of them.
+	 *
+	 * @param commands the command descriptions, with different names
+	 * @return the replaced commands
+	 * @throws IllegalStateException if the registry is frozen
+	 */
+	public List<CommandDescription> replaceCommands(Collection<? extends CommandDescription> commands) {
+		if (commands == null || commands.contains(null)) {
+			throw new NullPointerException();
+		}
+
+		Map<String, CommandDescription> byName = new LinkedHashMap<>();
+		for (CommandDescription cd : commands) {
+			if (byName.put(cd.name, cd) != null) {
+				throw new RuntimeException("You cannot add more command with the same name!");
+			}
+		}
+
+		Snapshot current;
+		Snapshot next;
+		List<CommandDescription> replaced;
+		do {
+			current = snapshot.get();
+			checkNotFrozen(current);
+
+			Map<String, CommandDescription> added = new LinkedHashMap<>(byName);
+			List<CommandDescription> result = new ArrayList<>(current.commands.length + commands.size());
+			replaced = new ArrayList<>();
+			for (CommandDescription cd : current.commands) {
+				CommandDescription replacement = added.remove(cd.name);
+				if (replacement == null) {
+					result.add(cd);
+				} else {
+					result.add(replacement);
+					replaced.add(cd);
+				}
+			}
+			result.addAll(added.values());
+
+			next = new Snapshot(result.toArray(new CommandDescription[result.size()]), false);
+		} while (!snapshot.compareAndSet(current, next));
+
+		return replaced;
+	}
+
+	/**
+	 * Add a command if no command with the same name exists.
+	 *
+	 * @param cd the command description
+	 * @return the command with the same name already in the registry, or null if
+	 *         the command has been added
+	 * @throws IllegalStateException if the registry is frozen and the command is
+	 *                               not already in it
+	 */
+	public CommandDescription addCommandIfAbsent(CommandDescription cd) {
+		if (cd == null) {
+			throw new NullPointerException();
+		}
+
+		Snapshot current;
+		Snapshot next;
+		do {
+			current = snapshot.get();
+			CommandDescription existing = current.find(cd.name);
+			if (existing != null) {
+				return existing;
+			}
+			checkNotFrozen(current);
+
+			CommandDescription[] added = Arrays.copyOf(current.commands, current.commands.length + 1);
+			added[current.commands.length] = cd;
+			next = new Snapshot(added, false);
+		} while (!snapshot.compareAndSet(current, next));
+
+		return null;
+	}
+
+	/**
+	 * Remove a command. Lines already parsed continue to execute it.
+	 *
+	 * @param name the name of the command
+	 * @return the removed command, null if there is no command with this name
+	 * @throws IllegalStateException if the registry is frozen
+	 */
+	public CommandDescription removeCommand(String name) {
+		if (name == null) {
+			throw new NullPointerException();
+		}
+
+		Snapshot current;
+		Snapshot next;
+		CommandDescription removed;
+		do {
+			current = snapshot.get();
+			checkNotFrozen(current);
+
+			removed = current.find(name);
+			if (removed == null) {
+				return null;
+			}
+
+			CommandDescription[] remaining = new CommandDescription[current.commands.length - 1];
+			int i = 0;
+			for (CommandDescription cd : current.commands) {
+				if (cd != removed) {
+					remaining[i++] = cd;
+				}
+			}
+
+			next = new Snapshot(remaining, false);
+		} while (!snapshot.compareAndSet(current, next));
+
+		return removed;
+	}
+
+	/**
+	 * Get a command by name.
+	 *
+	 * @param name the name of the command
+	 * @return the command description, null if not found
+	 */
+	public CommandDescription getCommand(String name) {
+		if (name == null) {
+			throw new NullPointerException();
+		}
+
+		return snapshot.get().find(name);
+	}
+
+	/**
+	 * Get the commands of the registry, in order of insertion.
+	 *
+	 * @return an unmodifiable list of the current commands
+	 */
+	public List<CommandDescription> getCommands() {
+		return Collections.unmodifiableList(Arrays.asList(snapshot.get().commands));
+	}
+
+	/**
+	 * Get the number of commands.
+	 *
+	 * @return the number of commands
+	 */
+	public int size() {
+		return snapshot.get().commands.length;
+	}
+
+	/**
+	 * Freeze the commands of this registry, usually after loading them. The
+	 * tables of command and argument names are built once, with a minimal perfect
+	 * hash in flat arrays. After this call commands cannot be added or removed
+	 * and the arguments of the commands cannot be changed. Calling this method on
+	 * a frozen registry has no effect.
+	 *
+	 * The tables are the same that a registry not frozen builds at the first
+	 * lookup, so freezing does not reduce the heap retained by the registry: it
+	 * moves the building out of the first lines and makes the tables final.
+	 */
+	public void freeze() {
+		Snapshot current;
+		Snapshot next;
+		do {
+			current = snapshot.get();
+			if (current.frozen) {
+				return;
+			}
+
+			for (CommandDescription cd : current.commands) {
+				cd.freeze();
+			}
+
+			next = new Snapshot(current.commands, true);
+			next.getTable();
+		} while (!snapshot.compareAndSet(current, next));
+	}
+
+	/**
+	 * Check if the commands of this registry are frozen.
+	 *
+	 * @return true if {@link #freeze()} has been called
+	 */
+	public boolean isFrozen() {
+		return snapshot.get().frozen;
+	}
+
+	/**
+	 * Get the table used to search commands by name in the current snapshot.
+	 *
+	 * @return the table of commands
+	 */
+	NameTable<CommandDescription> getTable() {
+		return snapshot.get().getTable();
+	}
+
+	/**
+	 * Throw an exception if a snapshot is frozen.
+	 *
+	 * @param current the snapshot
+	 */
+	private static void checkNotFrozen(Snapshot current) {
+		if (current.frozen) {
+			throw new IllegalStateException("The commands of a frozen registry cannot be changed");
+		}
+	}
+
+	/**
+	 * An immutable snapshot of the commands.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class Snapshot {
+
+		/**
+		 * The commands in order of insertion.
+		 */
+		final CommandDescription[] commands;
+
+		/**
+		 * True if the registry is frozen.
+		 */
+		final boolean frozen;
+
+		/**
+		 * The table of the commands by name, built at the first lookup. Threads that
+		 * build it at the same time build equal tables.
+		 */
+		private volatile NameTable<CommandDescription> table;
+
+		/**
+		 * Create a new snapshot.
+		 *
+		 * @param commands the commands, that must not be modified anymore
+		 * @param frozen   true if the registry is frozen
+		 */
+		Snapshot(CommandDescription[] commands, boolean frozen) {
+			this.commands = commands;
+			this.frozen = frozen;
+		}
+
+		/**
+		 * Get the table of the commands, building it if needed.
+		 *
+		 * @return the table
+		 */
+		NameTable<CommandDescription> getTable() {
+			NameTable<CommandDescription> result = table;
+
+			if (result == null) {
+				List<String> names = new ArrayList<>(commands.length);
+				for (CommandDescription cd : commands) {
+					names.add(cd.name);
+				}
+
+				result = new NameTable<>(names, Arrays.asList(commands));
+				table = result;
+			}
+
+			return result;
+		}
+
+		/**
+		 * Search a command by name.
+		 *
+		 * @param name the name
+		 * @return the command, null if not found
+		 */
+		CommandDescription find(String name) {
+			NameTable<CommandDescription> result = table;
+
+			if (result != null) {
+				int index = result.indexOf(name);
+				return index < 0 ? null : result.valueAt(index);
+			}
+
+			for (CommandDescription cd : commands) {
+				if (cd.name.equals(name)) {
+					return cd;
+				}
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,337 @@
+package org.dvle.java_cli;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+
+/**
+ * This class accumulates the CPU time and the memory allocated by the commands
+ * executed by terminals, by command name, to find the commands that load the
+ * garbage collector in long sessions. It is enabled with
+ * {@link Terminal#enableResourceUsage(CommandResourceUsage, boolean)} and it
+ * can be shared by many terminals.
+ *
+ * The terminal samples the CPU time and the allocated bytes of the executing
+ * thread before and after each call of
+ * {@link CommandDescription#runCommand(ParsedArguments, ExecutionEnvironment)},
+ * through {@link com.sun.management.ThreadMXBean}. So the totals include the
+ * propagation of the events of the command, but not the work that the command
+ * delegates to other threads.
+ *
+ * This class also provides the built-in command {@literal usage}, that prints
+ * the totals and the averages per invocation, the commands that allocate more
+ * first: {@literal usage [--command=name] [--reset]}.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class CommandResourceUsage {
+
+	/**
+	 * The totals of a command.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	public static final class Usage {
+
+		/**
+		 * The number of invocations.
+		 */
+		private final LongAdder invocations = new LongAdder();
+
+		/**
+		 * The CPU time in nanoseconds.
+		 */
+		private final LongAdder cpuNanos = new LongAdder();
+
+		/**
+		 * The allocated memory in bytes.
+		 */
+		private final LongAdder allocatedBytes = new LongAdder();
+
+		/**
+		 * Create empty totals.
+		 */
+		private Usage() {
+		}
+
+		/**
+		 * Get the number of measured invocations.
+		 *
+		 * @return the number of invocations
+		 */
+		public long getInvocations() {
+			return invocations.sum();
+		}
+
+		/**
+		 * Get the total CPU time of the invocations.
+		 *
+		 * @return the CPU time in nanoseconds
+		 */
+		public long getCpuNanos() {
+			return cpuNanos.sum();
+		}
+
+		/**
+		 * Get the total memory allocated by the invocations.
+		 *
+		 * @return the allocated memory in bytes
+		 */
+		public long getAllocatedBytes() {
+			return allocatedBytes.sum();
+		}
+	}
+
+	/**
+	 * The bean that measures the threads.
+	 */
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	/**
+	 * The totals of each command, by name.
+	 */
+	private final Map<String, Usage> usages;
+
+	/**
+	 * Create empty totals, enabling the measurement of CPU time and allocated
+	 * memory of the threads.
+	 *
+	 * @throws UnsupportedOperationException if the JVM cannot measure the
+	 *                                       threads
+	 */
+	public CommandResourceUsage() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			throw new UnsupportedOperationException("This JVM cannot measure the memory allocated by threads");
+		}
+
+		this.threadBean = (com.sun.management.ThreadMXBean) bean;
+		if (!threadBean.isThreadAllocatedMemorySupported() || !threadBean.isCurrentThreadCpuTimeSupported()) {
+			throw new UnsupportedOperationException("This JVM cannot measure the CPU time and memory of threads");
+		}
+
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		threadBean.setThreadCpuTimeEnabled(true);
+		this.usages = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Get the CPU time of the current thread.
+	 *
+	 * @return the CPU time in nanoseconds
+	 */
+	long currentCpuNanos() {
+		return threadBean.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * Get the memory allocated by the current thread.
+	 *
+	 * @return the allocated memory in bytes
+	 */
+	long currentAllocatedBytes() {
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Add an invocation to the totals of a command.
+	 *
+	 * @param command        the name of the command
+	 * @param cpuNanos       the CPU time of the invocation in nanoseconds
+	 * @param allocatedBytes the memory allocated by the invocation in bytes
+	 */
+	public void record(String command, long cpuNanos, long allocatedBytes) {
+		Usage usage = usages.get(command);
+
+		if (usage == null) {
+			usage = usages.computeIfAbsent(command, name -> new Usage());
+		}
+
+		usage.invocations.increment();
+		usage.cpuNanos.add(Math.max(cpuNanos, 0));
+		usage.allocatedBytes.add(Math.max(allocatedBytes, 0));
+	}
+
+	/**
+	 * Get the names of the measured commands.
+	 *
+	 * @return the names, in alphabetical order
+	 */
+	public SortedSet<String> getCommandNames() {
+		return new TreeSet<>(usages.keySet());
+	}
+
+	/**
+	 * Get the totals of a command.
+	 *
+	 * @param command the name of the command
+	 * @return the totals, null if the command has never been executed
+	 */
+	public Usage getUsage(String command) {
+		if (command == null) {
+			throw new NullPointerException();
+		}
+
+		return usages.get(command);
+	}
+
+	/**
+	 * Remove all the totals.
+	 */
+	public void reset() {
+		usages.clear();
+	}
+
+	/**
+	 * Remove the totals of a command.
+	 *
+	 * @param command the name of the command
+	 */
+	public void reset(String command) {
+		usages.remove(command);
+	}
+
+	/**
+	 * Format a number of bytes with a readable unit.
+	 *
+	 * @param bytes the number of bytes
+	 * @return the formatted number
+	 */
+	static String formatBytes(long bytes) {
+		if (bytes < 10 * 1024) {
+			return bytes + " B";
+		}
+
+		if (bytes < 10 * 1024 * 1024) {
+			return bytes / 1024 + " KiB";
+		}
+
+		return bytes / (1024 * 1024) + " MiB";
+	}
+
+	/**
+	 * Create the built-in command that prints the totals. The command prints the
+	 * totals of the terminal that executes it, so it can be shared by terminals
+	 * with the same registry.
+	 *
+	 * @return the command
+	 */
+	static CommandDescription createCommand() {
+		return new UsageCommandDescription();
+	}
+
+	/**
+	 * The command that prints the totals.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class UsageCommandDescription extends ParsedCommandDescription {
+
+		/**
+		 * The name of the command to print, all if missing.
+		 */
+		private final ArgumentDescription commandDescription;
+
+		/**
+		 * The flag to remove the totals after printing them.
+		 */
+		private final ArgumentDescription resetDescription;
+
+		/**
+		 * Create the command.
+		 */
+		UsageCommandDescription() {
+			super("usage");
+			commandDescription = new ArgumentDescription("command", ArgumentValueType.STRING, false);
+			resetDescription = new ArgumentDescription("reset");
+			addArgument(commandDescription);
+			addArgument(resetDescription);
+		}
+
+		@Override
+		public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+				throws CommandExecutionException {
+			CommandResourceUsage resourceUsage = exe.getTerminal().getResourceUsage();
+
+			if (resourceUsage == null) {
+				throw new CommandExecutionException("Resource usage is not enabled");
+			}
+
+			List<String> commands = new ArrayList<>();
+			if (arguments.has(commandDescription)) {
+				commands.add(arguments.getString(commandDescription));
+			} else {
+				commands.addAll(resourceUsage.getCommandNames());
+			}
+
+			// the totals are read once, the commands can be executed meanwhile
+			List<Row> rows = new ArrayList<>();
+			for (String command : commands) {
+				Usage usage = resourceUsage.getUsage(command);
+
+				if (usage != null && usage.getInvocations() > 0) {
+					rows.add(new Row(command, usage));
+				}
+			}
+			rows.sort((a, b) -> Long.compare(b.allocatedBytes, a.allocatedBytes));
+
+			exe.out.println(String.format("%-16s %12s %10s %10s %12s %12s", "command", "invocations", "cpu",
+					"cpu/inv", "allocated", "alloc/inv"));
+			for (Row row : rows) {
+				exe.out.println(String.format("%-16s %12d %10s %10s %12s %12s", row.command, row.invocations,
+						CommandStatistics.format(row.cpuNanos), CommandStatistics.format(row.cpuNanos / row.invocations),
+						formatBytes(row.allocatedBytes), formatBytes(row.allocatedBytes / row.invocations)));
+			}
+
+			if (arguments.has(resetDescription)) {
+				if (arguments.has(commandDescription)) {
+					resourceUsage.reset(arguments.getString(commandDescription));
+				} else {
+					resourceUsage.reset();
+				}
+			}
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	}
+
+	/**
+	 * The totals of a command read at a given time.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class Row {
+		final String command;
+		final long invocations;
+		final long cpuNanos;
+		final long allocatedBytes;
+
+		/**
+		 * Read the totals of a command.
+		 *
+		 * @param command the name of the command
+		 * @param usage   the totals
+		 */
+		Row(String command, Usage usage) {
+			this.command = command;
+			this.invocations = usage.getInvocations();
+			this.cpuNanos = usage.getCpuNanos();
+			this.allocatedBytes = usage.getAllocatedBytes();
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package org.dvle.java_cli;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+
+/**
+ * This class collects the latencies of the commands executed by terminals, by
+ * command name and by stage of the execution (see {@link Stage}). It is
+ * enabled with {@link Terminal#enableStatistics(CommandStatistics, boolean)}
+ * and it can be shared by many terminals, for example the sessions of a
+ * server.
+ *
+ * The latencies are recorded in a {@link LatencyHistogram} for each command and
+ * stage, created at the first execution of the command. Recording is lock-free
+ * and does not allocate. When the statistics are not enabled, the terminal does
+ * not even read the clock.
+ *
+ * This class also provides the built-in command {@literal stats}, that prints
+ * the count, the median, the 99th percentile and the maximum of each stage:
+ * {@literal stats [--command=name] [--reset]}.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class CommandStatistics {
+
+	/**
+	 * The stages of the execution of a line.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	public enum Stage {
+		/**
+		 * The tokenization of the line and the lookup of the command.
+		 */
+		PARSE,
+
+		/**
+		 * The lookup of the arguments and the conversion of their values.
+		 */
+		CONVERT,
+
+		/**
+		 * The execution of the command, including the propagation of the events it
+		 * sends to the listeners.
+		 */
+		RUN,
+
+		/**
+		 * The propagation of an event of the command to the listeners.
+		 */
+		PROPAGATE
+	}
+
+	/**
+	 * The stages, to avoid the copy of {@link Stage#values()}.
+	 */
+	private static final Stage[] STAGES = Stage.values();
+
+	/**
+	 * The histograms of each command, by name.
+	 */
+	private final Map<String, LatencyHistogram[]> histograms;
+
+	/**
+	 * Create empty statistics.
+	 */
+	public CommandStatistics() {
+		this.histograms = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Record the latency of a stage of a command.
+	 *
+	 * @param command the name of the command
+	 * @param stage   the stage
+	 * @param nanos   the latency in nanoseconds
+	 */
+	public void record(String command, Stage stage, long nanos) {
+		histogramsOf(command)[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Get the histograms of a command, creating them at the first call.
+	 *
+	 * @param command the name of the command
+	 * @return the histograms, indexed by the ordinal of the stage
+	 */
+	private LatencyHistogram[] histogramsOf(String command) {
+		LatencyHistogram[] commandHistograms = histograms.get(command);
+
+		if (commandHistograms == null) {
+			commandHistograms = histograms.computeIfAbsent(command, name -> {
+				LatencyHistogram[] created = new LatencyHistogram[STAGES.length];
+				for (int i = 0; i < created.length; i++) {
+					created[i] = new LatencyHistogram();
+				}
+				return created;
+			});
+		}
+
+		return commandHistograms;
+	}
+
+	/**
+	 * Get the names of the commands with recorded latencies.
+	 *
+	 * @return the names, in alphabetical order
+	 */
+	public SortedSet<String> getCommandNames() {
+		return new TreeSet<>(histograms.keySet());
+	}
+
+	/**
+	 * Get the histogram of a stage of a command.
+	 *
+	 * @param command the name of the command
+	 * @param stage   the stage
+	 * @return the histogram, null if the command has never been executed
+	 */
+	public LatencyHistogram getHistogram(String command, Stage stage) {
+		if (command == null || stage == null) {
+			throw new NullPointerException();
+		}
+
+		LatencyHistogram[] commandHistograms = histograms.get(command);
+		return commandHistograms == null ? null : commandHistograms[stage.ordinal()];
+	}
+
+	/**
+	 * Remove all the recorded latencies.
+	 */
+	public void reset() {
+		histograms.clear();
+	}
+
+	/**
+	 * Remove the recorded latencies of a command.
+	 *
+	 * @param command the name of the command
+	 */
+	public void reset(String command) {
+		histograms.remove(command);
+	}
+
+	/**
+	 * Print the statistics of a command, one line for each stage with
+	 * recordings.
+	 *
+	 * @param command the name of the command
+	 * @param out     the stream where the statistics are printed
+	 */
+	private void print(String command, PrintStream out) {
+		LatencyHistogram[] commandHistograms = histograms.get(command);
+		if (commandHistograms == null) {
+			return;
+		}
+
+		for (Stage stage : STAGES) {
+			LatencyHistogram histogram = commandHistograms[stage.ordinal()];
+			long count = histogram.getCount();
+
+			if (count > 0) {
+				out.println(String.format("%-16s %-10s %10d %10s %10s %10s", command, stage.name().toLowerCase(),
+						count, format(histogram.getValueAtPercentile(50)), format(histogram.getValueAtPercentile(99)),
+						format(histogram.getMax())));
+			}
+		}
+	}
+
+	/**
+	 * Format a latency with a readable unit.
+	 *
+	 * @param nanos the latency in nanoseconds
+	 * @return the formatted latency
+	 */
+	static String format(long nanos) {
+		if (nanos < 10_000) {
+			return nanos + " ns";
+		}
+
+		if (nanos < 10_000_000) {
+			return nanos / 1_000 + " us";
+		}
+
+		return nanos / 1_000_000 + " ms";
+	}
+
+	/**
+	 * Create the built-in command that prints the statistics. The command prints
+	 * the statistics of the terminal that executes it, so it can be shared by
+	 * terminals with the same registry.
+	 *
+	 * @return the command
+	 */
+	static CommandDescription createCommand() {
+		return new StatsCommandDescription();
+	}
+
+	/**
+	 * The command that prints the statistics.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class StatsCommandDescription extends ParsedCommandDescription {
+
+		/**
+		 * The name of the command to print, all if missing.
+		 */
+		private final ArgumentDescription commandDescription;
+
+		/**
+		 * The flag to remove the statistics after printing them.
+		 */
+		private final ArgumentDescription resetDescription;
+
+		/**
+		 * Create the command.
+		 */
+		StatsCommandDescription() {
+			super("stats");
+			commandDescription = new ArgumentDescription("command", ArgumentValueType.STRING, false);
+			resetDescription = new ArgumentDescription("reset");
+			addArgument(commandDescription);
+			addArgument(resetDescription);
+		}
+
+		@Override
+		public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+				throws CommandExecutionException {
+			CommandStatistics statistics = exe.getTerminal().getStatistics();
+
+			if (statistics == null) {
+				throw new CommandExecutionException("Statistics are not enabled");
+			}
+
+			exe.out.println(String.format("%-16s %-10s %10s %10s %10s %10s", "command", "stage", "count", "p50", "p99",
+					"max"));
+
+			if (arguments.has(commandDescription)) {
+				String command = arguments.getString(commandDescription);
+				statistics.print(command, exe.out);
+
+				if (arguments.has(resetDescription)) {
+					statistics.reset(command);
+				}
+			} else {
+				for (String command : statistics.getCommandNames()) {
+					statistics.print(command, exe.out);
+				}
+
+				if (arguments.has(resetDescription)) {
+					statistics.reset();
+				}
+			}
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package org.dvle.java_cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches the directory of a package of commands and reloads the
+ * commands whose class files change, without restarting the terminals. It is
+ * created by {@link CommandLoader#watch(java.io.File, String)}.
+ *
+ * The changed classes are loaded by a new {@link ReloadingClassLoader}, that
+ * is discarded with the old versions of the commands: it is collected once
+ * the terminals have executed a line after the reload. The new commands replace
+ * the old ones in the registry all together (see
+ * {@link CommandRegistry#replaceCommands(java.util.Collection)}), so the
+ * invocations already running finish with the old version. Deleted class files
+ * are ignored: their commands keep their last version.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class CommandWatcher implements Closeable {
+
+	/**
+	 * The time without changes after which the changed classes are reloaded, in
+	 * milliseconds. A compiler usually writes many files in a short time.
+	 */
+	private static final long QUIET_PERIOD = 100;
+
+	/**
+	 * The registry where the commands are replaced.
+	 */
+	private final CommandRegistry registry;
+
+	/**
+	 * The parent of the class loaders of the reloaded classes.
+	 */
+	private final ClassLoader parent;
+
+	/**
+	 * The directory of the package.
+	 */
+	private final Path packageDirectory;
+
+	/**
+	 * The name of the package.
+	 */
+	private final String packageName;
+
+	/**
+	 * The service that receives the changes of the directory.
+	 */
+	private final WatchService watchService;
+
+	/**
+	 * The thread that reloads the commands.
+	 */
+	private final Thread thread;
+
+	/**
+	 * The number of reloads done.
+	 */
+	private volatile int reloads;
+
+	/**
+	 * The last error while loading a changed class, null if none.
+	 */
+	private volatile Throwable lastFailure;
+
+	/**
+	 * Create a watcher and start watching.
+	 *
+	 * @param registry         the registry where the commands are replaced
+	 * @param parent           the parent of the class loaders
+	 * @param packageDirectory the directory of the package
+	 * @param packageName      the name of the package
+	 * @throws IOException if the directory cannot be watched
+	 */
+	CommandWatcher(CommandRegistry registry, ClassLoader parent, Path packageDirectory, String packageName)
+			throws IOException {
+		this.registry = registry;
+		this.parent = parent;
+		this.packageDirectory = packageDirectory;
+		this.packageName = packageName;
+		this.watchService = packageDirectory.getFileSystem().newWatchService();
+
+		try {
+			packageDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException | RuntimeException e) {
+			watchService.close();
+			throw e;
+		}
+
+		this.thread = new Thread(this::watch, "command-watcher-" + packageName);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Get the number of reloads done. Each reload replaces all the commands
+	 * changed at the same time.
+	 *
+	 * @return the number of reloads
+	 */
+	public int getReloadCount() {
+		return reloads;
+	}
+
+	/**
+	 * Get the last error while loading a changed class, for example because it
+	 * does not compile anymore. The class is loaded again at its next change.
+	 *
+	 * @return the error, null if none
+	 */
+	public Throwable getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Stop watching. The reloaded commands stay in the registry.
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Receive the changes of the directory until the watcher is closed.
+	 */
+	private void watch() {
+		Set<String> changed = new LinkedHashSet<>();
+
+		try {
+			while (true) {
+				WatchKey key = changed.isEmpty() ? watchService.take()
+						: watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+
+				if (key == null) {
+					reload(changed);
+					changed.clear();
+					continue;
+				}
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						addAll(changed);
+					} else {
+						String fileName = ((Path) event.context()).getFileName().toString();
+						if (CommandLoader.CLASS_NAME.matcher(fileName).matches()) {
+							changed.add(fileName);
+						}
+					}
+				}
+
+				if (!key.reset()) {
+					// the directory does not exist anymore
+					return;
+				}
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// closed
+		}
+	}
+
+	/**
+	 * Add all the command classes of the directory, when some changes are lost.
+	 *
+	 * @param changed the names of the changed files
+	 */
+	private void addAll(Set<String> changed) {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(packageDirectory)) {
+			for (Path file : files) {
+				String fileName = file.getFileName().toString();
+				if (CommandLoader.CLASS_NAME.matcher(fileName).matches()) {
+					changed.add(fileName);
+				}
+			}
+		} catch (IOException e) {
+			lastFailure = e;
+		}
+	}
+
+	/**
+	 * Load the changed classes in a new class loader and replace their
+	 * commands.
+	 *
+	 * @param changed the names of the changed files
+	 */
+	private void reload(Set<String> changed) {
+		ClassLoader classLoader = new ReloadingClassLoader(parent, packageDirectory, packageName);
+		List<CommandDescription> commands = new ArrayList<>();
+
+		for (String fileName : changed) {
+			String className = packageName + "." + fileName.substring(0, fileName.length() - ".class".length());
+
+			try {
+				Class<?> clazz = Class.forName(className, true, classLoader);
+				if (CommandDescription.class.isAssignableFrom(clazz) && !Modifier.isAbstract(clazz.getModifiers())) {
+					commands.add(CommandFactory.of(clazz.asSubclass(CommandDescription.class)).newInstance());
+				}
+			} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+				lastFailure = e;
+			}
+		}
+
+		if (commands.isEmpty()) {
+			return;
+		}
+
+		try {
+			registry.replaceCommands(commands);
+			reloads++;
+		} catch (RuntimeException e) {
+			lastFailure = e;
+		}
+	}
+}
@@ -19,7 +19,7 @@ public class ExecutionEnvironment {
 	/**
 	 * The invocation of command
 	 */
-	private final CommandInvocation commandInvocation;
+	private CommandInvocation commandInvocation;
 
 	/**
 	 * A stream to print out.
@@ -49,16 +49,35 @@ public class ExecutionEnvironment {
 		this.commandInvocation = ci;
 	}
 
+	/**
+	 * Change the invocation of command, to reuse this environment.
+	 * 
+	 * @param ci the new invocation
+	 */
+	void setCommandInvocation(CommandInvocation ci) {
+		if (ci == null) {
+			throw new NullPointerException();
+		}
+
+		this.commandInvocation = ci;
+	}
+
+	/**
+	 * Get the terminal that executes the command.
+	 * 
+	 * @return the terminal
+	 */
+	Terminal getTerminal() {
+		return terminal;
+	}
+
 	/**
 	 * Send a command to handlers registered to terminal.
 	 * 
 	 * @param data an useful data object to be inserted, null if not desired
 	 */
 	public void sendCommandToHandlers(Object data) {
-		// creating event
-		CommandEvent ce = new CommandEvent(commandInvocation);
-		ce.data = data;
-		terminal.propagateCommand(ce);
+		terminal.sendCommand(commandInvocation, data);
 	}
 
 }
@@ -0,0 +1,282 @@
+package org.dvle.java_cli;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class contains the JDK Flight Recorder events of the terminal, one for
+ * each phase of the execution of a line. They are configured by the settings
+ * template {@literal java-cli.jfc}, in the resources of this package.
+ *
+ * An event is created only when its type is enabled in a running recording
+ * (see {@link EventType#isEnabled()}), so the phases do not allocate and do
+ * not read the clock when nothing is recorded.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class FlightRecorderEvents {
+
+	/**
+	 * The outcome of a successful phase.
+	 */
+	static final String OK = "ok";
+
+	/**
+	 * The outcome of a line without a known command.
+	 */
+	static final String NOT_FOUND = "not found";
+
+	/**
+	 * The outcome of a propagation stopped by a listener.
+	 */
+	static final String CONSUMED = "consumed";
+
+	/**
+	 * The outcome of a propagation published on the event bus.
+	 */
+	static final String PUBLISHED = "published";
+
+	/**
+	 * The outcome of a propagation dropped by the event bus.
+	 */
+	static final String DROPPED = "dropped";
+
+	/**
+	 * The outcome of the end of the input.
+	 */
+	static final String END_OF_INPUT = "end of input";
+
+	/**
+	 * This class cannot be instantiated.
+	 */
+	private FlightRecorderEvents() {
+	}
+
+	/**
+	 * Get the outcome of a phase that fails.
+	 *
+	 * @param t the error of the phase
+	 * @return the outcome
+	 */
+	static String outcome(Throwable t) {
+		return t.getClass().getSimpleName();
+	}
+
+	/**
+	 * Start the event of the read of a line.
+	 *
+	 * @return the started event, null if it is not recorded
+	 */
+	static LineReadEvent lineRead() {
+		if (!Types.LINE_READ.isEnabled()) {
+			return null;
+		}
+
+		LineReadEvent event = new LineReadEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Start the event of the detection of a command.
+	 *
+	 * @return the started event, null if it is not recorded
+	 */
+	static DetectCommandEvent detectCommand() {
+		if (!Types.DETECT_COMMAND.isEnabled()) {
+			return null;
+		}
+
+		DetectCommandEvent event = new DetectCommandEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Start the event of the parsing of the arguments.
+	 *
+	 * @return the started event, null if it is not recorded
+	 */
+	static ParseArgumentsEvent parseArguments() {
+		if (!Types.PARSE_ARGUMENTS.isEnabled()) {
+			return null;
+		}
+
+		ParseArgumentsEvent event = new ParseArgumentsEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Start the event of the execution of a command.
+	 *
+	 * @return the started event, null if it is not recorded
+	 */
+	static RunCommandEvent runCommand() {
+		if (!Types.RUN_COMMAND.isEnabled()) {
+			return null;
+		}
+
+		RunCommandEvent event = new RunCommandEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Start the event of the propagation of a command event.
+	 *
+	 * @return the started event, null if it is not recorded
+	 */
+	static PropagateCommandEvent propagateCommand() {
+		if (!Types.PROPAGATE_COMMAND.isEnabled()) {
+			return null;
+		}
+
+		PropagateCommandEvent event = new PropagateCommandEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * The types of the events, registered when the first event is started.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class Types {
+		static final EventType LINE_READ = EventType.getEventType(LineReadEvent.class);
+		static final EventType DETECT_COMMAND = EventType.getEventType(DetectCommandEvent.class);
+		static final EventType PARSE_ARGUMENTS = EventType.getEventType(ParseArgumentsEvent.class);
+		static final EventType RUN_COMMAND = EventType.getEventType(RunCommandEvent.class);
+		static final EventType PROPAGATE_COMMAND = EventType.getEventType(PropagateCommandEvent.class);
+	}
+
+	/**
+	 * The read of a line by an interactive terminal.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	@Name("org.dvle.java_cli.LineRead")
+	@Label("Line Read")
+	@Category("Java CLI")
+	@Description("The wait for a line of an interactive terminal")
+	static final class LineReadEvent extends Event {
+
+		@Label("Length")
+		int length;
+
+		@Label("Outcome")
+		String outcome;
+
+		/**
+		 * End the event and commit it.
+		 *
+		 * @param length  the length of the line
+		 * @param outcome the outcome of the read
+		 */
+		void finish(int length, String outcome) {
+			end();
+
+			if (shouldCommit()) {
+				this.length = length;
+				this.outcome = outcome;
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * The base of the events of a phase of a command.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	abstract static class CommandPhaseEvent extends Event {
+
+		@Label("Command")
+		String command;
+
+		@Label("Argument Count")
+		int argumentCount;
+
+		@Label("Outcome")
+		String outcome;
+
+		/**
+		 * End the event and commit it.
+		 *
+		 * @param command       the name of the command, null if it is unknown
+		 * @param argumentCount the number of arguments
+		 * @param outcome       the outcome of the phase
+		 */
+		void finish(String command, int argumentCount, String outcome) {
+			end();
+
+			if (shouldCommit()) {
+				this.command = command;
+				this.argumentCount = argumentCount;
+				this.outcome = outcome;
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * The tokenization of a line and the lookup of its command.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	@Name("org.dvle.java_cli.DetectCommand")
+	@Label("Detect Command")
+	@Category("Java CLI")
+	@Description("The tokenization of a line and the lookup of its command")
+	static final class DetectCommandEvent extends CommandPhaseEvent {
+	}
+
+	/**
+	 * The lookup of the arguments of a command and the conversion of their
+	 * values.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	@Name("org.dvle.java_cli.ParseArguments")
+	@Label("Parse Arguments")
+	@Category("Java CLI")
+	@Description("The lookup of the arguments of a command and the conversion of their values")
+	static final class ParseArgumentsEvent extends CommandPhaseEvent {
+	}
+
+	/**
+	 * The execution of a command.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	@Name("org.dvle.java_cli.RunCommand")
+	@Label("Run Command")
+	@Category("Java CLI")
+	@Description("The execution of a command, including the events it propagates")
+	static final class RunCommandEvent extends CommandPhaseEvent {
+	}
+
+	/**
+	 * The propagation of a command event to the listeners.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	@Name("org.dvle.java_cli.PropagateCommand")
+	@Label("Propagate Command")
+	@Category("Java CLI")
+	@Description("The propagation of a command event to the listeners")
+	static final class PropagateCommandEvent extends CommandPhaseEvent {
+	}
+}
@@ -0,0 +1,151 @@
+package org.dvle.java_cli;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores on disk the classes found by scanning a jar, so a jar
+ * that did not change is not enumerated again by the next start. There is one
+ * file for each jar, that is valid while the path, the size and the
+ * modification time of the jar are the same of the scan.
+ *
+ * The files are written atomically, so many processes can share the same
+ * directory. A file that cannot be read or written is ignored, because the
+ * jar can always be scanned again.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class JarScanCache {
+
+	/**
+	 * The first line of the files, to ignore files of other versions.
+	 */
+	private static final String HEADER = "java-cli-scan-cache 1";
+
+	/**
+	 * The lines that precede the classes: header, path, size and modification
+	 * time.
+	 */
+	private static final int HEADER_LINES = 4;
+
+	/**
+	 * The directory of the files.
+	 */
+	private final Path directory;
+
+	/**
+	 * Create a cache that stores its files in a directory.
+	 *
+	 * @param directory the directory, created when needed
+	 */
+	JarScanCache(Path directory) {
+		if (directory == null) {
+			throw new NullPointerException();
+		}
+
+		this.directory = directory;
+	}
+
+	/**
+	 * Get the classes found by the last scan of a jar.
+	 *
+	 * @param jar the jar
+	 * @param key the key of the current content of the jar, see {@link #key(Path)}
+	 * @return the binary names of the classes, or null if the jar has not been
+	 *         scanned or it changed after the scan
+	 */
+	List<String> get(Path jar, String[] key) {
+		List<String> lines;
+
+		try {
+			lines = Files.readAllLines(fileOf(jar), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			// not scanned yet
+			return null;
+		}
+
+		if (lines.size() < HEADER_LINES || !HEADER.equals(lines.get(0))) {
+			return null;
+		}
+
+		for (int i = 0; i < key.length; i++) {
+			if (!key[i].equals(lines.get(i + 1))) {
+				return null;
+			}
+		}
+
+		return new ArrayList<>(lines.subList(HEADER_LINES, lines.size()));
+	}
+
+	/**
+	 * Store the classes found by the scan of a jar.
+	 *
+	 * @param jar     the jar
+	 * @param key     the key of the jar before the scan, see {@link #key(Path)}
+	 * @param classes the binary names of the classes
+	 */
+	void put(Path jar, String[] key, List<String> classes) {
+		List<String> lines = new ArrayList<>(HEADER_LINES + classes.size());
+		lines.add(HEADER);
+		for (String field : key) {
+			lines.add(field);
+		}
+		lines.addAll(classes);
+
+		Path temporary = null;
+		try {
+			Files.createDirectories(directory);
+			temporary = Files.createTempFile(directory, "scan", ".tmp");
+			Files.write(temporary, lines, StandardCharsets.UTF_8);
+
+			Path file = fileOf(jar);
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temporary = null;
+		} catch (IOException e) {
+			// the jar will be scanned again
+		} finally {
+			if (temporary != null) {
+				try {
+					Files.deleteIfExists(temporary);
+				} catch (IOException e) {
+					// nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the key of the current content of a jar: its path, size and
+	 * modification time.
+	 *
+	 * @param jar the jar
+	 * @return the key
+	 * @throws IOException if the attributes of the jar cannot be read
+	 */
+	static String[] key(Path jar) throws IOException {
+		return new String[] { jar.toString(), Long.toString(Files.size(jar)),
+				Long.toString(Files.getLastModifiedTime(jar).toMillis()) };
+	}
+
+	/**
+	 * Get the file of a jar. Different jars with the same name and hash can have
+	 * the same file, the path stored in the file tells them apart.
+	 *
+	 * @param jar the jar
+	 * @return the file
+	 */
+	private Path fileOf(Path jar) {
+		return directory.resolve(jar.getFileName() + "-" + Integer.toHexString(jar.toString().hashCode()) + ".classes");
+	}
+}
@@ -0,0 +1,544 @@
+package org.dvle.java_cli;
+
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+
+/**
+ * This class manages the commands executed in background, the jobs. A line
+ * that ends with {@literal &} is parsed by the terminal as usual, then the
+ * command is executed by an executor and the terminal can read the next line.
+ * The number of jobs in execution is bounded. The output of each job is tagged
+ * with the job identifier and written line by line.
+ *
+ * This class also provides the built-in commands to handle jobs:
+ * {@literal jobs} lists them, {@literal wait [--id=n]} waits for one or all of
+ * them and {@literal kill --id=n} interrupts one of them.
+ *
+ * A job leaves the jobs in execution when it terminates and is kept in a
+ * bounded list until the {@literal jobs} command reports it: when the list is
+ * full the oldest terminated job is forgotten, so a terminal that never lists
+ * its jobs does not keep all of them.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class JobControl {
+
+	/**
+	 * The character that must terminate a line to execute it in background.
+	 */
+	static final char BACKGROUND_MARK = '&';
+
+	/**
+	 * The maximum number of terminated jobs not yet reported.
+	 */
+	static final int MAX_TERMINATED_JOBS = 64;
+
+	/**
+	 * The executor of jobs.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * The permits of jobs in execution.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * The maximum number of jobs in execution.
+	 */
+	private final int maxJobs;
+
+	/**
+	 * The generator of job identifiers.
+	 */
+	private final AtomicInteger nextId;
+
+	/**
+	 * The jobs in execution, by identifier.
+	 */
+	private final Map<Integer, Job> jobs;
+
+	/**
+	 * The terminated jobs not yet reported, oldest first. It is also the lock
+	 * that moves a job from the jobs in execution to this list.
+	 */
+	private final Deque<Job> terminated;
+
+	/**
+	 * The number of terminated jobs forgotten before being reported.
+	 */
+	private int forgotten;
+
+	/**
+	 * Create a new job control.
+	 *
+	 * @param executor the executor of jobs
+	 * @param maxJobs  the maximum number of jobs in execution
+	 */
+	JobControl(ExecutorService executor, int maxJobs) {
+		if (executor == null) {
+			throw new NullPointerException();
+		}
+
+		if (maxJobs < 1) {
+			throw new IllegalArgumentException("The maximum number of jobs must be > 0");
+		}
+
+		this.executor = executor;
+		this.maxJobs = maxJobs;
+		this.permits = new Semaphore(maxJobs);
+		this.nextId = new AtomicInteger(1);
+		this.jobs = new ConcurrentSkipListMap<>();
+		this.terminated = new ArrayDeque<>();
+		this.forgotten = 0;
+	}
+
+	/**
+	 * Create the default executor of jobs: an executor of virtual threads if the
+	 * running JVM supports them, otherwise a pool of daemon threads with the given
+	 * size.
+	 *
+	 * @param maxJobs the maximum number of jobs in execution
+	 * @return a new executor
+	 */
+	static ExecutorService defaultExecutor(int maxJobs) {
+		try {
+			Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			return (ExecutorService) executor;
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			// virtual threads are not available (or they are a preview feature)
+		}
+
+		return Executors.newFixedThreadPool(maxJobs, runnable -> {
+			Thread thread = new Thread(runnable, "terminal-job");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Create the built-in commands of job control. The commands act on the jobs
+	 * of the terminal that executes them, so they can be shared by terminals
+	 * with the same registry.
+	 *
+	 * @return the commands
+	 */
+	static CommandDescription[] createCommands() {
+		return new CommandDescription[] { new JobsCommandDescription(), new WaitCommandDescription(),
+				new KillCommandDescription() };
+	}
+
+	/**
+	 * Start a job, if the maximum number of jobs is not reached.
+	 *
+	 * @param terminal   the terminal that runs the command
+	 * @param invocation the parsed invocation
+	 * @param line       the line of the command, used for reporting
+	 * @param context    the context of the calling thread
+	 * @return the identifier of the job or -1 if too many jobs are in execution
+	 */
+	int start(Terminal terminal, CommandInvocation invocation, String line, LineContext context) {
+		if (!permits.tryAcquire()) {
+			return -1;
+		}
+
+		int id = nextId.getAndIncrement();
+		JobOutputStream jobOutput = new JobOutputStream(id, context.out);
+		ExecutionEnvironment exe = new ExecutionEnvironment(terminal, invocation,
+				new PrintStream(jobOutput, false), terminal.getInput());
+		Job job = new Job(id, line, terminal, invocation, exe, jobOutput);
+		jobs.put(id, job);
+
+		try {
+			executor.execute(job);
+		} catch (RuntimeException e) {
+			jobs.remove(id);
+			job.cancel(false);
+			throw e;
+		}
+
+		return id;
+	}
+
+	/**
+	 * Get the maximum number of jobs in execution.
+	 *
+	 * @return the maximum number of jobs
+	 */
+	int getMaxJobs() {
+		return maxJobs;
+	}
+
+	/**
+	 * Find a job in execution or terminated and not yet reported.
+	 *
+	 * @param id the identifier of the job
+	 * @return the job or null if there is no such job
+	 */
+	private Job find(int id) {
+		synchronized (terminated) {
+			Job job = jobs.get(id);
+
+			if (job == null) {
+				for (Job done : terminated) {
+					if (done.id == id) {
+						return done;
+					}
+				}
+			}
+
+			return job;
+		}
+	}
+
+	/**
+	 * Move a job from the jobs in execution to the terminated ones. A job
+	 * removed by {@link #start} because it could not be executed is not moved.
+	 *
+	 * @param job the terminated job
+	 */
+	private void terminate(Job job) {
+		synchronized (terminated) {
+			if (!jobs.remove(job.id, job)) {
+				return;
+			}
+
+			if (terminated.size() == MAX_TERMINATED_JOBS) {
+				terminated.removeFirst();
+				forgotten++;
+			}
+
+			terminated.addLast(job);
+		}
+	}
+
+	/**
+	 * Get the jobs to report, ordered by identifier: the jobs in execution and
+	 * the terminated ones, that are removed, so each terminated job is reported
+	 * once.
+	 *
+	 * @param out the output where the forgotten jobs are reported
+	 * @return the jobs
+	 */
+	private List<Job> report(PrintStream out) {
+		synchronized (terminated) {
+			List<Job> report = new ArrayList<>(jobs.values());
+			for (Job job : report) {
+				// terminated, but not yet moved by done()
+				if (job.isDone()) {
+					jobs.remove(job.id, job);
+				}
+			}
+			report.addAll(terminated);
+			report.sort(Comparator.comparingInt(job -> job.id));
+			terminated.clear();
+
+			if (forgotten > 0) {
+				out.println(forgotten + " terminated jobs were not reported");
+				forgotten = 0;
+			}
+
+			return report;
+		}
+	}
+
+	/**
+	 * Get the job control of the terminal that executes a command.
+	 *
+	 * @param exe the execution environment of the command
+	 * @return the job control
+	 * @throws CommandExecutionException if job control is not enabled
+	 */
+	private static JobControl of(ExecutionEnvironment exe) throws CommandExecutionException {
+		JobControl control = exe.getTerminal().getJobControl();
+
+		if (control == null) {
+			throw new CommandExecutionException("Job control is not enabled");
+		}
+
+		return control;
+	}
+
+	/**
+	 * This class represents a job.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private final class Job extends FutureTask<Void> {
+
+		/**
+		 * The identifier of the job.
+		 */
+		final int id;
+
+		/**
+		 * The line of the command.
+		 */
+		final String line;
+
+		/**
+		 * The output of the job, flushed at the end.
+		 */
+		private final JobOutputStream jobOutput;
+
+		/**
+		 * Set by the body when it starts, or by {@link #done()} if the job is
+		 * killed before: the one that sets it releases the permit of the job.
+		 */
+		private final AtomicBoolean started;
+
+		/**
+		 * Create a new job.
+		 *
+		 * @param id         the identifier
+		 * @param line       the line of the command
+		 * @param terminal   the terminal that runs the command
+		 * @param invocation the invocation to execute
+		 * @param exe        the execution environment
+		 * @param jobOutput  the output of the job
+		 */
+		Job(int id, String line, Terminal terminal, CommandInvocation invocation, ExecutionEnvironment exe,
+				JobOutputStream jobOutput) {
+			this(id, line, terminal, invocation, exe, jobOutput, new AtomicBoolean());
+		}
+
+		/**
+		 * Create a new job with the flag of its start, shared with the body.
+		 *
+		 * @param id         the identifier
+		 * @param line       the line of the command
+		 * @param terminal   the terminal that runs the command
+		 * @param invocation the invocation to execute
+		 * @param exe        the execution environment
+		 * @param jobOutput  the output of the job
+		 * @param started    the flag of the start
+		 */
+		private Job(int id, String line, Terminal terminal, CommandInvocation invocation, ExecutionEnvironment exe,
+				JobOutputStream jobOutput, AtomicBoolean started) {
+			super(() -> {
+				if (!started.compareAndSet(false, true)) {
+					// killed before starting
+					return null;
+				}
+
+				try {
+					terminal.runInvocation(invocation, exe);
+					return null;
+				} finally {
+					// a killed job holds its permit until the command returns
+					permits.release();
+				}
+			});
+			this.id = id;
+			this.line = line;
+			this.jobOutput = jobOutput;
+			this.started = started;
+		}
+
+		/**
+		 * Called when the job terminates, also if it is killed before starting or
+		 * while the command is still running.
+		 */
+		@Override
+		protected void done() {
+			if (!isCancelled()) {
+				try {
+					get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					String message = cause instanceof CommandExecutionException ? cause.getLocalizedMessage()
+							: cause.toString();
+					byte[] bytes = message.getBytes(Charset.defaultCharset());
+					jobOutput.write(bytes, 0, bytes.length);
+				} catch (InterruptedException | CancellationException e) {
+					// cannot happen, the job is done
+				}
+			}
+
+			jobOutput.flush();
+
+			if (started.compareAndSet(false, true)) {
+				permits.release();
+			}
+
+			terminate(this);
+		}
+
+		/**
+		 * Get the state of the job.
+		 *
+		 * @return a description of the state
+		 */
+		String state() {
+			if (!isDone()) {
+				return "Running";
+			}
+
+			if (isCancelled()) {
+				return "Killed";
+			}
+
+			try {
+				get();
+				return "Done";
+			} catch (ExecutionException | InterruptedException e) {
+				return "Failed";
+			}
+		}
+	}
+
+	/**
+	 * The command that lists the jobs. Terminated jobs are listed once.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class JobsCommandDescription extends ParsedCommandDescription {
+
+		/**
+		 * Create the command.
+		 */
+		JobsCommandDescription() {
+			super("jobs");
+		}
+
+		@Override
+		public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+				throws CommandExecutionException {
+			for (Job job : of(exe).report(exe.out)) {
+				exe.out.println("[" + job.id + "] " + job.state() + " " + job.line);
+			}
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	}
+
+	/**
+	 * The command that waits for a job, or for all jobs if no identifier is
+	 * given.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class WaitCommandDescription extends ParsedCommandDescription {
+
+		/**
+		 * The identifier of the job.
+		 */
+		private final ArgumentDescription idDescription;
+
+		/**
+		 * Create the command.
+		 */
+		WaitCommandDescription() {
+			super("wait");
+			idDescription = new ArgumentDescription("id", ArgumentValueType.INTEGER, false);
+			addArgument(idDescription);
+		}
+
+		@Override
+		public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+				throws CommandExecutionException {
+			JobControl control = of(exe);
+
+			if (arguments.has(idDescription)) {
+				int id = arguments.getInt(idDescription);
+				Job job = control.find(id);
+				if (job == null) {
+					throw new CommandExecutionException("No such job: " + id);
+				}
+				await(job);
+			} else {
+				for (Job job : control.jobs.values()) {
+					await(job);
+				}
+			}
+		}
+
+		/**
+		 * Wait for the termination of a job.
+		 *
+		 * @param job the job
+		 * @throws CommandExecutionException if the waiting thread is interrupted
+		 */
+		private void await(Job job) throws CommandExecutionException {
+			try {
+				job.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CommandExecutionException("Interrupted while waiting for job " + job.id, e);
+			} catch (ExecutionException | CancellationException e) {
+				// the state is reported by the jobs command
+			}
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	}
+
+	/**
+	 * The command that interrupts a job.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class KillCommandDescription extends ParsedCommandDescription {
+
+		/**
+		 * The identifier of the job.
+		 */
+		private final ArgumentDescription idDescription;
+
+		/**
+		 * Create the command.
+		 */
+		KillCommandDescription() {
+			super("kill");
+			idDescription = new ArgumentDescription("id", ArgumentValueType.INTEGER, true);
+			addArgument(idDescription);
+		}
+
+		@Override
+		public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+				throws CommandExecutionException {
+			int id = arguments.getInt(idDescription);
+			Job job = of(exe).find(id);
+
+			if (job == null) {
+				throw new CommandExecutionException("No such job: " + id);
+			}
+
+			job.cancel(true);
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	}
+}
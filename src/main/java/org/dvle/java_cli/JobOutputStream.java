@@ -0,0 +1,97 @@
+package org.dvle.java_cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/**
+ * This class is the output stream of a background job. The output is collected
+ * line by line, and each complete line is written to the terminal output with
+ * the tag of the job in a single atomic write, so lines of different jobs never
+ * interleave.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class JobOutputStream extends OutputStream {
+
+	/**
+	 * The stream shared by all jobs.
+	 */
+	private final PrintStream target;
+
+	/**
+	 * The tag written before each line.
+	 */
+	private final byte[] tag;
+
+	/**
+	 * The line that is being written.
+	 */
+	private final ByteArrayOutputStream line;
+
+	/**
+	 * Create a new job output.
+	 *
+	 * @param jobId  the identifier of the job
+	 * @param target the stream shared by all jobs
+	 */
+	JobOutputStream(int jobId, PrintStream target) {
+		if (target == null) {
+			throw new NullPointerException();
+		}
+
+		this.target = target;
+		this.tag = ("[" + jobId + "] ").getBytes(Charset.defaultCharset());
+		this.line = new ByteArrayOutputStream();
+	}
+
+	@Override
+	public synchronized void write(int b) {
+		line.write(b);
+
+		if (b == '\n') {
+			writeLine();
+		}
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) {
+		int lineStart = off;
+		for (int i = off; i < off + len; i++) {
+			if (b[i] == '\n') {
+				line.write(b, lineStart, i + 1 - lineStart);
+				writeLine();
+				lineStart = i + 1;
+			}
+		}
+		line.write(b, lineStart, off + len - lineStart);
+	}
+
+	/**
+	 * Write the pending part of a line, if any. A job calls it when it
+	 * terminates, so the last line is written also without terminator.
+	 */
+	@Override
+	public synchronized void flush() {
+		if (line.size() > 0) {
+			line.write('\n');
+			writeLine();
+		}
+	}
+
+	/**
+	 * Write the collected line to the target with a single write.
+	 */
+	private void writeLine() {
+		byte[] bytes = line.toByteArray();
+		line.reset();
+
+		synchronized (target) {
+			target.write(tag, 0, tag.length);
+			target.write(bytes, 0, bytes.length);
+			target.flush();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package org.dvle.java_cli;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a histogram of latencies in nanoseconds, with buckets of
+ * logarithmic size like the HdrHistogram: every power of two is split in
+ * {@value #HALF_SUB_BUCKETS} linear sub-buckets, so each recorded value is
+ * kept with a relative error below 1/32, from 1 ns to about 18 minutes. Longer
+ * values are counted in the last bucket.
+ *
+ * Recording is lock-free and does not allocate: it increments a counter of an
+ * atomic array. The histogram can be read while values are recorded, the
+ * values returned reflect the recordings completed at the time of the read.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * The number of bits of the sub-bucket of a value.
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+
+	/**
+	 * The number of sub-buckets of the first bucket: the values lower than it
+	 * are recorded exactly.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of sub-buckets of the other buckets, the upper half of the
+	 * first one.
+	 */
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+	/**
+	 * The highest value that can be recorded, in nanoseconds (about 18
+	 * minutes).
+	 */
+	private static final long HIGHEST_VALUE = (1L << 40) - 1;
+
+	/**
+	 * The counts of the sub-buckets.
+	 */
+	private final AtomicLongArray counts;
+
+	/**
+	 * The highest value recorded.
+	 */
+	private final AtomicLong max;
+
+	/**
+	 * Create an empty histogram.
+	 */
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(indexOf(HIGHEST_VALUE) + 1);
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Get the index of the sub-bucket of a value.
+	 *
+	 * @param value the value, not negative
+	 * @return the index
+	 */
+	private static int indexOf(long value) {
+		int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+		return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Get the highest value of a sub-bucket.
+	 *
+	 * @param index the index of the sub-bucket
+	 * @return the highest value recorded in it
+	 */
+	private static long highestValueOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int shift = index / HALF_SUB_BUCKETS - 1;
+		long subBucket = index - shift * HALF_SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param nanos the latency in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0), HIGHEST_VALUE);
+		counts.getAndIncrement(indexOf(value));
+
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Get the number of recorded values.
+	 *
+	 * @return the number of values
+	 */
+	public long getCount() {
+		long count = 0;
+
+		for (int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Get the highest recorded value.
+	 *
+	 * @return the highest value in nanoseconds, 0 if the histogram is empty
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get the value below which a given percentage of the recorded values fall.
+	 * The value is the highest of its sub-bucket, but never above the highest
+	 * recorded value.
+	 *
+	 * @param percentile the percentage, from 0 to 100
+	 * @return the value in nanoseconds, 0 if the histogram is empty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("The percentile must be between 0 and 100");
+		}
+
+		long[] snapshot = new long[counts.length()];
+		long count = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), getMax());
+			}
+		}
+
+		return getMax();
+	}
+
+	/**
+	 * Remove all the recorded values. Values recorded during the reset can be
+	 * partially kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+
+		max.set(0);
+	}
+}
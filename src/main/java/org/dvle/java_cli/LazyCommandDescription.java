@@ -0,0 +1,154 @@
+package org.dvle.java_cli;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+/**
+ * This class represents a command registered from the command index, without
+ * loading its class. The name and the arguments come from the index, the class
+ * is loaded and instantiated at the first execution and the instance is used
+ * by all the next executions, unless a new instance is created for each
+ * execution.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class LazyCommandDescription extends ParsedCommandDescription {
+
+	/**
+	 * The loader that loads the class.
+	 */
+	private final CommandLoader loader;
+
+	/**
+	 * The binary name of the class of the command.
+	 */
+	private final String className;
+
+	/**
+	 * True if an instance is created for each execution.
+	 */
+	private final boolean perInvocation;
+
+	/**
+	 * The command, null until the first execution.
+	 */
+	private volatile CommandDescription command;
+
+	/**
+	 * Create a command that is loaded when executed.
+	 *
+	 * @param loader        the loader of the class
+	 * @param className     the binary name of the class
+	 * @param name          the name of the command
+	 * @param arguments     the arguments of the command
+	 * @param perInvocation true if an instance is created for each execution
+	 */
+	LazyCommandDescription(CommandLoader loader, String className, String name, List<ArgumentDescription> arguments,
+			boolean perInvocation) {
+		super(name);
+
+		this.loader = loader;
+		this.className = className;
+		this.perInvocation = perInvocation;
+		this.command = null;
+
+		for (ArgumentDescription ad : arguments) {
+			addArgument(ad);
+		}
+	}
+
+	/**
+	 * Get the binary name of the class of the command.
+	 *
+	 * @return the class name
+	 */
+	String getClassName() {
+		return className;
+	}
+
+	/**
+	 * Check if the command has been loaded.
+	 *
+	 * @return true if loaded
+	 */
+	boolean isResolved() {
+		return command != null;
+	}
+
+	/**
+	 * Get the command, loading it at the first call.
+	 *
+	 * @return the command
+	 * @throws CommandExecutionException if the command cannot be loaded or if it
+	 *                                   does not match its index entry
+	 */
+	CommandDescription resolve() throws CommandExecutionException {
+		CommandDescription cd = command;
+
+		if (cd == null) {
+			synchronized (this) {
+				cd = command;
+				if (cd == null) {
+					cd = load();
+					command = cd;
+				}
+			}
+		}
+
+		return cd;
+	}
+
+	/**
+	 * Load the command and check it against the index entry.
+	 *
+	 * @return the command
+	 * @throws CommandExecutionException if the command cannot be loaded or if it
+	 *                                   does not match its index entry
+	 */
+	private CommandDescription load() throws CommandExecutionException {
+		CommandDescription cd;
+
+		try {
+			CommandFactory factory = loader.loadFactory(className);
+			cd = perInvocation ? CommandFactory.perInvocation(factory) : factory.newInstance();
+		} catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException
+				| InvocationTargetException | RuntimeException e) {
+			throw new CommandExecutionException("Cannot load the command \"" + name + "\"", e);
+		}
+
+		NameTable<ArgumentDescription> expected = getArgumentTable();
+		NameTable<ArgumentDescription> actual = cd.getArgumentTable();
+		boolean matches = cd.name.equals(name) && expected.size() == actual.size();
+
+		for (int i = 0; i < expected.size() && matches; i++) {
+			ArgumentDescription e = expected.valueAt(i);
+			ArgumentDescription a = actual.valueAt(i);
+			matches = e.name.equals(a.name) && e.type == a.type && e.single == a.single
+					&& e.mandatory == a.mandatory;
+		}
+
+		if (!matches) {
+			throw new CommandExecutionException(
+					"The command \"" + name + "\" of " + className + " does not match its @CommandInfo");
+		}
+
+		cd.freeze();
+		return cd;
+	}
+
+	/**
+	 * Before the first execution the command is not thread safe, so it is
+	 * loaded by one thread.
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		CommandDescription cd = command;
+		return cd != null && cd.isThreadSafe();
+	}
+
+	@Override
+	public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) throws CommandExecutionException {
+		resolve().runCommand(arguments, exe);
+	}
+}
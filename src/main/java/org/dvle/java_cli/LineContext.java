@@ -0,0 +1,130 @@
+package org.dvle.java_cli;
+
+import java.io.PrintStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * This class contains the state needed by a thread to execute lines: the
+ * tokenizer, the stream where the output is written and the invocations and
+ * the execution environment that are reused line after line, so that the
+ * execution of a command does not allocate objects. Each thread that executes
+ * lines of the same terminal at the same time must have its own context.
+ *
+ * The invocations are kept for the commands of one snapshot of the registry:
+ * when the commands change, the invocations are dropped, so the context does
+ * not keep alive the commands removed or replaced (and their class loaders,
+ * see {@link CommandWatcher}).
+ *
+ * @author federicosilvestri
+ *
+ */
+final class LineContext {
+
+	/**
+	 * The lexer of the lines.
+	 */
+	final LineTokenizer tokenizer;
+
+	/**
+	 * The stream where messages and command output are written.
+	 */
+	final PrintStream out;
+
+	/**
+	 * True if the commands that are not thread safe must be executed by one
+	 * thread at time, because other threads execute lines of the same script.
+	 */
+	final boolean serialized;
+
+	/**
+	 * The invocation of each command, reused for every line.
+	 */
+	private final Map<CommandDescription, CommandInvocation> invocations;
+
+	/**
+	 * The table of the commands of the invocations, null if there are none.
+	 */
+	private NameTable<CommandDescription> commands;
+
+	/**
+	 * The execution environment, reused for every line.
+	 */
+	private ExecutionEnvironment environment;
+
+	/**
+	 * Create a new context.
+	 *
+	 * @param out the output stream
+	 */
+	LineContext(PrintStream out) {
+		this(out, false);
+	}
+
+	/**
+	 * Create a new context.
+	 *
+	 * @param out        the output stream
+	 * @param serialized true to execute the commands that are not thread safe
+	 *                   by one thread at time
+	 */
+	LineContext(PrintStream out, boolean serialized) {
+		if (out == null) {
+			throw new NullPointerException();
+		}
+
+		this.tokenizer = new LineTokenizer();
+		this.out = out;
+		this.serialized = serialized;
+		this.invocations = new IdentityHashMap<>();
+		this.commands = null;
+		this.environment = null;
+	}
+
+	/**
+	 * Get an empty invocation of a command. The invocation is reused by the next
+	 * line of the same command, so it must be copied if it is needed later.
+	 *
+	 * @param command  the command
+	 * @param commands the table of the commands of the registry where the
+	 *                 command has been found
+	 * @return an invocation without arguments
+	 */
+	CommandInvocation obtainInvocation(CommandDescription command, NameTable<CommandDescription> commands) {
+		if (commands != this.commands) {
+			// the commands of the registry have changed
+			invocations.clear();
+			this.commands = commands;
+		}
+
+		CommandInvocation invocation = invocations.get(command);
+
+		// arguments can be added to the command after the creation of the invocation
+		if (invocation == null || invocation.argumentTable != command.getArgumentTable()) {
+			invocation = new CommandInvocation(command);
+			invocations.put(command, invocation);
+		} else {
+			invocation.reset();
+		}
+
+		return invocation;
+	}
+
+	/**
+	 * Get the execution environment for an invocation. The environment is reused
+	 * by the next line.
+	 *
+	 * @param terminal   the terminal
+	 * @param invocation the invocation
+	 * @return the environment
+	 */
+	ExecutionEnvironment obtainEnvironment(Terminal terminal, CommandInvocation invocation) {
+		if (environment == null || environment.getTerminal() != terminal) {
+			environment = new ExecutionEnvironment(terminal, invocation, out, terminal.getInput());
+		} else {
+			environment.setCommandInvocation(invocation);
+		}
+
+		return environment;
+	}
+}
@@ -0,0 +1,22 @@
+package org.dvle.java_cli;
+
+import java.io.IOException;
+
+/**
+ * This interface represents a source of lines for the non-interactive
+ * execution of the terminal.
+ *
+ * @author federicosilvestri
+ *
+ */
+interface LineSource {
+
+	/**
+	 * Read the next line, without the line terminator. The returned sequence can
+	 * be reused by the source, so it is valid only until the next call.
+	 *
+	 * @return the next line or null at the end of the source
+	 * @throws IOException if the source cannot be read
+	 */
+	CharSequence nextLine() throws IOException;
+}
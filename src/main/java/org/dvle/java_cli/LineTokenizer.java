@@ -0,0 +1,372 @@
+package org.dvle.java_cli;
+
+import java.util.Arrays;
+
+/**
+ * This class is a single-pass lexer for terminal lines. Given a line like
+ * {@code create --file=foo.txt --verbose} it finds, in one scan and without
+ * using regular expressions, the span of the command name and the spans of the
+ * name and the value of each argument.
+ *
+ * The syntax is the same accepted by the terminal since the beginning: the
+ * command name ends at the first space, arguments are separated by a
+ * whitespace character followed by {@literal --}, and each argument is either
+ * a name or a {@literal name=value} pair where name and value cannot be empty
+ * and cannot contain the {@literal ;:,=} characters.
+ *
+ * An instance can be reused for many lines, but it is not thread safe.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class LineTokenizer {
+
+	/**
+	 * Initial capacity of the span arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * The line that is being tokenized.
+	 */
+	private CharSequence line;
+
+	/**
+	 * Start of the trimmed line, that is also the start of the command name.
+	 */
+	private int start;
+
+	/**
+	 * End of the trimmed line (exclusive).
+	 */
+	private int end;
+
+	/**
+	 * End of the command name (exclusive).
+	 */
+	private int commandEnd;
+
+	/**
+	 * Number of arguments found in the line.
+	 */
+	private int argumentCount;
+
+	/**
+	 * Start of the argument names.
+	 */
+	private int[] nameStart;
+
+	/**
+	 * End of the argument names (exclusive).
+	 */
+	private int[] nameEnd;
+
+	/**
+	 * Start of the argument values, -1 if the argument is single.
+	 */
+	private int[] valueStart;
+
+	/**
+	 * End of the argument values (exclusive).
+	 */
+	private int[] valueEnd;
+
+	/**
+	 * Create a new tokenizer.
+	 */
+	LineTokenizer() {
+		nameStart = new int[INITIAL_CAPACITY];
+		nameEnd = new int[INITIAL_CAPACITY];
+		valueStart = new int[INITIAL_CAPACITY];
+		valueEnd = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Tokenize a whole line.
+	 *
+	 * @param line the line to tokenize
+	 * @return true if the line contains something, false if it is blank
+	 * @throws CommandSyntaxError if an argument is not well formed
+	 */
+	boolean tokenize(CharSequence line) throws CommandSyntaxError {
+		return tokenize(line, 0, line.length());
+	}
+
+	/**
+	 * Tokenize a region of a line. Leading and trailing characters less or equal
+	 * than space are ignored, like {@link String#trim()} does.
+	 *
+	 * @param line the line to tokenize
+	 * @param from the start of the region (inclusive)
+	 * @param to   the end of the region (exclusive)
+	 * @return true if the region contains something, false if it is blank
+	 * @throws CommandSyntaxError if an argument is not well formed
+	 */
+	boolean tokenize(CharSequence line, int from, int to) throws CommandSyntaxError {
+		assert (line != null);
+		assert (from >= 0 && from <= to && to <= line.length());
+
+		this.line = line;
+		this.argumentCount = 0;
+
+		// trimming
+		while (from < to && line.charAt(from) <= ' ') {
+			from++;
+		}
+		while (to > from && line.charAt(to - 1) <= ' ') {
+			to--;
+		}
+
+		start = from;
+		end = to;
+		commandEnd = to;
+
+		if (from == to) {
+			return false;
+		}
+
+		/*
+		 * The command name ends at the first space, the rest of the line is the
+		 * argument string.
+		 */
+		for (int i = from; i < to; i++) {
+			if (line.charAt(i) == ' ') {
+				commandEnd = i;
+				break;
+			}
+		}
+
+		/*
+		 * Split the argument string on each whitespace followed by "--" and check
+		 * every piece as soon as it is closed.
+		 */
+		int pieceStart = commandEnd;
+		int i = commandEnd;
+		while (i < to) {
+			if (isWhitespace(line.charAt(i)) && i + 2 < to && line.charAt(i + 1) == '-' && line.charAt(i + 2) == '-') {
+				addArgument(pieceStart, i);
+				i += 3;
+				pieceStart = i;
+			} else {
+				i++;
+			}
+		}
+		addArgument(pieceStart, to);
+
+		return true;
+	}
+
+	/**
+	 * Check a piece of the argument string and record its spans.
+	 *
+	 * @param from start of the piece
+	 * @param to   end of the piece (exclusive)
+	 * @throws CommandSyntaxError if the piece is not well formed
+	 */
+	private void addArgument(int from, int to) throws CommandSyntaxError {
+		if (from >= to) {
+			// empty pieces are skipped
+			return;
+		}
+
+		int equals = -1;
+		for (int i = from; i < to; i++) {
+			char c = line.charAt(i);
+
+			if (c == ';' || c == ':' || c == ',') {
+				throw new CommandSyntaxError("You inserted too many characters");
+			}
+
+			if (c == '=') {
+				if (equals != -1) {
+					throw new CommandSyntaxError("You inserted too many characters");
+				}
+				equals = i;
+			}
+		}
+
+		if (equals == from || equals == to - 1) {
+			// empty name or empty value
+			throw new CommandSyntaxError("You inserted too many characters");
+		}
+
+		ensureCapacity(argumentCount + 1);
+		nameStart[argumentCount] = from;
+		if (equals == -1) {
+			// single
+			nameEnd[argumentCount] = to;
+			valueStart[argumentCount] = -1;
+			valueEnd[argumentCount] = -1;
+		} else {
+			// value binded
+			nameEnd[argumentCount] = equals;
+			valueStart[argumentCount] = equals + 1;
+			valueEnd[argumentCount] = to;
+		}
+		argumentCount++;
+	}
+
+	/**
+	 * Grow the span arrays if needed.
+	 *
+	 * @param capacity the minimum capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= nameStart.length) {
+			return;
+		}
+
+		int newCapacity = nameStart.length * 2;
+		nameStart = Arrays.copyOf(nameStart, newCapacity);
+		nameEnd = Arrays.copyOf(nameEnd, newCapacity);
+		valueStart = Arrays.copyOf(valueStart, newCapacity);
+		valueEnd = Arrays.copyOf(valueEnd, newCapacity);
+	}
+
+	/**
+	 * The same whitespace definition of the {@literal \s} regular expression
+	 * class.
+	 *
+	 * @param c the character to check
+	 * @return true if c is a whitespace
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Get the name of the command.
+	 *
+	 * @return the command name
+	 */
+	String commandName() {
+		return line.subSequence(start, commandEnd).toString();
+	}
+
+	/**
+	 * Check if the command name is equal to a given name. A name with characters
+	 * out of the ASCII range is compared with the decoded command name, because
+	 * the line could be a view of encoded bytes, like in
+	 * {@link NameTable#indexOf(CharSequence, int, int)}.
+	 *
+	 * @param name the name to compare
+	 * @return true if the command name is equal to name
+	 */
+	boolean isCommand(String name) {
+		if (!(line instanceof String)) {
+			for (int i = 0; i < name.length(); i++) {
+				if (name.charAt(i) >= 0x80) {
+					return name.equals(commandName());
+				}
+			}
+		}
+
+		if (name.length() != commandEnd - start) {
+			return false;
+		}
+
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != line.charAt(start + i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Search the command name in a table, without creating a string.
+	 *
+	 * @param <V>   the type of the values of the table
+	 * @param table the table of commands
+	 * @return the value of the command, null if not found
+	 */
+	<V> V lookupCommand(NameTable<V> table) {
+		return table.get(line, start, commandEnd);
+	}
+
+	/**
+	 * Check if the line contains only the command name.
+	 *
+	 * @return true if there is nothing after the command name
+	 */
+	boolean isCommandOnly() {
+		return commandEnd == end;
+	}
+
+	/**
+	 * Get the number of arguments.
+	 *
+	 * @return the number of arguments found in the line
+	 */
+	int argumentCount() {
+		return argumentCount;
+	}
+
+	/**
+	 * Get the name of an argument.
+	 *
+	 * @param index the index of the argument
+	 * @return the name of the argument
+	 */
+	String argumentName(int index) {
+		assert (index >= 0 && index < argumentCount);
+		return line.subSequence(nameStart[index], nameEnd[index]).toString();
+	}
+
+	/**
+	 * Search the name of an argument in a table, without creating a string.
+	 *
+	 * @param index the index of the argument
+	 * @param table the table of arguments
+	 * @return the index of the argument in the table, -1 if not found
+	 */
+	int lookupArgument(int index, NameTable<?> table) {
+		assert (index >= 0 && index < argumentCount);
+		return table.indexOf(line, nameStart[index], nameEnd[index]);
+	}
+
+	/**
+	 * Check if an argument is value binded.
+	 *
+	 * @param index the index of the argument
+	 * @return true if the argument has a value
+	 */
+	boolean hasValue(int index) {
+		assert (index >= 0 && index < argumentCount);
+		return valueStart[index] != -1;
+	}
+
+	/**
+	 * Get the value of an argument.
+	 *
+	 * @param index the index of the argument
+	 * @return the value of the argument, null if the argument is single
+	 */
+	String argumentValue(int index) {
+		assert (index >= 0 && index < argumentCount);
+
+		if (valueStart[index] == -1) {
+			return null;
+		}
+
+		return line.subSequence(valueStart[index], valueEnd[index]).toString();
+	}
+
+	/**
+	 * Parse the value of an argument, without creating a string when possible.
+	 *
+	 * @param index       the index of the argument
+	 * @param description the description of the argument
+	 * @param target      the parsed arguments where the value is stored
+	 * @param slot        the slot of the argument
+	 * @throws ArgumentParseException if the value cannot be parsed
+	 */
+	void parseArgumentValue(int index, ArgumentDescription description, ParsedArguments target, int slot)
+			throws ArgumentParseException {
+		assert (index >= 0 && index < argumentCount);
+		assert (valueStart[index] != -1);
+
+		description.parseValue(line, valueStart[index], valueEnd[index], target, slot);
+	}
+}
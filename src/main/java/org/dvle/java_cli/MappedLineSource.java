@@ -0,0 +1,172 @@
+package org.dvle.java_cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads the lines of an UTF-8 file by mapping it in memory. Line
+ * boundaries are searched directly in the mapped buffer and each line is
+ * returned as a view of the mapped bytes, so the heap used does not depend on
+ * the size of the file. The file is mapped in windows, because a single
+ * mapping cannot be larger than 2 GB.
+ *
+ * It is not faster than a buffered reader, because the time of a script goes
+ * to the execution of the commands, but it does not create a string for each
+ * line: only the pieces of the line requested by the tokenizer are decoded, so
+ * the allocation rate of the reading is a fraction of the one of a reader.
+ *
+ * A window is unmapped by the garbage collector once it is not referenced,
+ * also after {@link #close()}. The unmap is never forced, because the
+ * sequences returned by {@link #nextLine()} and their subsequences are views of
+ * the mapped bytes, and a view kept by a command would then read unmapped
+ * memory. The sequence returned by {@link #nextLine()} is reused by the next
+ * call.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class MappedLineSource implements LineSource, Closeable {
+
+	/**
+	 * Default size of a mapped window.
+	 */
+	static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+	/**
+	 * The channel of the file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Size of the file.
+	 */
+	private final long size;
+
+	/**
+	 * Size of a mapped window, that is also the maximum length of a line.
+	 */
+	private final int windowSize;
+
+	/**
+	 * The current window, null if nothing is mapped yet.
+	 */
+	private MappedByteBuffer window;
+
+	/**
+	 * Offset in the file of the first byte of the window.
+	 */
+	private long windowOffset;
+
+	/**
+	 * Position of the next line inside the window.
+	 */
+	private int position;
+
+	/**
+	 * The view returned by {@link #nextLine()}.
+	 */
+	private final ByteCharSequence line;
+
+	/**
+	 * Open a file with the default window size.
+	 *
+	 * @param path the path of the file
+	 * @throws IOException if the file cannot be opened
+	 */
+	MappedLineSource(Path path) throws IOException {
+		this(path, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Open a file.
+	 *
+	 * @param path       the path of the file
+	 * @param windowSize the size of a mapped window
+	 * @throws IOException if the file cannot be opened
+	 */
+	MappedLineSource(Path path, int windowSize) throws IOException {
+		if (path == null) {
+			throw new NullPointerException();
+		}
+
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Window size must be > 0");
+		}
+
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.windowSize = windowSize;
+		this.window = null;
+		this.windowOffset = 0;
+		this.position = 0;
+		this.line = new ByteCharSequence();
+	}
+
+	@Override
+	public CharSequence nextLine() throws IOException {
+		if (window == null) {
+			if (size == 0) {
+				return null;
+			}
+			map(0);
+		}
+
+		while (true) {
+			int limit = window.limit();
+
+			for (int i = position; i < limit; i++) {
+				if (window.get(i) == '\n') {
+					// strip the carriage return of CRLF terminators
+					int end = (i > position && window.get(i - 1) == '\r') ? i - 1 : i;
+					line.set(window, position, end);
+					position = i + 1;
+					return line;
+				}
+			}
+
+			if (windowOffset + limit >= size) {
+				// end of file, the last line can be without terminator
+				if (position >= limit) {
+					return null;
+				}
+
+				int end = window.get(limit - 1) == '\r' ? limit - 1 : limit;
+				line.set(window, position, end);
+				position = limit;
+				return line;
+			}
+
+			if (position == 0) {
+				throw new IOException("Line longer than " + windowSize + " bytes");
+			}
+
+			// the line continues in the next window
+			map(windowOffset + position);
+		}
+	}
+
+	/**
+	 * Map a new window.
+	 *
+	 * @param offset the offset of the window in the file
+	 * @throws IOException if the file cannot be mapped
+	 */
+	private void map(long offset) throws IOException {
+		long length = Math.min(windowSize, size - offset);
+		window = channel.map(MapMode.READ_ONLY, offset, length);
+		windowOffset = offset;
+		position = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the window stays mapped until it is collected
+		window = null;
+		channel.close();
+	}
+}
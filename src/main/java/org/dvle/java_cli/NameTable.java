@@ -0,0 +1,369 @@
+package org.dvle.java_cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class is an immutable table between names and values, stored in flat
+ * arrays. Each name has an index, that is its position in the list used to
+ * create the table. Names can be searched directly on a region of a character
+ * sequence, so the lookup of the command and argument names of a line does not
+ * create strings.
+ *
+ * Names are searched with a minimal perfect hash built with the hash and
+ * displace method: the 64 bits hash of a name selects a bucket, and the seed of
+ * the bucket moves all its names to distinct positions. A lookup computes one
+ * hash and compares one name, with no probing.
+ *
+ * @author federicosilvestri
+ *
+ * @param <V> the type of values
+ */
+final class NameTable<V> {
+
+	/**
+	 * Average number of names per bucket.
+	 */
+	private static final int BUCKET_SIZE = 4;
+
+	/**
+	 * Number of seeds tried for a bucket before changing the salt.
+	 */
+	private static final int MAX_SEED = 1 << 16;
+
+	/**
+	 * Number of salts tried before giving up.
+	 */
+	private static final int MAX_SALT = 64;
+
+	/**
+	 * Multiplier of the hash of names.
+	 */
+	private static final long PRIME = 0x100000001B3L;
+
+	/**
+	 * Multiplier of the seeds.
+	 */
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Names by index.
+	 */
+	private final String[] names;
+
+	/**
+	 * Values by index.
+	 */
+	private final Object[] values;
+
+	/**
+	 * Seed of each bucket. A negative seed is the position of the only name of
+	 * the bucket, encoded as {@code -position - 1}.
+	 */
+	private final int[] seeds;
+
+	/**
+	 * The index of the name at each position.
+	 */
+	private final int[] indexes;
+
+	/**
+	 * The salt of the hash of names.
+	 */
+	private final long salt;
+
+	/**
+	 * Create a new table.
+	 *
+	 * @param names  the names, that must be distinct
+	 * @param values the values, one for each name
+	 */
+	NameTable(List<String> names, List<? extends V> values) {
+		if (names == null || values == null) {
+			throw new NullPointerException();
+		}
+
+		if (names.size() != values.size()) {
+			throw new IllegalArgumentException("Names and values must have the same size");
+		}
+
+		this.names = names.toArray(new String[names.size()]);
+		this.values = values.toArray();
+
+		Set<String> distinct = new HashSet<>();
+		for (String name : this.names) {
+			if (!distinct.add(name)) {
+				throw new IllegalArgumentException("Duplicated name: " + name);
+			}
+		}
+
+		int n = this.names.length;
+		this.seeds = new int[Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE)];
+		this.indexes = new int[n];
+
+		long s = 0;
+		while (!build(s)) {
+			if (++s == MAX_SALT) {
+				throw new IllegalStateException("Cannot build the hash of " + n + " names");
+			}
+		}
+		this.salt = s;
+	}
+
+	/**
+	 * Search the seed of every bucket with a given salt.
+	 *
+	 * @param salt the salt
+	 * @return true if the hash is built, false if the salt must be changed
+	 */
+	private boolean build(long salt) {
+		int n = names.length;
+		long[] hashes = new long[n];
+		List<List<Integer>> buckets = new ArrayList<>(seeds.length);
+		for (int b = 0; b < seeds.length; b++) {
+			buckets.add(new ArrayList<>());
+		}
+
+		for (int i = 0; i < n; i++) {
+			hashes[i] = hash(names[i], 0, names[i].length(), salt);
+			buckets.get(bucket(hashes[i], seeds.length)).add(i);
+		}
+
+		// the largest buckets are placed first, when most positions are free
+		Integer[] order = new Integer[seeds.length];
+		for (int b = 0; b < order.length; b++) {
+			order[b] = b;
+		}
+		Arrays.sort(order, (a, b) -> buckets.get(b).size() - buckets.get(a).size());
+
+		boolean[] taken = new boolean[n];
+		int[] positions = new int[BUCKET_SIZE * 8];
+		int freePosition = 0;
+
+		for (int b : order) {
+			List<Integer> bucket = buckets.get(b);
+			int size = bucket.size();
+
+			if (size == 0) {
+				seeds[b] = 0;
+				continue;
+			}
+
+			if (size == 1) {
+				// single names go directly to a free position
+				while (taken[freePosition]) {
+					freePosition++;
+				}
+				taken[freePosition] = true;
+				indexes[freePosition] = bucket.get(0);
+				seeds[b] = -freePosition - 1;
+				continue;
+			}
+
+			if (size > positions.length) {
+				positions = new int[size];
+			}
+
+			int seed = 0;
+			while (!place(bucket, hashes, seed, taken, positions)) {
+				if (++seed == MAX_SEED) {
+					return false;
+				}
+			}
+
+			for (int k = 0; k < size; k++) {
+				taken[positions[k]] = true;
+				indexes[positions[k]] = bucket.get(k);
+			}
+			seeds[b] = seed;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check if a seed moves the names of a bucket to distinct free positions.
+	 *
+	 * @param bucket    the indexes of the names of the bucket
+	 * @param hashes    the hashes of the names
+	 * @param seed      the seed
+	 * @param taken     the positions already taken
+	 * @param positions where the positions of the names are written
+	 * @return true if the positions are valid
+	 */
+	private boolean place(List<Integer> bucket, long[] hashes, int seed, boolean[] taken, int[] positions) {
+		for (int k = 0; k < bucket.size(); k++) {
+			int position = position(hashes[bucket.get(k)], seed, names.length);
+
+			if (taken[position]) {
+				return false;
+			}
+
+			for (int j = 0; j < k; j++) {
+				if (positions[j] == position) {
+					return false;
+				}
+			}
+
+			positions[k] = position;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Compute the hash of a region of a character sequence.
+	 *
+	 * @param sequence the character sequence
+	 * @param from     start of the region (inclusive)
+	 * @param to       end of the region (exclusive)
+	 * @param salt     the salt
+	 * @return the hash
+	 */
+	private static long hash(CharSequence sequence, int from, int to, long salt) {
+		long hash = salt * GOLDEN;
+
+		for (int i = from; i < to; i++) {
+			hash = (hash ^ sequence.charAt(i)) * PRIME;
+		}
+
+		return finish(hash);
+	}
+
+	/**
+	 * Mix the bits of a hash, so that all of them depend on every character.
+	 *
+	 * @param hash the hash
+	 * @return the mixed hash
+	 */
+	private static long finish(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		return hash ^ (hash >>> 33);
+	}
+
+	/**
+	 * Get the bucket of a hash.
+	 *
+	 * @param hash    the hash
+	 * @param buckets the number of buckets
+	 * @return the bucket
+	 */
+	private static int bucket(long hash, int buckets) {
+		return (int) (((hash >>> 32) * buckets) >>> 32);
+	}
+
+	/**
+	 * Get the position of a hash in a bucket with a given seed.
+	 *
+	 * @param hash the hash
+	 * @param seed the seed of the bucket
+	 * @param size the number of positions
+	 * @return the position
+	 */
+	private static int position(long hash, int seed, int size) {
+		long mixed = (hash ^ (seed * GOLDEN)) * GOLDEN;
+		return (int) (((mixed >>> 32) * size) >>> 32);
+	}
+
+	/**
+	 * Get the number of names.
+	 *
+	 * @return the size of the table
+	 */
+	int size() {
+		return names.length;
+	}
+
+	/**
+	 * Search a name.
+	 *
+	 * @param name the name to search
+	 * @return the index of the name, -1 if not found
+	 */
+	int indexOf(String name) {
+		return indexOf(name, 0, name.length());
+	}
+
+	/**
+	 * Search a name given by a region of a character sequence. Regions of
+	 * sequences other than strings with characters out of the ASCII range are
+	 * converted to string, because the sequence could be a view of encoded bytes.
+	 *
+	 * @param sequence the character sequence
+	 * @param from     start of the name (inclusive)
+	 * @param to       end of the name (exclusive)
+	 * @return the index of the name, -1 if not found
+	 */
+	int indexOf(CharSequence sequence, int from, int to) {
+		if (names.length == 0) {
+			return -1;
+		}
+
+		long hash = salt * GOLDEN;
+		for (int i = from; i < to; i++) {
+			char c = sequence.charAt(i);
+			if (c >= 0x80 && !(sequence instanceof String)) {
+				return indexOf(sequence.subSequence(from, to).toString());
+			}
+			hash = (hash ^ c) * PRIME;
+		}
+
+		hash = finish(hash);
+		int seed = seeds[bucket(hash, seeds.length)];
+		int position = seed < 0 ? -seed - 1 : position(hash, seed, names.length);
+		int index = indexes[position];
+
+		return regionEquals(names[index], sequence, from, to) ? index : -1;
+	}
+
+	/**
+	 * Compare a name with a region of a character sequence.
+	 *
+	 * @param name     the name
+	 * @param sequence the character sequence
+	 * @param from     start of the region (inclusive)
+	 * @param to       end of the region (exclusive)
+	 * @return true if they are equal
+	 */
+	private static boolean regionEquals(String name, CharSequence sequence, int from, int to) {
+		if (name.length() != to - from) {
+			return false;
+		}
+
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != sequence.charAt(from + i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get the value of a name.
+	 *
+	 * @param sequence the character sequence
+	 * @param from     start of the name (inclusive)
+	 * @param to       end of the name (exclusive)
+	 * @return the value, null if the name is not found
+	 */
+	V get(CharSequence sequence, int from, int to) {
+		int index = indexOf(sequence, from, to);
+		return index < 0 ? null : valueAt(index);
+	}
+
+	/**
+	 * Get the value at a given index.
+	 *
+	 * @param index the index
+	 * @return the value
+	 */
+	@SuppressWarnings("unchecked")
+	V valueAt(int index) {
+		return (V) values[index];
+	}
+}
@@ -0,0 +1,524 @@
+package org.dvle.java_cli;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+
+/**
+ * This class contains the parsed arguments of a command invocation. Each
+ * argument of the command has a slot, given by its position in the command.
+ * Integer, long, decimal and boolean values are stored in a primitive array,
+ * so they are never boxed: use {@link #getInt(ArgumentDescription)},
+ * {@link #getLong(ArgumentDescription)},
+ * {@link #getDouble(ArgumentDescription)} and
+ * {@link #getBoolean(ArgumentDescription)} to read them.
+ *
+ * An instance is valid only during the execution of the command, because the
+ * terminal reuses it for the next invocation of the same command.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class ParsedArguments {
+
+	/**
+	 * The table of the arguments of the command.
+	 */
+	private final NameTable<ArgumentDescription> argumentTable;
+
+	/**
+	 * Integer, long, boolean and decimal (as raw bits) values by slot.
+	 */
+	private final long[] primitives;
+
+	/**
+	 * String and file values by slot.
+	 */
+	private final Object[] objects;
+
+	/**
+	 * Flags of the arguments set by slot.
+	 */
+	private final boolean[] present;
+
+	/**
+	 * Number of arguments set.
+	 */
+	private int count;
+
+	/**
+	 * The map view of the arguments.
+	 */
+	private final Map<ArgumentDescription, Object> mapView;
+
+	/**
+	 * Create an empty set of arguments.
+	 *
+	 * @param argumentTable the table of the arguments of the command
+	 */
+	ParsedArguments(NameTable<ArgumentDescription> argumentTable) {
+		if (argumentTable == null) {
+			throw new NullPointerException();
+		}
+
+		this.argumentTable = argumentTable;
+		this.primitives = new long[argumentTable.size()];
+		this.objects = new Object[argumentTable.size()];
+		this.present = new boolean[argumentTable.size()];
+		this.count = 0;
+		this.mapView = new ArgumentMap();
+	}
+
+	/**
+	 * Create the arguments of a command from a map between argument description
+	 * and value. The map view of other arguments of the same table is not
+	 * copied.
+	 *
+	 * @param argumentTable the table of the arguments of the command
+	 * @param arguments     the map of the arguments, null if there are none
+	 * @return the parsed arguments
+	 * @throws IllegalArgumentException if an argument is not in the table
+	 */
+	static ParsedArguments of(NameTable<ArgumentDescription> argumentTable,
+			Map<ArgumentDescription, Object> arguments) {
+		if (arguments instanceof ParsedArguments.ArgumentMap) {
+			ParsedArguments parsed = ((ParsedArguments.ArgumentMap) arguments).arguments();
+			if (parsed.argumentTable == argumentTable) {
+				return parsed;
+			}
+		}
+
+		ParsedArguments parsed = new ParsedArguments(argumentTable);
+		if (arguments == null) {
+			return parsed;
+		}
+
+		for (Map.Entry<ArgumentDescription, Object> entry : arguments.entrySet()) {
+			int slot = parsed.slotOf(entry.getKey());
+			if (slot < 0) {
+				throw new IllegalArgumentException(
+						"\"" + entry.getKey().name + "\" is not an argument of this command");
+			}
+
+			ArgumentDescription ad = argumentTable.valueAt(slot);
+			Object value = entry.getValue();
+			if (ad.single || value == null) {
+				parsed.setPresent(slot);
+				continue;
+			}
+
+			switch (ad.type) {
+			case INTEGER:
+			case LONG:
+				parsed.setPrimitive(slot, ((Number) value).longValue());
+				break;
+			case DECIMAL:
+				parsed.setDecimal(slot, ((Number) value).doubleValue());
+				break;
+			case BOOLEAN:
+				parsed.setPrimitive(slot, ((Boolean) value) ? 1 : 0);
+				break;
+			default:
+				parsed.setObject(slot, value);
+			}
+		}
+
+		return parsed;
+	}
+
+	/**
+	 * Remove all the arguments, to reuse this instance.
+	 */
+	void reset() {
+		if (count > 0) {
+			Arrays.fill(objects, null);
+			Arrays.fill(present, false);
+			count = 0;
+		}
+	}
+
+	/**
+	 * Mark an argument as set.
+	 *
+	 * @param slot the slot of the argument
+	 */
+	void setPresent(int slot) {
+		if (!present[slot]) {
+			present[slot] = true;
+			count++;
+		}
+	}
+
+	/**
+	 * Set the value of an integer, long or boolean argument.
+	 *
+	 * @param slot  the slot of the argument
+	 * @param value the value, booleans are 1 or 0
+	 */
+	void setPrimitive(int slot, long value) {
+		setPresent(slot);
+		primitives[slot] = value;
+	}
+
+	/**
+	 * Set the value of a decimal argument.
+	 *
+	 * @param slot  the slot of the argument
+	 * @param value the value
+	 */
+	void setDecimal(int slot, double value) {
+		setPrimitive(slot, Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * Set the value of a string or file argument.
+	 *
+	 * @param slot  the slot of the argument
+	 * @param value the value
+	 */
+	void setObject(int slot, Object value) {
+		setPresent(slot);
+		objects[slot] = value;
+	}
+
+	/**
+	 * Check if an argument is set.
+	 *
+	 * @param slot the slot of the argument
+	 * @return true if the argument is set
+	 */
+	boolean isSet(int slot) {
+		return present[slot];
+	}
+
+	/**
+	 * Replace these arguments with a copy of other arguments of the same table,
+	 * to reuse this instance.
+	 *
+	 * @param source the arguments to copy
+	 */
+	void copyFrom(ParsedArguments source) {
+		if (source.argumentTable != argumentTable) {
+			throw new IllegalArgumentException("The arguments belong to another table");
+		}
+
+		System.arraycopy(source.primitives, 0, primitives, 0, primitives.length);
+		System.arraycopy(source.objects, 0, objects, 0, objects.length);
+		System.arraycopy(source.present, 0, present, 0, present.length);
+		count = source.count;
+	}
+
+	/**
+	 * Create a copy of these arguments, that is not reused by the terminal and
+	 * can be kept after the execution of the command.
+	 *
+	 * @return a copy
+	 */
+	public ParsedArguments copy() {
+		ParsedArguments copy = new ParsedArguments(argumentTable);
+		System.arraycopy(primitives, 0, copy.primitives, 0, primitives.length);
+		System.arraycopy(objects, 0, copy.objects, 0, objects.length);
+		System.arraycopy(present, 0, copy.present, 0, present.length);
+		copy.count = count;
+
+		return copy;
+	}
+
+	/**
+	 * Check if an argument has been given.
+	 *
+	 * @param ad the argument description
+	 * @return true if the argument is in the line
+	 */
+	public boolean has(ArgumentDescription ad) {
+		int slot = slotOf(ad);
+		return slot >= 0 && present[slot];
+	}
+
+	/**
+	 * Get the number of arguments given.
+	 *
+	 * @return the number of arguments in the line
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Get the value of an integer argument.
+	 *
+	 * @param ad the argument description
+	 * @return the value
+	 * @throws NoSuchElementException if the argument is not given
+	 */
+	public int getInt(ArgumentDescription ad) {
+		return (int) primitives[requiredSlot(ad, ArgumentValueType.INTEGER)];
+	}
+
+	/**
+	 * Get the value of an integer argument.
+	 *
+	 * @param ad           the argument description
+	 * @param defaultValue the value returned if the argument is not given
+	 * @return the value
+	 */
+	public int getInt(ArgumentDescription ad, int defaultValue) {
+		int slot = typedSlot(ad, ArgumentValueType.INTEGER);
+		return present[slot] ? (int) primitives[slot] : defaultValue;
+	}
+
+	/**
+	 * Get the value of a long argument.
+	 *
+	 * @param ad the argument description
+	 * @return the value
+	 * @throws NoSuchElementException if the argument is not given
+	 */
+	public long getLong(ArgumentDescription ad) {
+		return primitives[requiredSlot(ad, ArgumentValueType.LONG)];
+	}
+
+	/**
+	 * Get the value of a long argument.
+	 *
+	 * @param ad           the argument description
+	 * @param defaultValue the value returned if the argument is not given
+	 * @return the value
+	 */
+	public long getLong(ArgumentDescription ad, long defaultValue) {
+		int slot = typedSlot(ad, ArgumentValueType.LONG);
+		return present[slot] ? primitives[slot] : defaultValue;
+	}
+
+	/**
+	 * Get the value of a decimal argument.
+	 *
+	 * @param ad the argument description
+	 * @return the value
+	 * @throws NoSuchElementException if the argument is not given
+	 */
+	public double getDouble(ArgumentDescription ad) {
+		return Double.longBitsToDouble(primitives[requiredSlot(ad, ArgumentValueType.DECIMAL)]);
+	}
+
+	/**
+	 * Get the value of a decimal argument.
+	 *
+	 * @param ad           the argument description
+	 * @param defaultValue the value returned if the argument is not given
+	 * @return the value
+	 */
+	public double getDouble(ArgumentDescription ad, double defaultValue) {
+		int slot = typedSlot(ad, ArgumentValueType.DECIMAL);
+		return present[slot] ? Double.longBitsToDouble(primitives[slot]) : defaultValue;
+	}
+
+	/**
+	 * Get the value of a boolean argument.
+	 *
+	 * @param ad the argument description
+	 * @return the value
+	 * @throws NoSuchElementException if the argument is not given
+	 */
+	public boolean getBoolean(ArgumentDescription ad) {
+		return primitives[requiredSlot(ad, ArgumentValueType.BOOLEAN)] != 0;
+	}
+
+	/**
+	 * Get the value of a boolean argument.
+	 *
+	 * @param ad           the argument description
+	 * @param defaultValue the value returned if the argument is not given
+	 * @return the value
+	 */
+	public boolean getBoolean(ArgumentDescription ad, boolean defaultValue) {
+		int slot = typedSlot(ad, ArgumentValueType.BOOLEAN);
+		return present[slot] ? primitives[slot] != 0 : defaultValue;
+	}
+
+	/**
+	 * Get the value of a string argument.
+	 *
+	 * @param ad the argument description
+	 * @return the value, null if the argument is not given
+	 */
+	public String getString(ArgumentDescription ad) {
+		return (String) objects[typedSlot(ad, ArgumentValueType.STRING)];
+	}
+
+	/**
+	 * Get the value of a file path argument.
+	 *
+	 * @param ad the argument description
+	 * @return the value, null if the argument is not given
+	 */
+	public File getFile(ArgumentDescription ad) {
+		return (File) objects[typedSlot(ad, ArgumentValueType.FILE_PATH)];
+	}
+
+	/**
+	 * Get the value of an argument as an object, boxing primitive values.
+	 *
+	 * @param ad the argument description
+	 * @return the value, null if the argument is not given or if it is single
+	 */
+	public Object get(ArgumentDescription ad) {
+		int slot = slotOf(ad);
+		return slot < 0 ? null : boxedValue(slot);
+	}
+
+	/**
+	 * Get a read-only map view of the arguments, as it is given to
+	 * {@link CommandDescription#runCommand(Map, ExecutionEnvironment)}. Primitive
+	 * values are boxed when they are read.
+	 *
+	 * @return the map between argument description and value
+	 */
+	public Map<ArgumentDescription, Object> asMap() {
+		return mapView;
+	}
+
+	/**
+	 * Search the slot of an argument.
+	 *
+	 * @param key an argument description
+	 * @return the slot or -1 if the key is not an argument of the command
+	 */
+	private int slotOf(Object key) {
+		if (!(key instanceof ArgumentDescription)) {
+			return -1;
+		}
+
+		return argumentTable.indexOf(((ArgumentDescription) key).name);
+	}
+
+	/**
+	 * Search the slot of an argument, checking its type.
+	 *
+	 * @param ad   the argument description
+	 * @param type the expected type
+	 * @return the slot
+	 */
+	private int typedSlot(ArgumentDescription ad, ArgumentValueType type) {
+		if (ad == null) {
+			throw new NullPointerException();
+		}
+
+		int slot = slotOf(ad);
+		if (slot < 0) {
+			throw new IllegalArgumentException("\"" + ad.name + "\" is not an argument of this command");
+		}
+
+		if (argumentTable.valueAt(slot).type != type) {
+			throw new IllegalArgumentException("\"" + ad.name + "\" is not of type " + type);
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Search the slot of an argument that must be set, checking its type.
+	 *
+	 * @param ad   the argument description
+	 * @param type the expected type
+	 * @return the slot
+	 */
+	private int requiredSlot(ArgumentDescription ad, ArgumentValueType type) {
+		int slot = typedSlot(ad, type);
+
+		if (!present[slot]) {
+			throw new NoSuchElementException("The argument \"" + ad.name + "\" is not set");
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Get the value of a slot as an object.
+	 *
+	 * @param slot the slot
+	 * @return the boxed value
+	 */
+	private Object boxedValue(int slot) {
+		if (!present[slot]) {
+			return null;
+		}
+
+		ArgumentDescription ad = argumentTable.valueAt(slot);
+		if (ad.single) {
+			return null;
+		}
+
+		switch (ad.type) {
+		case INTEGER:
+			return (int) primitives[slot];
+		case LONG:
+			return primitives[slot];
+		case DECIMAL:
+			return Double.longBitsToDouble(primitives[slot]);
+		case BOOLEAN:
+			return primitives[slot] != 0;
+		default:
+			return objects[slot];
+		}
+	}
+
+	/**
+	 * The read-only map view of the arguments.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private final class ArgumentMap extends AbstractMap<ArgumentDescription, Object> {
+
+		/**
+		 * Get the arguments of this view.
+		 *
+		 * @return the parsed arguments
+		 */
+		ParsedArguments arguments() {
+			return ParsedArguments.this;
+		}
+
+		@Override
+		public Object get(Object key) {
+			int slot = slotOf(key);
+			return slot < 0 ? null : boxedValue(slot);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			int slot = slotOf(key);
+			return slot >= 0 && present[slot];
+		}
+
+		@Override
+		public int size() {
+			return count;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return count == 0;
+		}
+
+		@Override
+		public Set<Entry<ArgumentDescription, Object>> entrySet() {
+			Map<ArgumentDescription, Object> snapshot = new HashMap<>();
+			for (int slot = 0; slot < present.length; slot++) {
+				if (present[slot]) {
+					snapshot.put(argumentTable.valueAt(slot), boxedValue(slot));
+				}
+			}
+
+			return Collections.unmodifiableMap(snapshot).entrySet();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package org.dvle.java_cli;
+
+import java.util.Map;
+
+/**
+ * This class is the base of the commands that read their arguments from
+ * {@link ParsedArguments}, so that the values of integer, long, decimal and
+ * boolean arguments are never boxed. The map of the arguments given by the
+ * callers of {@link #runCommand(Map, ExecutionEnvironment)} is converted to
+ * parsed arguments.
+ * 
+ * @author federicosilvestri
+ *
+ */
+public abstract class ParsedCommandDescription extends CommandDescription {
+
+	/**
+	 * Create a new description of a command.
+	 * 
+	 * @param name the name of the command
+	 */
+	public ParsedCommandDescription(String name) {
+		super(name);
+	}
+
+	@Override
+	public abstract void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+			throws CommandExecutionException;
+
+	/**
+	 * Call {@link #runCommand(ParsedArguments, ExecutionEnvironment)} with the
+	 * arguments of the map.
+	 * 
+	 * @throws IllegalArgumentException if the map contains an argument that is
+	 *                                  not accepted by this command
+	 */
+	@Override
+	public final void runCommand(Map<ArgumentDescription, Object> arguments, ExecutionEnvironment exe)
+			throws CommandExecutionException {
+		runCommand(ParsedArguments.of(getArgumentTable(), arguments), exe);
+	}
+}
@@ -0,0 +1,67 @@
+package org.dvle.java_cli;
+
+import java.util.function.Supplier;
+
+/**
+ * This class represents a command that creates a new instance of the real
+ * command for each execution, see {@link CommandFactory#perInvocation(Supplier)}.
+ * The name and the arguments are taken from a first instance.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class PerInvocationCommandDescription extends ParsedCommandDescription {
+
+	/**
+	 * The supplier of the instances.
+	 */
+	private final Supplier<? extends CommandDescription> supplier;
+
+	/**
+	 * Create the command.
+	 *
+	 * @param supplier the supplier of the instances
+	 */
+	PerInvocationCommandDescription(Supplier<? extends CommandDescription> supplier) {
+		this(supplier, supplier.get());
+	}
+
+	/**
+	 * Create the command from its first instance.
+	 *
+	 * @param supplier  the supplier of the instances
+	 * @param prototype the first instance
+	 */
+	private PerInvocationCommandDescription(Supplier<? extends CommandDescription> supplier,
+			CommandDescription prototype) {
+		super(prototype.name);
+
+		this.supplier = supplier;
+
+		NameTable<ArgumentDescription> arguments = prototype.getArgumentTable();
+		for (int i = 0; i < arguments.size(); i++) {
+			addArgument(arguments.valueAt(i));
+		}
+	}
+
+	/**
+	 * The instances are never shared, so executions do not interfere.
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	@Override
+	public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) throws CommandExecutionException {
+		CommandDescription command;
+
+		try {
+			command = supplier.get();
+		} catch (RuntimeException e) {
+			throw new CommandExecutionException("Cannot create the command \"" + name + "\"", e);
+		}
+
+		command.runCommand(arguments, exe);
+	}
+}
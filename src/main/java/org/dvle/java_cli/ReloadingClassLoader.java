@@ -0,0 +1,108 @@
+package org.dvle.java_cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This class loader loads the classes of a package from its directory before
+ * asking its parent, so the classes of the package are loaded again from their
+ * current files. Each reload uses a new loader: the previous one and its
+ * classes are collected when nothing refers to their commands anymore, that
+ * is when the invocations running with them have finished and each context
+ * of the terminals has executed a line after the reload (see
+ * {@link LineContext}). Copies of the events of the old commands kept by the
+ * listeners keep the loader alive as well.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class ReloadingClassLoader extends ClassLoader {
+
+	static {
+		registerAsParallelCapable();
+	}
+
+	/**
+	 * The directory of the package.
+	 */
+	private final Path packageDirectory;
+
+	/**
+	 * The name of the package.
+	 */
+	private final String packageName;
+
+	/**
+	 * Create a class loader of a package.
+	 *
+	 * @param parent           the parent, that loads all the other classes
+	 * @param packageDirectory the directory of the package
+	 * @param packageName      the name of the package
+	 */
+	ReloadingClassLoader(ClassLoader parent, Path packageDirectory, String packageName) {
+		super(parent);
+
+		this.packageDirectory = packageDirectory;
+		this.packageName = packageName;
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		Path file = fileOf(name);
+
+		if (file == null || !Files.isRegularFile(file)) {
+			return super.loadClass(name, resolve);
+		}
+
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> clazz = findLoadedClass(name);
+
+			if (clazz == null) {
+				clazz = defineClass(name, file);
+			}
+
+			if (resolve) {
+				resolveClass(clazz);
+			}
+
+			return clazz;
+		}
+	}
+
+	/**
+	 * Define a class from its file.
+	 *
+	 * @param name the binary name of the class
+	 * @param file the file of the class
+	 * @return the class
+	 * @throws ClassNotFoundException if the file cannot be read
+	 */
+	private Class<?> defineClass(String name, Path file) throws ClassNotFoundException {
+		byte[] bytes;
+
+		try {
+			bytes = Files.readAllBytes(file);
+		} catch (IOException e) {
+			throw new ClassNotFoundException(name, e);
+		}
+
+		return defineClass(name, bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Get the file of a class of the package.
+	 *
+	 * @param name the binary name of the class
+	 * @return the file, null if the class is not in the package
+	 */
+	private Path fileOf(String name) {
+		int dot = name.lastIndexOf('.');
+
+		if (dot != packageName.length() || !name.startsWith(packageName)) {
+			return null;
+		}
+
+		return packageDirectory.resolve(name.substring(dot + 1) + ".class");
+	}
+}
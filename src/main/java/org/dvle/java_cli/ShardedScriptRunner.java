@@ -0,0 +1,272 @@
+package org.dvle.java_cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class executes a script splitting it in chunks of lines, that are
+ * parsed and executed in parallel on a fork-join pool. Each chunk writes its
+ * output into a private buffer; the buffers are written to the terminal output
+ * in the original order of the chunks, or as soon as each chunk completes.
+ *
+ * Lines are meant to be independent, so the relative order of execution is not
+ * defined. Commands that are not thread safe are never executed by two threads
+ * at the same time, see {@link CommandDescription#isThreadSafe()}.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class ShardedScriptRunner {
+
+	/**
+	 * Default number of lines of a chunk.
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 1024;
+
+	/**
+	 * The terminal that executes the lines.
+	 */
+	private final Terminal terminal;
+
+	/**
+	 * The pool where chunks are executed.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * True if the output must follow the order of the lines.
+	 */
+	private final boolean ordered;
+
+	/**
+	 * The stream where the output of chunks is written.
+	 */
+	private final PrintStream out;
+
+	/**
+	 * Number of lines of a chunk.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Maximum number of chunks submitted and not yet joined, it bounds the memory
+	 * used by pending lines and output buffers.
+	 */
+	private final int maxPendingChunks;
+
+	/**
+	 * Create a new runner.
+	 *
+	 * @param terminal  the terminal that executes the lines
+	 * @param pool      the pool where chunks are executed
+	 * @param ordered   true to keep the order of the lines in the output
+	 * @param out       the output stream
+	 * @param chunkSize number of lines of a chunk
+	 */
+	ShardedScriptRunner(Terminal terminal, ForkJoinPool pool, boolean ordered, PrintStream out, int chunkSize) {
+		if (terminal == null || pool == null || out == null) {
+			throw new NullPointerException();
+		}
+
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be > 0");
+		}
+
+		this.terminal = terminal;
+		this.pool = pool;
+		this.ordered = ordered;
+		this.out = out;
+		this.chunkSize = chunkSize;
+		this.maxPendingChunks = pool.getParallelism() * 4;
+	}
+
+	/**
+	 * Execute all the lines of a source.
+	 *
+	 * @param source the source of lines
+	 * @return the summary of the execution
+	 * @throws IOException if the source fails
+	 */
+	BatchSummary run(LineSource source) throws IOException {
+		assert (source != null);
+
+		long startTime = System.nanoTime();
+		long executed = 0;
+		long failed = 0;
+		Deque<Chunk> pending = new ArrayDeque<>();
+
+		try {
+			String[] lines = new String[chunkSize];
+			int count = 0;
+			CharSequence line;
+
+			while (!terminal.isStopped() && (line = source.nextLine()) != null) {
+				if (line.length() < 1) {
+					continue;
+				}
+
+				// sources can reuse the sequence, so it must be copied
+				lines[count++] = line.toString();
+
+				if (count == chunkSize) {
+					pending.add(submit(lines, count));
+					lines = new String[chunkSize];
+					count = 0;
+				}
+
+				// bound the number of chunks in memory
+				while (pending.size() > maxPendingChunks) {
+					Chunk chunk = complete(pending.poll());
+					executed += chunk.executed;
+					failed += chunk.failed;
+				}
+			}
+
+			if (count > 0) {
+				pending.add(submit(lines, count));
+			}
+		} finally {
+			// wait for all chunks, also if the source failed
+			while (!pending.isEmpty()) {
+				Chunk chunk = complete(pending.poll());
+				executed += chunk.executed;
+				failed += chunk.failed;
+			}
+		}
+
+		return new BatchSummary(executed, failed, Duration.ofNanos(System.nanoTime() - startTime));
+	}
+
+	/**
+	 * Submit a chunk to the pool.
+	 *
+	 * @param lines the lines of the chunk
+	 * @param count the number of valid lines
+	 * @return the submitted chunk
+	 */
+	private Chunk submit(String[] lines, int count) {
+		Chunk chunk = new Chunk(lines, count);
+		pool.execute(chunk);
+		return chunk;
+	}
+
+	/**
+	 * Wait for a chunk and, if the output is ordered, write its output. If a
+	 * command of the chunk has thrown an exception or an error, it is written to
+	 * the output and the lines of the chunk not executed are counted as failed,
+	 * so the other chunks are still waited.
+	 *
+	 * @param chunk the chunk to wait
+	 * @return the chunk itself
+	 */
+	private Chunk complete(Chunk chunk) {
+		Throwable failure = null;
+
+		try {
+			chunk.join();
+		} catch (Throwable t) {
+			failure = t;
+			chunk.failed = chunk.count - chunk.executed;
+		}
+
+		if (ordered) {
+			chunk.writeOutput();
+		}
+
+		if (failure != null) {
+			synchronized (out) {
+				out.println(failure);
+			}
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * This class represents a chunk of lines executed by a worker of the pool.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private final class Chunk extends RecursiveAction {
+
+		/**
+		 * Default serial UID.
+		 */
+		private static final long serialVersionUID = -2418735208471130581L;
+
+		/**
+		 * The lines of the chunk.
+		 */
+		private final String[] lines;
+
+		/**
+		 * The number of valid lines.
+		 */
+		private final int count;
+
+		/**
+		 * The buffer where the output of the chunk is written.
+		 */
+		private final ByteArrayOutputStream buffer;
+
+		/**
+		 * Number of commands executed without errors.
+		 */
+		private long executed;
+
+		/**
+		 * Number of failed lines.
+		 */
+		private long failed;
+
+		/**
+		 * Create a new chunk.
+		 *
+		 * @param lines the lines
+		 * @param count the number of valid lines
+		 */
+		Chunk(String[] lines, int count) {
+			this.lines = lines;
+			this.count = count;
+			this.buffer = new ByteArrayOutputStream();
+		}
+
+		@Override
+		protected void compute() {
+			PrintStream chunkOutput = new PrintStream(buffer, false);
+			LineContext context = new LineContext(chunkOutput, true);
+
+			try {
+				for (int i = 0; i < count && !terminal.isStopped(); i++) {
+					if (terminal.executeLine(lines[i], context)) {
+						executed++;
+					} else {
+						failed++;
+					}
+				}
+			} finally {
+				chunkOutput.flush();
+
+				if (!ordered) {
+					writeOutput();
+				}
+			}
+		}
+
+		/**
+		 * Write the output of the chunk to the terminal output.
+		 */
+		private void writeOutput() {
+			synchronized (out) {
+				out.write(buffer.toByteArray(), 0, buffer.size());
+			}
+		}
+	}
+}
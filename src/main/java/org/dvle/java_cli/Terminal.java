@@ -1,16 +1,24 @@
 package org.dvle.java_cli;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
 import org.fusesource.jansi.Ansi;
-import org.fusesource.jansi.AnsiConsole;
 
 /**
  * This class is an implementation of a mechanism for user communication.
@@ -21,9 +29,14 @@ import org.fusesource.jansi.AnsiConsole;
 public class Terminal implements Runnable {
 
 	/**
-	 * A set that contains all listeners.
+	 * Size of the buffers used in batch mode.
 	 */
-	private final Set<CommandListener> listeners;
+	private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The listeners of the commands.
+	 */
+	private final CommandListeners listeners;
 
 	/**
 	 * Input stream of terminal. It is used when an user input is required.
@@ -39,41 +52,102 @@ public class Terminal implements Runnable {
 	/**
 	 * Variable that indicates the stop of terminal.
 	 */
-	private boolean stop;
+	private volatile boolean stop;
 
 	/**
 	 * Exit command description.
 	 */
 	private final ExitCommandDescription exitCommand;
 
+	/**
+	 * True if the exit command overrides {@link CommandDescription#isCalled},
+	 * otherwise its name is compared with the tokens of the line without
+	 * creating a string.
+	 */
+	private final boolean exitCalledOverridden;
+
 	/**
 	 * Prompt ansi code.
 	 */
 	private Ansi prompt;
 
 	/**
-	 * A map between the command name and the command description.
+	 * The commands of this terminal, that can be shared with other terminals.
+	 */
+	private final CommandRegistry registry;
+
+	/**
+	 * The control of background commands, null if it is not enabled.
+	 */
+	private volatile JobControl jobControl;
+
+	/**
+	 * The statistics of the executed commands, null if they are not enabled.
+	 */
+	private volatile CommandStatistics statistics;
+
+	/**
+	 * The CPU time and memory used by the executed commands, null if they are
+	 * not measured.
 	 */
-	private final Map<String, CommandDescription> commands;
+	private volatile CommandResourceUsage resourceUsage;
 
 	/**
-	 * Create a new terminal.
+	 * The bus that delivers the command events asynchronously, null if they are
+	 * delivered by the thread of the command.
+	 */
+	private volatile CommandEventBus eventBus;
+
+	/**
+	 * Create a new terminal with its own registry of commands.
 	 * 
 	 * @param input  the input stream
 	 * @param output the output stream
 	 * @param ecd    the exit command description
 	 */
 	public Terminal(InputStream input, PrintStream output, ExitCommandDescription ecd) {
-		listeners = new TreeSet<CommandListener>();
+		this(input, output, ecd, new CommandRegistry());
+	}
+
+	/**
+	 * Create a new terminal that executes the commands of a registry. The
+	 * registry can be shared by many terminals, for example one for each session
+	 * of a server.
+	 * 
+	 * @param input    the input stream
+	 * @param output   the output stream
+	 * @param ecd      the exit command description
+	 * @param registry the registry of commands
+	 */
+	public Terminal(InputStream input, PrintStream output, ExitCommandDescription ecd, CommandRegistry registry) {
+		this(input, output, ecd, registry, true);
+	}
+
+	/**
+	 * Create a new terminal that executes the commands of a registry.
+	 * 
+	 * @param input      the input stream
+	 * @param output     the output stream
+	 * @param ecd        the exit command description
+	 * @param registry   the registry of commands
+	 * @param wrapOutput true to buffer the output and to remove the ANSI codes
+	 *                   if it is not a console (see
+	 *                   {@link TerminalOutputStream}), false if the output is
+	 *                   used as it is
+	 */
+	Terminal(InputStream input, PrintStream output, ExitCommandDescription ecd, CommandRegistry registry,
+			boolean wrapOutput) {
+		listeners = new CommandListeners(ForkJoinPool.commonPool());
 
-		if (input == null || output == null || ecd == null) {
+		if (input == null || output == null || ecd == null || registry == null) {
 			throw new NullPointerException();
 		}
 
 		this.input = input;
-		this.output = AnsiConsole.wrapSystemOut(output);
+		this.output = wrapOutput ? TerminalOutputStream.wrap(output) : output;
 		this.exitCommand = ecd;
-		this.commands = new TreeMap<>();
+		this.exitCalledOverridden = overridesIsCalled(ecd);
+		this.registry = registry;
 		this.prompt = Settings.PROMPT;
 	}
 
@@ -94,322 +168,907 @@ public class Terminal implements Runnable {
 	}
 
 	/**
-	 * Register a command listener object to this terminal.
+	 * Register a command listener object to this terminal. It receives the
+	 * events of all the commands, in the order of registration.
 	 * 
 	 * @param cl command listener instance
 	 */
 	public void addListener(CommandListener cl) {
-		if (cl == null) {
+		listeners.add(cl, null, null, false);
+	}
+
+	/**
+	 * Register a command listener object that receives the events of the
+	 * commands with a given name, in the order of registration.
+	 * 
+	 * @param commandName the name of the commands
+	 * @param cl          command listener instance
+	 */
+	public void addListener(String commandName, CommandListener cl) {
+		if (commandName == null) {
 			throw new NullPointerException();
 		}
 
-		listeners.add(cl);
+		listeners.add(cl, commandName, null, false);
 	}
 
 	/**
-	 * Remove a command listener object from this terminal.
+	 * Register a command listener object that receives the events of the
+	 * commands whose name is accepted by a filter. The filter is called once for
+	 * each command name until the listeners change, so it must always give the
+	 * same result for the same name.
 	 * 
-	 * @param cl command listener instance
+	 * An independent listener receives a copy of all the events, also of the
+	 * consumed ones, on the executor of the listeners (see
+	 * {@link #setListenerExecutor(Executor)}). The command does not wait for it,
+	 * so it can receive the events after the end of the command and out of
+	 * order, and its exceptions go to the executor. The other listeners are
+	 * called in the order of registration on the thread of the command, until
+	 * one of them consumes the event.
+	 * 
+	 * @param commandFilter the filter of the command names
+	 * @param cl            command listener instance
+	 * @param independent   true to call the listener without waiting for it
 	 */
-	public void removeListener(CommandListener cl) {
-		if (cl == null) {
+	public void addListener(Predicate<String> commandFilter, CommandListener cl, boolean independent) {
+		if (commandFilter == null) {
 			throw new NullPointerException();
 		}
 
-		if (!listeners.contains(cl)) {
+		listeners.add(cl, null, commandFilter, independent);
+	}
+
+	/**
+	 * Remove a command listener object from this terminal, with all its
+	 * registrations.
+	 * 
+	 * @param cl command listener instance
+	 */
+	public void removeListener(CommandListener cl) {
+		if (!listeners.remove(cl)) {
 			throw new RuntimeException("The object you have requested to deregister is not registered!");
 		}
+	}
 
-		listeners.remove(cl);
+	/**
+	 * Create a publisher of the events of the commands whose name is accepted by
+	 * a filter (see {@link CommandEventPublisher}). Its subscribers request the
+	 * events they can process and are called on the common fork-join pool; the
+	 * publisher is completed by the stop of the terminal (see
+	 * {@link CommandListener#stopRequest(CommandEvent)}) or by
+	 * {@link CommandEventPublisher#close()}.
+	 * 
+	 * @param commandFilter  the filter of the command names
+	 * @param bufferCapacity the number of events buffered for each subscriber
+	 * @param overflowPolicy what happens when the buffer of a subscriber is full
+	 * @return the publisher
+	 */
+	public CommandEventPublisher createEventPublisher(Predicate<String> commandFilter, int bufferCapacity,
+			CommandEventBus.OverflowPolicy overflowPolicy) {
+		if (commandFilter == null) {
+			throw new NullPointerException();
+		}
+
+		CommandEventPublisher publisher = new CommandEventPublisher(listeners, ForkJoinPool.commonPool(),
+				bufferCapacity, overflowPolicy);
+		listeners.add(publisher.getListener(), null, commandFilter, false);
+		return publisher;
+	}
+
+	/**
+	 * Set the executor of the independent listeners. The default is the common
+	 * fork-join pool.
+	 * 
+	 * @param executor the executor
+	 */
+	public void setListenerExecutor(Executor executor) {
+		listeners.setExecutor(executor);
 	}
 
 	/**
-	 * Add a command to this terminal.
+	 * Add a command to the registry of this terminal.
 	 * 
 	 * @param cd command description
+	 * @throws IllegalStateException if the registry is frozen
 	 */
 	public void addCommand(CommandDescription cd) {
-		if (cd == null) {
+		registry.addCommand(cd);
+	}
+
+	/**
+	 * Get the registry of the commands of this terminal.
+	 * 
+	 * @return the registry
+	 */
+	public CommandRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Freeze the commands of the registry of this terminal, see
+	 * {@link CommandRegistry#freeze()}. After this call commands and arguments
+	 * cannot be added anymore, so the lookup of the commands of a line never
+	 * rebuilds the tables.
+	 */
+	public void freeze() {
+		registry.freeze();
+	}
+
+	/**
+	 * Check if the commands of this terminal are frozen.
+	 * 
+	 * @return true if the registry is frozen
+	 */
+	public boolean isFrozen() {
+		return registry.isFrozen();
+	}
+
+	/**
+	 * Enable the execution of commands in background, using the default executor:
+	 * an executor of virtual threads when the JVM supports them, otherwise a pool
+	 * with one thread per job. See {@link #enableJobControl(ExecutorService, int)}.
+	 * 
+	 * @param maxJobs the maximum number of jobs in execution at the same time
+	 */
+	public void enableJobControl(int maxJobs) {
+		enableJobControl(JobControl.defaultExecutor(maxJobs), maxJobs);
+	}
+
+	/**
+	 * Enable the execution of commands in background. When it is enabled, a line
+	 * that ends with {@literal &} is executed by the given executor and the
+	 * terminal continues to read lines. The output of a background command is
+	 * tagged with the job identifier. The built-in commands {@literal jobs},
+	 * {@literal wait} and {@literal kill} are added to the registry, if they are
+	 * not already there because of another terminal: they act on the jobs of the
+	 * terminal that executes them. It must be called before running the
+	 * terminal.
+	 * 
+	 * @param executor the executor of background commands
+	 * @param maxJobs  the maximum number of jobs in execution at the same time,
+	 *                 further background commands are refused
+	 */
+	public void enableJobControl(ExecutorService executor, int maxJobs) {
+		if (jobControl != null) {
+			throw new RuntimeException("Job control is already enabled!");
+		}
+
+		for (CommandDescription cd : JobControl.createCommands()) {
+			CommandDescription existing = registry.addCommandIfAbsent(cd);
+			if (existing != null && existing.getClass() != cd.getClass()) {
+				throw new RuntimeException("You cannot add more command with the same name!");
+			}
+		}
+
+		jobControl = new JobControl(executor, maxJobs);
+	}
+
+	/**
+	 * Get the control of background commands.
+	 * 
+	 * @return the job control, null if it is not enabled
+	 */
+	JobControl getJobControl() {
+		return jobControl;
+	}
+
+	/**
+	 * Enable the recording of the latencies of the executed commands. The
+	 * statistics can be shared by many terminals. If requested, the built-in
+	 * command {@literal stats} is added to the registry, if it is not already
+	 * there because of another terminal: it prints the statistics of the
+	 * terminal that executes it.
+	 * 
+	 * @param statistics   the statistics where the latencies are recorded
+	 * @param statsCommand true to add the {@literal stats} command
+	 */
+	public void enableStatistics(CommandStatistics statistics, boolean statsCommand) {
+		if (statistics == null) {
+			throw new NullPointerException();
+		}
+
+		if (statsCommand) {
+			CommandDescription cd = CommandStatistics.createCommand();
+			CommandDescription existing = registry.addCommandIfAbsent(cd);
+			if (existing != null && existing.getClass() != cd.getClass()) {
+				throw new RuntimeException("You cannot add more command with the same name!");
+			}
+		}
+
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Stop the recording of the latencies of the executed commands. The
+	 * {@literal stats} command stays in the registry.
+	 */
+	public void disableStatistics() {
+		statistics = null;
+	}
+
+	/**
+	 * Get the statistics of the executed commands.
+	 * 
+	 * @return the statistics, null if they are not enabled
+	 */
+	public CommandStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Enable the measurement of the CPU time and of the memory allocated by the
+	 * executed commands. The totals can be shared by many terminals. If
+	 * requested, the built-in command {@literal usage} is added to the registry,
+	 * if it is not already there because of another terminal: it prints the
+	 * totals of the terminal that executes it.
+	 * 
+	 * @param resourceUsage the totals where the invocations are added
+	 * @param usageCommand  true to add the {@literal usage} command
+	 */
+	public void enableResourceUsage(CommandResourceUsage resourceUsage, boolean usageCommand) {
+		if (resourceUsage == null) {
 			throw new NullPointerException();
 		}
 
-		if (commands.containsKey(cd.name)) {
-			throw new RuntimeException("You cannot add more command with the same name!");
+		if (usageCommand) {
+			CommandDescription cd = CommandResourceUsage.createCommand();
+			CommandDescription existing = registry.addCommandIfAbsent(cd);
+			if (existing != null && existing.getClass() != cd.getClass()) {
+				throw new RuntimeException("You cannot add more command with the same name!");
+			}
 		}
 
-		commands.put(cd.name, cd);
+		this.resourceUsage = resourceUsage;
+	}
+
+	/**
+	 * Stop the measurement of the CPU time and memory of the executed commands.
+	 * The {@literal usage} command stays in the registry.
+	 */
+	public void disableResourceUsage() {
+		resourceUsage = null;
+	}
+
+	/**
+	 * Get the CPU time and memory used by the executed commands.
+	 * 
+	 * @return the totals, null if they are not measured
+	 */
+	public CommandResourceUsage getResourceUsage() {
+		return resourceUsage;
 	}
 
 	/**
-	 * Run the terminal.
+	 * Deliver the command events to the listeners asynchronously, through a
+	 * ring buffer read by another thread (see {@link CommandEventBus}). The
+	 * commands do not wait for the listeners anymore, and the independent
+	 * listeners are still called on their executor.
+	 * 
+	 * @param capacity       the number of events in the buffer, a power of two
+	 * @param waitStrategy   how the threads wait for events and free slots
+	 * @param overflowPolicy what happens when the buffer is full
+	 * @return the bus, to read its counters
+	 */
+	public CommandEventBus enableEventBus(int capacity, CommandEventBus.WaitStrategy waitStrategy,
+			CommandEventBus.OverflowPolicy overflowPolicy) {
+		if (eventBus != null) {
+			throw new RuntimeException("The event bus is already enabled!");
+		}
+
+		eventBus = new CommandEventBus(listeners, capacity, waitStrategy, overflowPolicy);
+		return eventBus;
+	}
+
+	/**
+	 * Deliver the command events synchronously again. The events already
+	 * published on the bus are delivered before the bus is closed, or after
+	 * this call when it is made by a listener.
+	 */
+	public void disableEventBus() {
+		CommandEventBus bus = eventBus;
+
+		if (bus != null) {
+			eventBus = null;
+			bus.close();
+		}
+	}
+
+	/**
+	 * Run the terminal. The lines are read until the exit command, the end of
+	 * the input or the interruption of the thread, that also stops a blocked
+	 * read. In any case the listeners receive
+	 * {@link CommandListener#stopRequest(CommandEvent)} at the end.
 	 */
 	@Override
 	public void run() {
 		stop = false;
-		Scanner inputScanner = new Scanner(input);
+		ChannelLineSource source = new ChannelLineSource(Channels.newChannel(input), Charset.defaultCharset());
+		LineContext context = new LineContext(output);
 
 		// printing the startup text
 		output.println(Settings.STARTUP_TEXT);
 
-		// CLI iteration
-		do {
-			output.print(prompt);
-			String line = inputScanner.nextLine();
+		try {
+			// CLI iteration
+			do {
+				output.print(prompt);
+				// the output of the previous command is buffered
+				output.flush();
+				FlightRecorderEvents.LineReadEvent event = FlightRecorderEvents.lineRead();
+				CharSequence line;
+				try {
+					line = source.nextLine();
+				} catch (ClosedByInterruptException e) {
+					// the thread has been interrupted while waiting for a line
+					line = null;
+				}
 
-			if (line == null || line.length() < 1) {
-				continue;
-			}
+				if (line == null) {
+					if (event != null) {
+						event.finish(0, FlightRecorderEvents.END_OF_INPUT);
+					}
+					break;
+				}
 
+				if (event != null) {
+					event.finish(line.length(), FlightRecorderEvents.OK);
+				}
+
+				if (line.length() < 1) {
+					continue;
+				}
+
+				try {
+					parseLine(line, context);
+				} catch (CommandExecutionException e) {
+					output.flush();
+					e.printStackTrace();
+				}
+
+			} while (!stop);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			// say goodbye to user
+			output.println(Settings.STOP_TEXT);
+			output.flush();
+
+			// close the input to avoid resource leak
 			try {
-				parseLine(line);
-			} catch (CommandExecutionException e) {
-				e.printStackTrace();
+				source.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+
+			stopListeners();
+		}
+	}
+
+	/**
+	 * Run a script without interaction. The startup text and the prompt are not
+	 * printed, the file is read with a buffered reader and the output is written
+	 * in chunks. The execution stops at the end of the file or when the exit
+	 * command is found.
+	 * 
+	 * @param script the path of the script
+	 * @return the summary of the execution
+	 * @throws IOException if the script cannot be read
+	 */
+	public BatchSummary runScript(Path script) throws IOException {
+		if (script == null) {
+			throw new NullPointerException();
+		}
+
+		try (InputStream scriptStream = Files.newInputStream(script)) {
+			return runBatch(scriptStream);
+		}
+	}
+
+	/**
+	 * Run the commands read from a stream without interaction. The startup text
+	 * and the prompt are not printed and the output is written in chunks. The
+	 * execution stops at the end of the stream or when the exit command is found,
+	 * then the listeners receive
+	 * {@link CommandListener#stopRequest(CommandEvent)}. The stream is not
+	 * closed.
+	 * 
+	 * @param commandStream the stream of commands, one per line
+	 * @return the summary of the execution
+	 * @throws IOException if the stream cannot be read
+	 */
+	public BatchSummary runBatch(InputStream commandStream) throws IOException {
+		if (commandStream == null) {
+			throw new NullPointerException();
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(commandStream, Charset.defaultCharset()),
+				BATCH_BUFFER_SIZE);
+		return runBatch(reader::readLine);
+	}
+
+	/**
+	 * Run a script without interaction, executing its lines in parallel on the
+	 * common fork-join pool. The script is split in chunks that are parsed and
+	 * executed by different threads, so it must contain independent commands:
+	 * the order of execution is not defined, and the exit command stops the
+	 * execution as soon as possible. Commands that are not thread safe (see
+	 * {@link CommandDescription#isThreadSafe()}) are never executed concurrently.
+	 * 
+	 * @param script  the path of the script
+	 * @param ordered true to write the output of the lines in the order of the
+	 *                script, false to write it as soon as it is available
+	 * @return the summary of the execution
+	 * @throws IOException if the script cannot be read
+	 */
+	public BatchSummary runParallelScript(Path script, boolean ordered) throws IOException {
+		if (script == null) {
+			throw new NullPointerException();
+		}
+
+		try (InputStream scriptStream = Files.newInputStream(script)) {
+			return runParallelBatch(scriptStream, ordered);
+		}
+	}
+
+	/**
+	 * Run the commands read from a stream without interaction, executing them in
+	 * parallel like {@link #runParallelScript(Path, boolean)}. The stream is not
+	 * closed.
+	 * 
+	 * @param commandStream the stream of commands, one per line
+	 * @param ordered       true to write the output of the lines in the order of
+	 *                      the stream, false to write it as soon as it is
+	 *                      available
+	 * @return the summary of the execution
+	 * @throws IOException if the stream cannot be read
+	 */
+	public BatchSummary runParallelBatch(InputStream commandStream, boolean ordered) throws IOException {
+		if (commandStream == null) {
+			throw new NullPointerException();
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(commandStream, Charset.defaultCharset()),
+				BATCH_BUFFER_SIZE);
+		stop = false;
+		PrintStream batchOutput = new PrintStream(new BufferedOutputStream(output, BATCH_BUFFER_SIZE), false);
+
+		try {
+			ShardedScriptRunner runner = new ShardedScriptRunner(this, ForkJoinPool.commonPool(), ordered,
+					batchOutput, ShardedScriptRunner.DEFAULT_CHUNK_SIZE);
+			return runner.run(reader::readLine);
+		} finally {
+			batchOutput.flush();
+			stopListeners();
+		}
+	}
+
+	/**
+	 * Run an UTF-8 script without interaction, like {@link #runScript(Path)}, but
+	 * mapping the file in memory instead of reading it. Lines are tokenized
+	 * directly on the mapped bytes and only command names, argument names and
+	 * values are decoded, so the heap used does not grow with the size of the
+	 * script. It is the preferred way to replay very large files.
+	 * 
+	 * @param script the path of the script
+	 * @return the summary of the execution
+	 * @throws IOException if the script cannot be mapped
+	 */
+	public BatchSummary runMappedScript(Path script) throws IOException {
+		if (script == null) {
+			throw new NullPointerException();
+		}
+
+		try (MappedLineSource source = new MappedLineSource(script)) {
+			return runBatch(source);
+		}
+	}
+
+	/**
+	 * Execute all the lines given by a source.
+	 * 
+	 * @param source the source of commands
+	 * @return the summary of the execution
+	 * @throws IOException if the source fails
+	 */
+	private BatchSummary runBatch(LineSource source) throws IOException {
+		assert (source != null);
+
+		long startTime = System.nanoTime();
+		long executed = 0;
+		long failed = 0;
+		stop = false;
+
+		/*
+		 * Output is not flushed at each line, it is written when the buffer is full
+		 * and at the end of the batch.
+		 */
+		PrintStream batchOutput = new PrintStream(new BufferedOutputStream(output, BATCH_BUFFER_SIZE), false);
+		LineContext context = new LineContext(batchOutput);
+
+		try {
+			CharSequence line;
+			while (!stop && (line = source.nextLine()) != null) {
+				if (line.length() < 1) {
+					continue;
+				}
+
+				if (executeLine(line, context)) {
+					executed++;
+				} else {
+					failed++;
+				}
 			}
+		} finally {
+			batchOutput.flush();
+			stopListeners();
+		}
 
-		} while (!stop);
+		return new BatchSummary(executed, failed, Duration.ofNanos(System.nanoTime() - startTime));
+	}
 
-		// say goodbye to user
-		output.println(Settings.STOP_TEXT);
+	/**
+	 * Check if the terminal has received the exit command.
+	 * 
+	 * @return true if the terminal is stopped
+	 */
+	boolean isStopped() {
+		return stop;
+	}
 
-		// close the scanner to avoid resource leak
-		inputScanner.close();
+	/**
+	 * Parse and execute a line without interaction. If the command fails, the
+	 * error message is written in the output of the context.
+	 * 
+	 * @param line    the line to execute
+	 * @param context the context of the calling thread
+	 * @return true if the command has been executed, false if the line contains
+	 *         an error or the command fails
+	 */
+	boolean executeLine(CharSequence line, LineContext context) {
+		try {
+			return parseLine(line, context);
+		} catch (CommandExecutionException e) {
+			context.out.println(e.getLocalizedMessage());
+			return false;
+		}
 	}
 
-	private void parseLine(String line) throws CommandExecutionException {
+	/**
+	 * Parse and execute a line.
+	 * 
+	 * @param line    the line to execute
+	 * @param context the context of the calling thread
+	 * @return true if the command has been executed, false if the line contains
+	 *         an error
+	 * @throws CommandExecutionException if the command fails
+	 */
+	private boolean parseLine(CharSequence line, LineContext context) throws CommandExecutionException {
 		assert (line != null);
 		assert (line.length() > 0);
 
-		// sanitizing the line
-		line = line.trim();
+		PrintStream out = context.out;
+
+		// check if the command must be executed in background
+		int end = line.length();
+		boolean background = false;
+		if (jobControl != null) {
+			int last = end - 1;
+			while (last >= 0 && line.charAt(last) <= ' ') {
+				last--;
+			}
+
+			if (last >= 0 && line.charAt(last) == JobControl.BACKGROUND_MARK) {
+				background = true;
+				end = last;
+			}
+		}
 
 		// first detect the command
 		CommandInvocation commandInvocation;
 		try {
-			commandInvocation = detectCommand(line);
+			commandInvocation = detectCommand(line, end, context);
 		} catch (CommandSyntaxError e) {
 			// syntax error
-			output.println(e.getLocalizedMessage());
-			return;
+			out.println(e.getLocalizedMessage());
+			return false;
 		} catch (ArgumentParseException e) {
 			// error during parsing
-			output.println(e.getLocalizedMessage());
-			return;
+			out.println(e.getLocalizedMessage());
+			return false;
 		}
 
 		// check if command is found or not
 		if (commandInvocation == null) {
-			output.println(Settings.COMMAND_NOT_FOUND);
-			return;
+			out.println(Settings.COMMAND_NOT_FOUND);
+			return false;
 		}
 
-		if (commandInvocation.command instanceof ExitCommandDescription) {
+		boolean exit = commandInvocation.command instanceof ExitCommandDescription;
+		if (exit) {
 			// check if the stop command is received
 			stop = true;
+		} else if (background) {
+			// the invocation of the context is reused, the job needs its own
+			int id = jobControl.start(this, commandInvocation.copy(), line.subSequence(0, end).toString().trim(),
+					context);
+			if (id < 0) {
+				out.println("Too many jobs in execution, the limit is " + jobControl.getMaxJobs());
+				return false;
+			}
+
+			out.println("[" + id + "]");
+			return true;
 		}
 
 		// prepare the execution environment
-		ExecutionEnvironment exe = new ExecutionEnvironment(this, commandInvocation, output, input);
+		ExecutionEnvironment exe = context.obtainEnvironment(this, commandInvocation);
 
 		/*
 		 * Now we have all object to start the execution
 		 */
-		commandInvocation.command.runCommand(commandInvocation.arguments, exe);
+		try {
+			if (context.serialized && !commandInvocation.command.isThreadSafe()) {
+				// other threads execute lines of the same script
+				synchronized (commandInvocation.command.executionLock) {
+					runInvocation(commandInvocation, exe);
+				}
+			} else {
+				runInvocation(commandInvocation, exe);
+			}
+		} finally {
+			if (exit) {
+				// after the events sent by the exit command
+				sendStop(commandInvocation);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Execute a command invocation.
+	 * 
+	 * @param commandInvocation the invocation to execute
+	 * @param exe               the execution environment
+	 * @throws CommandExecutionException if the command fails
+	 */
+	void runInvocation(CommandInvocation commandInvocation, ExecutionEnvironment exe)
+			throws CommandExecutionException {
+		CommandDescription command = commandInvocation.command;
+		CommandStatistics stats = statistics;
+		long start = stats == null ? 0 : System.nanoTime();
+		FlightRecorderEvents.RunCommandEvent event = FlightRecorderEvents.runCommand();
+		String outcome = FlightRecorderEvents.OK;
+		CommandResourceUsage usage = resourceUsage;
+		long cpuStart = usage == null ? 0 : usage.currentCpuNanos();
+		long allocatedStart = usage == null ? 0 : usage.currentAllocatedBytes();
+
+		try {
+			command.runCommand(commandInvocation.arguments, exe);
+		} catch (Throwable t) {
+			outcome = FlightRecorderEvents.outcome(t);
+			throw t;
+		} finally {
+			if (usage != null) {
+				usage.record(command.name, usage.currentCpuNanos() - cpuStart,
+						usage.currentAllocatedBytes() - allocatedStart);
+			}
+
+			if (stats != null) {
+				stats.record(command.name, CommandStatistics.Stage.RUN, System.nanoTime() - start);
+			}
+
+			if (event != null) {
+				event.finish(command.name, commandInvocation.arguments.size(), outcome);
+			}
+		}
+	}
+
+	/**
+	 * Get the input stream of the terminal.
+	 * 
+	 * @return the input stream
+	 */
+	InputStream getInput() {
+		return input;
 	}
 
 	/**
 	 * This method detects the command and returns the related CommandInvocation.
+	 * The invocation is owned by the context and it is reused by the next line.
 	 * 
-	 * @param line the line where executes the search
+	 * @param line    the line where executes the search
+	 * @param end     the end of the line to consider (exclusive)
+	 * @param context the context of the calling thread
 	 * @return if method finds the command returns the command invocation object,
 	 *         else returns null
 	 * @throws CommandSyntaxError     in case of during argument parsing any errors
 	 *                                occur
 	 * @throws ArgumentParseException in case of exception during parsing
 	 */
-	private CommandInvocation detectCommand(String line) throws CommandSyntaxError, ArgumentParseException {
+	CommandInvocation detectCommand(CharSequence line, int end, LineContext context)
+			throws CommandSyntaxError, ArgumentParseException {
 		assert (line != null);
-		assert (line.length() > 0);
 
-		// extract the command from the line
-		String command = extractCommand(line);
-		CommandDescription commandDescription = null;
+		CommandStatistics stats = statistics;
+		long start = stats == null ? 0 : System.nanoTime();
+		FlightRecorderEvents.DetectCommandEvent detectEvent = FlightRecorderEvents.detectCommand();
 
-		// check if is the exit command
-		if (exitCommand.isCalled(line)) {
-			commandDescription = exitCommand;
-		} else {
-			/*
-			 * search command on map, if the map fails to find the command, get method will
-			 * return null.
-			 */
-			commandDescription = commands.get(command);
+		LineTokenizer tokenizer = context.tokenizer;
+		CommandDescription commandDescription;
+		try {
+			commandDescription = lookupCommand(tokenizer, line, end);
+		} catch (CommandSyntaxError | RuntimeException e) {
+			if (detectEvent != null) {
+				detectEvent.finish(null, 0, FlightRecorderEvents.outcome(e));
+			}
+			throw e;
 		}
 
 		if (commandDescription == null) {
+			if (detectEvent != null) {
+				detectEvent.finish(null, 0, FlightRecorderEvents.NOT_FOUND);
+			}
 			return null;
 		}
 
-		CommandInvocation commandInvocation = new CommandInvocation(commandDescription);
+		if (detectEvent != null) {
+			detectEvent.finish(commandDescription.name, tokenizer.argumentCount(), FlightRecorderEvents.OK);
+		}
 
-		/*
-		 * Checking the arguments of the command
-		 */
-		// extract the argument string from line
-		String argumentString = line.replaceFirst(command, "");
-		// parse argument (not eval it) (it can throws exception due to bad syntax)
-		Map<String, String> argumentMap = extractArguments(argumentString);
-		// check if command has arguments
-		if (commandDescription.arguments.size() > 0) {
-			// we need to parse it
-			parseArguments(argumentMap, commandInvocation);
-		} else {
-			if (argumentMap.size() > 0) {
-				/*
-				 * user has passed arguments, but command does not accept it
-				 */
-				throw new CommandSyntaxError("This command does not accept arguments!");
+		long parsed = stats == null ? 0 : System.nanoTime();
+		FlightRecorderEvents.ParseArgumentsEvent parseEvent = FlightRecorderEvents.parseArguments();
+		CommandInvocation commandInvocation = context.obtainInvocation(commandDescription, getCommandTable());
+
+		try {
+			/*
+			 * Checking the arguments of the command
+			 */
+			if (commandInvocation.argumentTable.size() > 0) {
+				// we need to parse it
+				parseArguments(tokenizer, commandInvocation);
+			} else {
+				if (tokenizer.argumentCount() > 0) {
+					/*
+					 * user has passed arguments, but command does not accept it
+					 */
+					throw new CommandSyntaxError("This command does not accept arguments!");
+				}
 			}
+		} catch (CommandSyntaxError | ArgumentParseException | RuntimeException e) {
+			if (parseEvent != null) {
+				parseEvent.finish(commandDescription.name, tokenizer.argumentCount(), FlightRecorderEvents.outcome(e));
+			}
+			throw e;
+		}
+
+		if (parseEvent != null) {
+			parseEvent.finish(commandDescription.name, tokenizer.argumentCount(), FlightRecorderEvents.OK);
+		}
+
+		if (stats != null) {
+			stats.record(commandDescription.name, CommandStatistics.Stage.PARSE, parsed - start);
+			stats.record(commandDescription.name, CommandStatistics.Stage.CONVERT, System.nanoTime() - parsed);
 		}
 
 		return commandInvocation;
 	}
 
 	/**
-	 * This method tries to extract the command from a line. This method must not
-	 * fail, because the line is != null and the {@literal length is > 0}. It returns the
-	 * command name without the space.
+	 * Tokenize a line and search its command.
 	 * 
-	 * For example if the line parameter is {@code ln -ls /dev/null /dev/sda}, the
-	 * return value of this method is {@code ln}. Another example is that if line
-	 * parameter is {@code ls}, the return value is {@code ln}
-	 * 
-	 * @param line the line of terminal
-	 * @return a string != null that is the name of the command
+	 * @param tokenizer the tokenizer of the line
+	 * @param line      the line
+	 * @param end       the end of the line to consider (exclusive)
+	 * @return the command, null if the line is blank or the command is not found
+	 * @throws CommandSyntaxError if the syntax of the arguments is wrong
 	 */
-	private String extractCommand(String line) {
-		assert (line != null);
-		assert (line.length() > 0);
-
-		// if no spaces
-		String extractedCommand = line;
-		boolean extracted = false;
+	private CommandDescription lookupCommand(LineTokenizer tokenizer, CharSequence line, int end)
+			throws CommandSyntaxError {
+		/*
+		 * tokenize the line in a single pass, it can throw exception due to bad
+		 * syntax of the arguments
+		 */
+		if (!tokenizer.tokenize(line, 0, end)) {
+			// blank line
+			return null;
+		}
 
-		for (int i = 0; i < line.length() && !extracted; i++) {
-			if (line.charAt(i) == ' ') {
-				// space detected
-				extracted = true;
-				extractedCommand = line.substring(0, i);
+		// check if is the exit command
+		if (exitCalledOverridden) {
+			if (exitCommand.isCalled(line.subSequence(0, end).toString())) {
+				return exitCommand;
 			}
+		} else if (tokenizer.isCommandOnly() && tokenizer.isCommand(exitCommand.name)) {
+			// the same result of the default isCalled, without a string
+			return exitCommand;
 		}
 
-		assert (extractedCommand != null);
-		assert (!extractedCommand.contains("\\s"));
-		assert (extractedCommand.length() > 0);
-
-		return extractedCommand;
+		/*
+		 * search command on table, if the table fails to find the command, lookup
+		 * will return null.
+		 */
+		return tokenizer.lookupCommand(getCommandTable());
 	}
 
 	/**
-	 * This method extract the arguments of a command, and put it inside command
-	 * invocation class.
+	 * Check if a command overrides {@link CommandDescription#isCalled}.
 	 * 
-	 * @param argumentString the string, without command name, to parse
-	 * @throws CommandSyntaxError if an error during parsing occurs
-	 * @return Map a map between argument name and values
+	 * @param command the command
+	 * @return true if it is overridden
 	 */
-	private Map<String, String> extractArguments(String argumentString) throws CommandSyntaxError {
-		assert (argumentString != null);
-
-		Map<String, String> map = new HashMap<>();
-		// check is valid
-		if (argumentString.length() < 1) {
-			// no argument to process
-			return map;
-		}
-
-		/*
-		 * before process argument string, we need to know if string is well composed.
-		 * Split it and analyze pieces by pieces.
-		 */
-		String splitted[] = argumentString.split("\\s--");
-
-		for (String cs : splitted) {
-			if (cs.length() == 0) {
-				continue;
-			}
-
-			/*
-			 * check the syntax of a single argument.
-			 */
-			if (cs.matches("[^;:,=]+=[^;:,=]+")) {
-				// value binded
-				String[] csSplit = cs.split("=");
-				String argName = csSplit[0];
-				String argValue = csSplit[1];
-				map.put(argName, argValue);
-			} else if (cs.matches("[^;:,=]+")) {
-				// single
-				map.put(cs, null);
-			} else {
-				throw new CommandSyntaxError("You inserted too many characters");
-			}
+	private static boolean overridesIsCalled(CommandDescription command) {
+		try {
+			return command.getClass().getMethod("isCalled", String.class)
+					.getDeclaringClass() != CommandDescription.class;
+		} catch (NoSuchMethodException e) {
+			throw new AssertionError(e);
 		}
+	}
 
-		return map;
+	/**
+	 * Get the table of commands of the current snapshot of the registry.
+	 * 
+	 * @return the table of commands
+	 */
+	private NameTable<CommandDescription> getCommandTable() {
+		return registry.getTable();
 	}
 
 	/**
 	 * It parses the argument of a command.
 	 * 
-	 * @param map map between argument.
+	 * @param tokens            the tokenized line
 	 * @param commandInvocation the command invocation object
 	 * @throws ArgumentParseException if any error during parsing occurs
 	 * @throws CommandSyntaxError if there is an error during parsing the command
 	 */
-	private void parseArguments(Map<String, String> map, CommandInvocation commandInvocation)
+	private void parseArguments(LineTokenizer tokens, CommandInvocation commandInvocation)
 			throws ArgumentParseException, CommandSyntaxError {
 		assert (commandInvocation != null);
-		assert (commandInvocation.command.arguments.size() > 0);
+		assert (commandInvocation.argumentTable.size() > 0);
+
+		NameTable<ArgumentDescription> argumentTable = commandInvocation.argumentTable;
+		ParsedArguments arguments = commandInvocation.arguments;
 
 		// for each argument
-		for (String argName : map.keySet()) {
-			String argValue = map.get(argName);
-			ArgumentDescription argumentDescription;
-			argumentDescription = commandInvocation.command.arguments.get(argName);
+		for (int i = 0; i < tokens.argumentCount(); i++) {
+			int slot = tokens.lookupArgument(i, argumentTable);
 
-			if (argumentDescription == null) {
+			if (slot < 0) {
 				// this argument does not have this parameter name
-				throw new CommandSyntaxError("The parameter \"" + argName + "\" is not accepted by this command");
+				throw new CommandSyntaxError(
+						"The parameter \"" + tokens.argumentName(i) + "\" is not accepted by this command");
 			}
 
-			assert (argValue != null);
+			ArgumentDescription argumentDescription = argumentTable.valueAt(slot);
 
-			Object parsedValue;
-			if (argValue != null) {
+			if (tokens.hasValue(i)) {
 				// check if argument is really value binded
 				if (argumentDescription.single) {
-					throw new CommandSyntaxError("The parameter \"" + argName + "\" does not accept values!");
+					throw new CommandSyntaxError(
+							"The parameter \"" + argumentDescription.name + "\" does not accept values!");
 				}
-				// we have the argument description the argument value. let's parse it.
-				parsedValue = argumentDescription.parseValue(argValue);
+				// we have the argument description the argument value. let's parse it into the invocation.
+				tokens.parseArgumentValue(i, argumentDescription, arguments, slot);
 			} else {
 				// single argument
 				// check if argument is really single
 				if (!argumentDescription.single) {
-					throw new CommandSyntaxError("The parameter \"" + argName + "\" must accept values!");
+					throw new CommandSyntaxError(
+							"The parameter \"" + argumentDescription.name + "\" must accept values!");
 				}
-				parsedValue = null;
+				arguments.setPresent(slot);
 			}
-
-			// now add it to command invocation
-			commandInvocation.arguments.put(argumentDescription, parsedValue);
 		}
 
 		/*
 		 * Now we need to check if all mandatory parameters are set.
 		 */
-		for (ArgumentDescription argumentDescription : commandInvocation.command.getMandatoryArguments()) {
-			if (!commandInvocation.arguments.containsKey(argumentDescription)) {
+		for (int slot = 0; slot < argumentTable.size(); slot++) {
+			ArgumentDescription argumentDescription = argumentTable.valueAt(slot);
+
+			if (argumentDescription.mandatory && !arguments.isSet(slot)) {
 				throw new CommandSyntaxError(
 						"You have missed the mandatory parameter \"" + argumentDescription.name + "\"");
 			}
@@ -418,17 +1077,86 @@ public class Terminal implements Runnable {
 	}
 
 	/**
-	 * Propagate a command event.
+	 * Propagate a command event. If the event bus is enabled, the event is
+	 * published on the bus and this method does not wait for the listeners.
 	 * 
 	 * @param commandEvent event to propagate.
 	 */
 	public void propagateCommand(CommandEvent commandEvent) {
-		for (CommandListener cl : listeners) {
-			cl.commandRequest(commandEvent);
+		propagate(commandEvent.commandInvocation, commandEvent.data, commandEvent);
+	}
+
+	/**
+	 * Propagate an event of a command, creating the event only if it is
+	 * delivered synchronously.
+	 * 
+	 * @param invocation the invocation of the command
+	 * @param data       the data of the event
+	 */
+	void sendCommand(CommandInvocation invocation, Object data) {
+		propagate(invocation, data, null);
+	}
+
+	/**
+	 * Notify the listeners of the end of an execution that has not been stopped
+	 * by the exit command, for example at the end of the input: the listeners
+	 * receive the stop request once, with an invocation of the exit command
+	 * without arguments.
+	 */
+	private void stopListeners() {
+		if (!stop) {
+			sendStop(new CommandInvocation(exitCommand));
+		}
+	}
 
-			if (commandEvent.consumed) {
-				break;
+	/**
+	 * Notify the listeners that the exit command has been received, after the
+	 * events already published on the event bus.
+	 * 
+	 * @param invocation the invocation of the exit command
+	 */
+	private void sendStop(CommandInvocation invocation) {
+		CommandEventBus bus = eventBus;
+
+		if (bus == null || !bus.publish(invocation, null, true)) {
+			listeners.stop(new CommandEvent(invocation.copy()));
+		}
+	}
+
+	/**
+	 * Propagate an event of a command to the listeners or publish it on the
+	 * event bus.
+	 * 
+	 * @param invocation   the invocation of the command
+	 * @param data         the data of the event
+	 * @param commandEvent the event, null to create it if it is needed
+	 */
+	private void propagate(CommandInvocation invocation, Object data, CommandEvent commandEvent) {
+		CommandStatistics stats = statistics;
+		long start = stats == null ? 0 : System.nanoTime();
+		FlightRecorderEvents.PropagateCommandEvent event = FlightRecorderEvents.propagateCommand();
+		String outcome;
+
+		CommandEventBus bus = eventBus;
+		if (bus != null) {
+			outcome = bus.publish(invocation, data, false) ? FlightRecorderEvents.PUBLISHED
+					: FlightRecorderEvents.DROPPED;
+		} else {
+			if (commandEvent == null) {
+				commandEvent = new CommandEvent(invocation);
+				commandEvent.data = data;
 			}
+
+			listeners.propagate(commandEvent);
+			outcome = commandEvent.consumed ? FlightRecorderEvents.CONSUMED : FlightRecorderEvents.OK;
+		}
+
+		if (stats != null) {
+			stats.record(invocation.command.name, CommandStatistics.Stage.PROPAGATE, System.nanoTime() - start);
+		}
+
+		if (event != null) {
+			event.finish(invocation.command.name, invocation.arguments.size(), outcome);
 		}
 	}
 
@@ -444,4 +1172,13 @@ public class Terminal implements Runnable {
 
 		this.prompt = ansi;
 	}
+
+	/**
+	 * Get the prompt of terminal.
+	 * 
+	 * @return the prompt
+	 */
+	Ansi getPrompt() {
+		return prompt;
+	}
 }
@@ -0,0 +1,306 @@
+package org.dvle.java_cli;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.fusesource.jansi.AnsiConsole;
+import org.fusesource.jansi.internal.CLibrary;
+
+/**
+ * This class buffers the output of an interactive terminal. The output is
+ * written to the sink when the buffer is full or when the stream is flushed:
+ * the terminal flushes it before waiting for a line, so the commands write
+ * their output with array copies instead of a write on the sink for each
+ * line.
+ *
+ * The ANSI escape sequences of the colors and of the cursor are written as
+ * they are when the sink is a console, and they are removed while the bytes
+ * are copied in the buffer otherwise: the bytes without escape sequences are
+ * copied in one pass. Only the consoles of Windows need a conversion, that is
+ * done by Jansi after the buffer. The system properties
+ * {@literal jansi.passthrough}, {@literal jansi.strip} and
+ * {@literal jansi.force} are honored like in {@link AnsiConsole}, and they
+ * decide when the detection of the console is wrong.
+ *
+ * @author federicosilvestri
+ *
+ */
+final class TerminalOutputStream extends OutputStream {
+
+	/**
+	 * Default size of the buffer.
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The first byte of an escape sequence.
+	 */
+	private static final byte ESC = 0x1b;
+
+	/**
+	 * The byte that ends an operating system command.
+	 */
+	private static final byte BEL = 0x07;
+
+	/**
+	 * The state of the bytes outside escape sequences.
+	 */
+	private static final int TEXT = 0;
+
+	/**
+	 * The state after the escape byte.
+	 */
+	private static final int ESCAPE = 1;
+
+	/**
+	 * The state inside a control sequence, ESC [ ... final byte.
+	 */
+	private static final int CONTROL = 2;
+
+	/**
+	 * The state inside an operating system command, ESC ] ... BEL or ESC \.
+	 */
+	private static final int COMMAND = 3;
+
+	/**
+	 * The state after an escape byte inside an operating system command.
+	 */
+	private static final int COMMAND_ESCAPE = 4;
+
+	/**
+	 * The stream where the buffer is written.
+	 */
+	private final OutputStream sink;
+
+	/**
+	 * True to remove the escape sequences.
+	 */
+	private final boolean strip;
+
+	/**
+	 * The buffered bytes.
+	 */
+	private final byte[] buffer;
+
+	/**
+	 * The number of buffered bytes.
+	 */
+	private int count;
+
+	/**
+	 * The state of the removal of the escape sequences, that can be split
+	 * between writes.
+	 */
+	private int state;
+
+	/**
+	 * Create a buffered stream.
+	 *
+	 * @param sink       the stream where the buffer is written
+	 * @param strip      true to remove the escape sequences
+	 * @param bufferSize the size of the buffer
+	 */
+	TerminalOutputStream(OutputStream sink, boolean strip, int bufferSize) {
+		if (sink == null) {
+			throw new NullPointerException();
+		}
+
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be > 0");
+		}
+
+		this.sink = sink;
+		this.strip = strip;
+		this.buffer = new byte[bufferSize];
+		this.count = 0;
+		this.state = TEXT;
+	}
+
+	/**
+	 * Wrap the output of a terminal in a buffered stream, that removes the
+	 * escape sequences if the output is not a console.
+	 *
+	 * @param output the output of the terminal
+	 * @return the buffered stream
+	 */
+	static PrintStream wrap(PrintStream output) {
+		boolean strip;
+		OutputStream sink = output;
+
+		if (Boolean.getBoolean("jansi.passthrough")) {
+			strip = false;
+		} else if (Boolean.getBoolean("jansi.strip")) {
+			strip = true;
+		} else if (isConsole(output)) {
+			strip = false;
+			if (System.getProperty("os.name", "").startsWith("Windows")) {
+				sink = output == System.err ? AnsiConsole.wrapSystemErr(output) : AnsiConsole.wrapSystemOut(output);
+			}
+		} else {
+			strip = !Boolean.getBoolean("jansi.force");
+		}
+
+		return new PrintStream(new TerminalOutputStream(sink, strip, DEFAULT_BUFFER_SIZE), false);
+	}
+
+	/**
+	 * Check if a stream is written on a console. System.out and System.err are
+	 * the only streams that can be, and each one is checked on its own file
+	 * descriptor with the isatty of the native library of Jansi, so redirecting
+	 * the input or the other stream does not change the result.
+	 *
+	 * Without the native library the result is the one of
+	 * {@link System#console()}, that exists only when both the input and the
+	 * output are a terminal: a console is not recognized when the input is
+	 * redirected, and System.err is a console when System.out is. Streams that
+	 * wrap the standard ones, and pipes to programs that understand the escape
+	 * sequences, are never recognized.
+	 *
+	 * @param output the stream
+	 * @return true if it is a console
+	 */
+	static boolean isConsole(PrintStream output) {
+		if (output != System.out && output != System.err) {
+			return false;
+		}
+
+		try {
+			if (CLibrary.HAVE_ISATTY) {
+				return CLibrary.isatty(output == System.out ? CLibrary.STDOUT_FILENO : CLibrary.STDERR_FILENO) != 0;
+			}
+		} catch (LinkageError e) {
+			// the native library cannot be loaded on this platform
+		}
+
+		return System.console() != null;
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		if (strip && (state != TEXT || b == ESC)) {
+			skip((byte) b);
+			return;
+		}
+
+		if (count == buffer.length) {
+			drain();
+		}
+
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		int end = off + len;
+		while (off < end) {
+			if (strip) {
+				// the bytes of the escape sequences are not copied
+				while (off < end && (state != TEXT || b[off] == ESC)) {
+					skip(b[off++]);
+				}
+
+				int text = off;
+				while (text < end && b[text] != ESC) {
+					text++;
+				}
+
+				copy(b, off, text - off);
+				off = text;
+			} else {
+				copy(b, off, len);
+				off = end;
+			}
+		}
+	}
+
+	/**
+	 * Copy bytes in the buffer, draining it when it is full.
+	 *
+	 * @param b   the bytes
+	 * @param off the offset of the first byte
+	 * @param len the number of bytes
+	 * @throws IOException if the sink fails
+	 */
+	private void copy(byte[] b, int off, int len) throws IOException {
+		if (len >= buffer.length) {
+			// a large write goes to the sink without copies
+			drain();
+			sink.write(b, off, len);
+			return;
+		}
+
+		if (len > buffer.length - count) {
+			drain();
+		}
+
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	/**
+	 * Consume a byte of an escape sequence.
+	 *
+	 * @param b the byte
+	 */
+	private void skip(byte b) {
+		switch (state) {
+		case TEXT:
+			// only the escape byte is skipped outside the sequences
+			state = ESCAPE;
+			break;
+		case ESCAPE:
+			if (b == '[') {
+				state = CONTROL;
+			} else if (b == ']') {
+				state = COMMAND;
+			} else {
+				// a sequence of two bytes
+				state = TEXT;
+			}
+			break;
+		case CONTROL:
+			if (b >= 0x40 && b <= 0x7e) {
+				state = TEXT;
+			}
+			break;
+		case COMMAND:
+			if (b == BEL) {
+				state = TEXT;
+			} else if (b == ESC) {
+				state = COMMAND_ESCAPE;
+			}
+			break;
+		default:
+			state = b == '\\' ? TEXT : COMMAND;
+			break;
+		}
+	}
+
+	/**
+	 * Write the buffer to the sink, without flushing it.
+	 *
+	 * @throws IOException if the sink fails
+	 */
+	private void drain() throws IOException {
+		if (count > 0) {
+			sink.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		drain();
+		sink.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+}
@@ -0,0 +1,824 @@
+package org.dvle.java_cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a TCP server that gives a terminal to each connection. All the
+ * sessions execute the commands of the same registry.
+ *
+ * A single thread handles the I/O of every connection with a selector, so idle
+ * sessions do not need a thread. The lines received by a session are executed
+ * in order by a pool of workers, one line at time per session, and the output
+ * of the commands is buffered and written by the selector thread when the
+ * channel is writable. When the output of a session is not consumed by the
+ * client, the worker that writes it waits. When the lines of a session are
+ * received faster than they are executed, the server stops reading its
+ * channel until half of the queued lines are executed, so the client that
+ * floods the server is slowed down by TCP flow control.
+ *
+ * Each worker thread has its own output stream and line context, that are
+ * bound to the session of the line in execution: an idle session keeps only
+ * its terminal and its buffers. The output stream given to a command must not
+ * be used after the end of the command.
+ *
+ * @author federicosilvestri
+ *
+ */
+public final class TerminalServer implements Closeable {
+
+	/**
+	 * Size of the buffer used by the selector to read from channels.
+	 */
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * Maximum length of a line in bytes.
+	 */
+	static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	/**
+	 * Maximum number of bytes of output waiting to be written for a session,
+	 * before the worker that writes it waits.
+	 */
+	private static final int MAX_PENDING_OUTPUT = 256 * 1024;
+
+	/**
+	 * Maximum number of characters of the lines waiting to be executed for a
+	 * session, before the selector stops reading its channel. The lines of the
+	 * last read are queued anyway.
+	 */
+	private static final int MAX_PENDING_INPUT = 256 * 1024;
+
+	/**
+	 * The commands of the sessions.
+	 */
+	private final CommandRegistry registry;
+
+	/**
+	 * The exit command of the sessions.
+	 */
+	private final ExitCommandDescription exitCommand;
+
+	/**
+	 * The executor of the lines.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * True if the workers are created, and so shut down, by this server.
+	 */
+	private final boolean ownWorkers;
+
+	/**
+	 * Sessions that have new output to write.
+	 */
+	private final Queue<Session> pendingWrites;
+
+	/**
+	 * Sessions whose channel can be read again.
+	 */
+	private final Queue<Session> pendingReads;
+
+	/**
+	 * Number of open sessions.
+	 */
+	private final AtomicInteger sessionCount;
+
+	/**
+	 * The selector of all the channels, null if the server is not started.
+	 */
+	private Selector selector;
+
+	/**
+	 * The channel of the server.
+	 */
+	private ServerSocketChannel serverChannel;
+
+	/**
+	 * The thread of the selector.
+	 */
+	private Thread selectorThread;
+
+	/**
+	 * Variable that indicates the stop of the server.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * The output stream and the line context of each worker thread.
+	 */
+	private final ThreadLocal<WorkerContext> workerContexts;
+
+	/**
+	 * The output stream given to the terminals of the sessions, that is not used.
+	 */
+	private final PrintStream unusedOutput;
+
+	/**
+	 * The bytes of the startup text and of the prompt, sent to new sessions.
+	 */
+	private final byte[] greeting;
+
+	/**
+	 * The bytes of the prompt.
+	 */
+	private final byte[] prompt;
+
+	/**
+	 * Create a new server with a worker for each processor.
+	 *
+	 * @param registry the commands of the sessions
+	 * @param ecd      the exit command description, that closes a session
+	 */
+	public TerminalServer(CommandRegistry registry, ExitCommandDescription ecd) {
+		this(registry, ecd, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			Thread thread = new Thread(runnable, "terminal-server-worker");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * Create a new server.
+	 *
+	 * @param registry the commands of the sessions
+	 * @param ecd      the exit command description, that closes a session
+	 * @param workers  the executor of the lines, that is not shut down by the
+	 *                 server
+	 */
+	public TerminalServer(CommandRegistry registry, ExitCommandDescription ecd, ExecutorService workers) {
+		this(registry, ecd, workers, false);
+	}
+
+	/**
+	 * Create a new server.
+	 *
+	 * @param registry   the commands of the sessions
+	 * @param ecd        the exit command description
+	 * @param workers    the executor of the lines
+	 * @param ownWorkers true if the executor must be shut down by the server
+	 */
+	private TerminalServer(CommandRegistry registry, ExitCommandDescription ecd, ExecutorService workers,
+			boolean ownWorkers) {
+		if (registry == null || ecd == null || workers == null) {
+			throw new NullPointerException();
+		}
+
+		this.registry = registry;
+		this.exitCommand = ecd;
+		this.workers = workers;
+		this.ownWorkers = ownWorkers;
+		this.pendingWrites = new ConcurrentLinkedQueue<>();
+		this.pendingReads = new ConcurrentLinkedQueue<>();
+		this.sessionCount = new AtomicInteger();
+		this.workerContexts = ThreadLocal.withInitial(WorkerContext::new);
+		this.unusedOutput = new PrintStream(new OutputStream() {
+
+			@Override
+			public void write(int b) {
+				// discarded
+			}
+
+		});
+		this.prompt = Settings.PROMPT.toString().getBytes(StandardCharsets.UTF_8);
+		this.greeting = (Settings.STARTUP_TEXT + System.lineSeparator() + Settings.PROMPT)
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Start to accept connections.
+	 *
+	 * @param address the address to bind, for example a loopback address
+	 * @return the address where the server listens, useful if the port of the
+	 *         given address is 0
+	 * @throws IOException if the server cannot be bound
+	 */
+	public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+		if (address == null) {
+			throw new NullPointerException();
+		}
+
+		if (selector != null) {
+			throw new IllegalStateException("The server is already started");
+		}
+
+		selector = Selector.open();
+		try {
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(address);
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			selector.close();
+			if (serverChannel != null) {
+				serverChannel.close();
+			}
+			throw e;
+		}
+
+		selectorThread = new Thread(this::select, "terminal-server-selector");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+
+		return (InetSocketAddress) serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * Get the number of open sessions.
+	 *
+	 * @return the number of sessions
+	 */
+	public int getSessionCount() {
+		return sessionCount.get();
+	}
+
+	/**
+	 * Stop the server and close all the sessions. Lines in execution are not
+	 * interrupted, but their output is discarded.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (selector != null) {
+			selector.wakeup();
+			try {
+				selectorThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Session) {
+					((Session) key.attachment()).close();
+				}
+			}
+			serverChannel.close();
+			selector.close();
+		}
+
+		if (ownWorkers) {
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * The loop of the selector thread.
+	 */
+	private void select() {
+		ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+		try {
+			while (!closed) {
+				selector.select();
+
+				Session session;
+				while ((session = pendingWrites.poll()) != null) {
+					session.enableWrite();
+				}
+				while ((session = pendingReads.poll()) != null) {
+					session.enableRead();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (!key.isValid()) {
+						continue;
+					}
+
+					if (key.isAcceptable()) {
+						try {
+							accept();
+						} catch (IOException e) {
+							// only this connection is lost, for example when no descriptors are left
+						}
+						continue;
+					}
+
+					session = (Session) key.attachment();
+					try {
+						if (key.isReadable()) {
+							session.read(readBuffer);
+						}
+						if (key.isValid() && key.isWritable()) {
+							session.write();
+						}
+					} catch (IOException e) {
+						session.close();
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			if (!closed) {
+				throw new RuntimeException("The selector of the server failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Accept a connection and start its session.
+	 *
+	 * @throws IOException if the connection cannot be registered
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+
+		Session session;
+		try {
+			channel.configureBlocking(false);
+			session = new Session(channel);
+			session.key = channel.register(selector, SelectionKey.OP_READ, session);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		sessionCount.incrementAndGet();
+		session.send(greeting);
+	}
+
+	/**
+	 * This class contains the objects used by a worker thread to execute lines.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class WorkerContext {
+
+		/**
+		 * The stream that writes to the session in execution.
+		 */
+		final SessionOutputStream stream;
+
+		/**
+		 * The output of the commands.
+		 */
+		final PrintStream out;
+
+		/**
+		 * The context of the lines.
+		 */
+		final LineContext context;
+
+		/**
+		 * Create the context of the calling worker.
+		 */
+		WorkerContext() {
+			stream = new SessionOutputStream();
+			try {
+				// lines are decoded as UTF-8, so the output is encoded in the same way
+				out = new PrintStream(stream, false, StandardCharsets.UTF_8.name());
+			} catch (UnsupportedEncodingException e) {
+				throw new AssertionError(e);
+			}
+			context = new LineContext(out);
+		}
+	}
+
+	/**
+	 * This class represents the session of a connection.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private final class Session {
+
+		/**
+		 * The channel of the connection.
+		 */
+		private final SocketChannel channel;
+
+		/**
+		 * The key of the channel, set after the registration.
+		 */
+		private SelectionKey key;
+
+		/**
+		 * The terminal of this session.
+		 */
+		private final Terminal terminal;
+
+		/**
+		 * The line being received.
+		 */
+		private byte[] line;
+
+		/**
+		 * The length of the line being received.
+		 */
+		private int lineLength;
+
+		/**
+		 * The lines received and not yet executed. Guarded by this.
+		 */
+		private final Queue<String> lines;
+
+		/**
+		 * The number of characters of the queued lines. Guarded by this.
+		 */
+		private int queuedLength;
+
+		/**
+		 * True if the channel is not read because too many lines are queued.
+		 * Guarded by this.
+		 */
+		private boolean readPaused;
+
+		/**
+		 * True if a worker is executing the lines. Guarded by this.
+		 */
+		private boolean scheduled;
+
+		/**
+		 * The output waiting to be written, in write mode, null if there is no
+		 * output. Guarded by this.
+		 */
+		private ByteBuffer output;
+
+		/**
+		 * True if the session must be closed once the output is written. Guarded by
+		 * this.
+		 */
+		private boolean closing;
+
+		/**
+		 * True if the session is closed. Guarded by this.
+		 */
+		private boolean sessionClosed;
+
+		/**
+		 * Create a new session.
+		 *
+		 * @param channel the channel of the connection
+		 */
+		Session(SocketChannel channel) {
+			this.channel = channel;
+			this.terminal = new Terminal(new ByteArrayInputStream(new byte[0]), unusedOutput, exitCommand, registry,
+					false);
+			this.line = new byte[128];
+			this.lines = new ArrayDeque<>();
+			this.output = null;
+		}
+
+		/**
+		 * Send bytes to the client, called by the selector thread. The bytes are
+		 * queued even if too much output is not yet written, because the selector
+		 * thread is the one that writes it.
+		 *
+		 * @param bytes the bytes
+		 */
+		void send(byte[] bytes) {
+			try {
+				append(bytes, 0, bytes.length, false);
+			} catch (IOException e) {
+				// the session is closed
+				return;
+			}
+			requestWrite();
+		}
+
+		/**
+		 * Read from the channel and queue the complete lines.
+		 *
+		 * @param buffer the buffer of the selector
+		 * @throws IOException if the channel cannot be read
+		 */
+		void read(ByteBuffer buffer) throws IOException {
+			buffer.clear();
+			int read = channel.read(buffer);
+
+			if (read < 0) {
+				// the lines already received are executed before closing
+				synchronized (this) {
+					closing = true;
+					if (!scheduled) {
+						requestWrite();
+					}
+				}
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				return;
+			}
+
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+
+				if (b == '\n') {
+					int length = lineLength;
+					if (length > 0 && line[length - 1] == '\r') {
+						length--;
+					}
+					enqueue(new String(line, 0, length, StandardCharsets.UTF_8));
+					lineLength = 0;
+				} else {
+					if (lineLength == MAX_LINE_LENGTH) {
+						send(("Line longer than " + MAX_LINE_LENGTH + " bytes" + System.lineSeparator())
+								.getBytes(StandardCharsets.UTF_8));
+						lineLength = 0;
+						closeAfterOutput();
+						return;
+					}
+					if (lineLength == line.length) {
+						line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+					}
+					line[lineLength++] = b;
+				}
+			}
+		}
+
+		/**
+		 * Queue a line and schedule its execution.
+		 *
+		 * @param received the line
+		 */
+		private void enqueue(String received) {
+			synchronized (this) {
+				if (closing) {
+					return;
+				}
+
+				lines.add(received);
+				queuedLength += received.length() + 1;
+				if (queuedLength > MAX_PENDING_INPUT && !readPaused) {
+					// the workers resume the reading when they execute the lines
+					readPaused = true;
+					key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				}
+
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+
+			workers.execute(this::executeLines);
+		}
+
+		/**
+		 * Enable the read interest, called by the selector thread.
+		 */
+		void enableRead() {
+			synchronized (this) {
+				if (readPaused || closing) {
+					return;
+				}
+			}
+
+			if (key.isValid()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			}
+		}
+
+		/**
+		 * Execute the queued lines, called by a worker.
+		 */
+		private void executeLines() {
+			WorkerContext worker = workerContexts.get();
+			worker.stream.session = this;
+
+			try {
+				while (true) {
+					String next;
+					boolean resume = false;
+					synchronized (this) {
+						next = lines.poll();
+						if (next == null || sessionClosed) {
+							return;
+						}
+
+						queuedLength -= next.length() + 1;
+						if (readPaused && queuedLength <= MAX_PENDING_INPUT / 2) {
+							readPaused = false;
+							resume = true;
+						}
+					}
+
+					if (resume) {
+						pendingReads.add(this);
+						selector.wakeup();
+					}
+
+					if (next.trim().length() > 0) {
+						try {
+							terminal.executeLine(next, worker.context);
+						} catch (RuntimeException e) {
+							// a failed command does not stop the session
+							worker.out.println(e);
+						}
+					}
+
+					if (terminal.isStopped()) {
+						worker.out.println(Settings.STOP_TEXT);
+						worker.out.flush();
+						closeAfterOutput();
+					} else {
+						worker.out.write(prompt, 0, prompt.length);
+						worker.out.flush();
+					}
+				}
+			} finally {
+				worker.out.flush();
+				worker.stream.session = null;
+
+				boolean reschedule;
+				synchronized (this) {
+					// a line queued after the last poll did not schedule a worker
+					reschedule = !lines.isEmpty() && !sessionClosed;
+					scheduled = reschedule;
+					if (closing && !reschedule) {
+						requestWrite();
+					}
+				}
+
+				if (reschedule) {
+					workers.execute(this::executeLines);
+				}
+			}
+		}
+
+		/**
+		 * Close the session once the output is written. The lines not yet executed
+		 * are discarded.
+		 */
+		private void closeAfterOutput() {
+			synchronized (this) {
+				closing = true;
+				lines.clear();
+				queuedLength = 0;
+			}
+			requestWrite();
+		}
+
+		/**
+		 * Ask the selector thread to write the output.
+		 */
+		private void requestWrite() {
+			pendingWrites.add(this);
+			selector.wakeup();
+		}
+
+		/**
+		 * Enable the write interest, called by the selector thread.
+		 */
+		void enableWrite() {
+			if (key.isValid()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			}
+		}
+
+		/**
+		 * Write the pending output, called by the selector thread.
+		 *
+		 * @throws IOException if the channel cannot be written
+		 */
+		void write() throws IOException {
+			boolean close;
+
+			synchronized (this) {
+				if (output != null) {
+					output.flip();
+					channel.write(output);
+					output.compact();
+
+					if (output.position() > 0) {
+						return;
+					}
+				}
+
+				// idle sessions do not keep the buffer
+				output = null;
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+				notifyAll();
+				close = closing && !scheduled;
+			}
+
+			if (close) {
+				close();
+			}
+		}
+
+		/**
+		 * Append output.
+		 *
+		 * @param bytes  the bytes
+		 * @param offset the offset of the bytes
+		 * @param length the number of bytes
+		 * @param wait   true to wait if too much output is not yet written, false
+		 *               on the selector thread
+		 * @throws IOException if the session is closed
+		 */
+		synchronized void append(byte[] bytes, int offset, int length, boolean wait) throws IOException {
+			while (wait && output != null && output.position() + length > MAX_PENDING_OUTPUT && !sessionClosed) {
+				requestWrite();
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+
+			if (sessionClosed) {
+				throw new IOException("The session is closed");
+			}
+
+			if (output == null) {
+				output = ByteBuffer.allocate(Math.max(length, 256));
+			} else if (output.remaining() < length) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + length));
+				output.flip();
+				larger.put(output);
+				output = larger;
+			}
+
+			output.put(bytes, offset, length);
+		}
+
+		/**
+		 * Close the channel of the session.
+		 */
+		void close() {
+			synchronized (this) {
+				if (sessionClosed) {
+					return;
+				}
+				sessionClosed = true;
+				lines.clear();
+				notifyAll();
+			}
+
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// the session is closed anyway
+			}
+			sessionCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * The output stream of a worker, that writes to the session in execution.
+	 *
+	 * @author federicosilvestri
+	 *
+	 */
+	private static final class SessionOutputStream extends OutputStream {
+
+		/**
+		 * The session in execution, null if the worker is idle.
+		 */
+		Session session;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (session == null) {
+				throw new IOException("No session in execution");
+			}
+
+			session.append(b, off, len, true);
+		}
+
+		@Override
+		public void flush() {
+			if (session != null) {
+				session.requestWrite();
+			}
+		}
+	}
+}
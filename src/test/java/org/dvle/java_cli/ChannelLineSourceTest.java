@@ -0,0 +1,103 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the line source of the interactive terminal.
+ *
+ * @author federicosilvestri
+ *
+ */
+class ChannelLineSourceTest {
+
+	private static ChannelLineSource sourceOf(String text, int bufferSize) {
+		return new ChannelLineSource(
+				Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))),
+				StandardCharsets.UTF_8, bufferSize);
+	}
+
+	@Test
+	void testLinesAcrossBuffers() throws IOException {
+		// small buffers split the CRLF terminators and the multi-byte chars
+		for (int bufferSize = 8; bufferSize < 24; bufferSize++) {
+			try (ChannelLineSource source = sourceOf("first line\r\nsecond --name=café\n\r\n\nlast line", bufferSize)) {
+				assertEquals("first line", source.nextLine().toString());
+				assertEquals("second --name=café", source.nextLine().toString());
+				assertEquals("", source.nextLine().toString());
+				assertEquals("", source.nextLine().toString());
+				assertEquals("last line", source.nextLine().toString());
+				assertNull(source.nextLine());
+				assertNull(source.nextLine());
+			}
+		}
+	}
+
+	@Test
+	void testEndOfInput() throws IOException {
+		try (ChannelLineSource source = sourceOf("", 16)) {
+			assertNull(source.nextLine());
+		}
+
+		try (ChannelLineSource source = sourceOf("exit\n", 16)) {
+			assertEquals("exit", source.nextLine().toString());
+			assertNull(source.nextLine());
+		}
+
+		try (ChannelLineSource source = sourceOf("exit\r", 16)) {
+			assertEquals("exit", source.nextLine().toString());
+			assertNull(source.nextLine());
+		}
+	}
+
+	@Test
+	void testLongLine() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100_000; i++) {
+			builder.append((char) ('a' + i % 26));
+		}
+		String longLine = builder.toString();
+
+		try (ChannelLineSource source = sourceOf(longLine + "\r\nshort\n", 16)) {
+			assertEquals(longLine, source.nextLine().toString());
+			assertEquals("short", source.nextLine().toString());
+			assertNull(source.nextLine());
+		}
+	}
+
+	@Test
+	void testInterruption() throws Exception {
+		Pipe pipe = Pipe.open();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		try (ChannelLineSource source = new ChannelLineSource(pipe.source(), StandardCharsets.UTF_8)) {
+			Thread reader = new Thread(() -> {
+				try {
+					source.nextLine();
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+			});
+			reader.start();
+
+			// the blocked read is stopped by the interruption
+			Thread.sleep(100);
+			reader.interrupt();
+			reader.join(10_000);
+
+			assertFalse(reader.isAlive());
+			assertTrue(failure.get() instanceof ClosedByInterruptException);
+		} finally {
+			pipe.sink().close();
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.dvle.java_cli.CommandEventBus.OverflowPolicy;
+import org.dvle.java_cli.CommandEventBus.WaitStrategy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the asynchronous delivery of the command events.
+ *
+ * @author federicosilvestri
+ *
+ */
+class CommandEventBusTest {
+
+	private Terminal terminal;
+
+	private ArgumentDescription valueDescription;
+
+	@BeforeEach
+	void setUp() {
+		terminal = new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()),
+				ExitCommandDescription.DEFAULT, new CommandRegistry(), false);
+		valueDescription = new ArgumentDescription("value", ArgumentValueType.INTEGER, true);
+		terminal.addCommand(new ParsedCommandDescription("send") {
+
+			{
+				addArgument(valueDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				exe.sendCommandToHandlers("data");
+			}
+
+			@Override
+			public boolean isThreadSafe() {
+				return true;
+			}
+
+		});
+	}
+
+	/**
+	 * A listener that records the values of the events.
+	 */
+	private final class ValueListener implements CommandListener {
+
+		final List<Integer> values = Collections.synchronizedList(new ArrayList<>());
+
+		final AtomicInteger batches = new AtomicInteger();
+
+		final CountDownLatch release;
+
+		ValueListener(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public void commandRequest(CommandEvent cmdEvt) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			assertEquals("data", cmdEvt.data);
+			values.add(cmdEvt.commandInvocation.arguments.getInt(valueDescription));
+		}
+
+		@Override
+		public void stopRequest(CommandEvent cmdEvt) {
+		}
+
+		@Override
+		public void endOfBatch() {
+			batches.incrementAndGet();
+		}
+	}
+
+	@Test
+	void testBlockingBus() throws Exception {
+		ValueListener listener = new ValueListener(new CountDownLatch(0));
+		terminal.addListener(listener);
+		CommandEventBus bus = terminal.enableEventBus(16, WaitStrategy.BLOCK, OverflowPolicy.BLOCK);
+
+		int lines = 5_000;
+		Thread[] threads = new Thread[2];
+		for (int t = 0; t < threads.length; t++) {
+			int offset = t * lines;
+			threads[t] = new Thread(() -> {
+				LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+				for (int i = 0; i < lines; i++) {
+					assertTrue(terminal.executeLine("send --value=" + (offset + i), context));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		terminal.disableEventBus();
+
+		assertEquals(2 * lines, bus.getPublishedCount());
+		assertEquals(2 * lines, bus.getDeliveredCount());
+		assertEquals(0, bus.getDroppedCount());
+		assertEquals(0, bus.getLag());
+		assertEquals(0, bus.getFailureCount(), String.valueOf(bus.getLastFailure()));
+		assertTrue(listener.batches.get() > 0 && listener.batches.get() <= 2 * lines);
+
+		// the events of each thread are delivered in order, with their own arguments
+		List<Integer> values = new ArrayList<>(listener.values);
+		assertEquals(2 * lines, values.size());
+		int[] last = { -1, lines - 1 };
+		for (int value : values) {
+			int t = value / lines;
+			assertEquals(last[t] + 1, value);
+			last[t] = value;
+		}
+	}
+
+	@Test
+	void testDroppingBus() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ValueListener listener = new ValueListener(release);
+		terminal.addListener(listener);
+		CommandEventBus bus = terminal.enableEventBus(4, WaitStrategy.SLEEP, OverflowPolicy.DROP);
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		// the commands do not wait for the blocked listener
+		int lines = 20;
+		for (int i = 0; i < lines; i++) {
+			assertTrue(terminal.executeLine("send --value=" + i, context));
+		}
+
+		assertTrue(bus.getDroppedCount() >= lines - 2 * bus.getCapacity());
+		assertEquals(lines, bus.getPublishedCount() + bus.getDroppedCount());
+		assertTrue(bus.getLag() > 0);
+
+		release.countDown();
+		terminal.disableEventBus();
+		assertEquals(bus.getPublishedCount(), bus.getDeliveredCount());
+		assertEquals(bus.getPublishedCount(), listener.values.size());
+
+		// after the bus is disabled the events are delivered synchronously
+		assertTrue(terminal.executeLine("send --value=100", context));
+		assertEquals(Integer.valueOf(100), listener.values.get(listener.values.size() - 1));
+	}
+
+	@Test
+	void testListenerFailure() throws Exception {
+		CountDownLatch delivered = new CountDownLatch(2);
+		terminal.addListener(new CommandListener() {
+
+			@Override
+			public void commandRequest(CommandEvent cmdEvt) {
+				delivered.countDown();
+				throw new IllegalStateException("failure");
+			}
+
+			@Override
+			public void stopRequest(CommandEvent cmdEvt) {
+			}
+		});
+		CommandEventBus bus = terminal.enableEventBus(8, WaitStrategy.YIELD, OverflowPolicy.BLOCK);
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		assertTrue(terminal.executeLine("send --value=1", context));
+		assertTrue(terminal.executeLine("send --value=2", context));
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		terminal.disableEventBus();
+
+		assertEquals(2, bus.getFailureCount());
+		assertTrue(bus.getLastFailure() instanceof IllegalStateException);
+		assertThrows(IllegalArgumentException.class,
+				() -> terminal.enableEventBus(3, WaitStrategy.YIELD, OverflowPolicy.BLOCK));
+	}
+
+	@Test
+	void testListenerError() throws Exception {
+		int events = 20;
+		CountDownLatch delivered = new CountDownLatch(events);
+		terminal.addListener(new CommandListener() {
+
+			@Override
+			public void commandRequest(CommandEvent cmdEvt) {
+				delivered.countDown();
+				if (cmdEvt.commandInvocation.arguments.getInt(valueDescription) == 0) {
+					throw new AssertionError("error");
+				}
+			}
+
+			@Override
+			public void stopRequest(CommandEvent cmdEvt) {
+			}
+		});
+		CommandEventBus bus = terminal.enableEventBus(8, WaitStrategy.YIELD, OverflowPolicy.BLOCK);
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		// the reader survives the error, so the commands do not wait forever for a slot
+		for (int i = 0; i < events; i++) {
+			assertTrue(terminal.executeLine("send --value=" + i, context));
+		}
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		assertFalse(bus.isClosed());
+		terminal.disableEventBus();
+
+		assertTrue(bus.isClosed());
+		assertEquals(events, bus.getDeliveredCount());
+		assertEquals(1, bus.getFailureCount());
+		assertTrue(bus.getLastFailure() instanceof AssertionError);
+	}
+
+	@Test
+	void testCloseDrainsClaimedEvents() throws Exception {
+		AtomicInteger received = new AtomicInteger();
+		terminal.addListener(new CommandListener() {
+
+			@Override
+			public void commandRequest(CommandEvent cmdEvt) {
+				received.incrementAndGet();
+			}
+
+			@Override
+			public void stopRequest(CommandEvent cmdEvt) {
+			}
+		});
+		CommandInvocation invocation = new CommandInvocation(terminal.getRegistry().getCommand("send"));
+
+		// every event accepted while the bus is closing is delivered before close returns
+		for (int round = 0; round < 50; round++) {
+			received.set(0);
+			CommandEventBus bus = terminal.enableEventBus(8, WaitStrategy.YIELD, OverflowPolicy.BLOCK);
+			AtomicInteger accepted = new AtomicInteger();
+			Thread[] threads = new Thread[2];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread(() -> {
+					while (bus.publish(invocation, "data", false)) {
+						accepted.incrementAndGet();
+					}
+				});
+				threads[t].start();
+			}
+
+			Thread.sleep(1);
+			terminal.disableEventBus();
+			int delivered = received.get();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			assertEquals(accepted.get(), delivered);
+			assertEquals(accepted.get(), bus.getDeliveredCount());
+			assertEquals(accepted.get(), bus.getPublishedCount());
+		}
+	}
+
+	@Test
+	void testCloseFromListener() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		List<Integer> values = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch delivered = new CountDownLatch(4);
+		terminal.addListener(new CommandListener() {
+
+			@Override
+			public void commandRequest(CommandEvent cmdEvt) {
+				int value = cmdEvt.commandInvocation.arguments.getInt(valueDescription);
+				if (value == 0) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					// the reader does not wait for itself
+					terminal.disableEventBus();
+				}
+				values.add(value);
+				delivered.countDown();
+			}
+
+			@Override
+			public void stopRequest(CommandEvent cmdEvt) {
+			}
+		});
+		CommandEventBus bus = terminal.enableEventBus(8, WaitStrategy.BLOCK, OverflowPolicy.BLOCK);
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		for (int i = 0; i < 4; i++) {
+			assertTrue(terminal.executeLine("send --value=" + i, context));
+		}
+		release.countDown();
+
+		// the events published before the close are delivered after the listener returns
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		assertEquals(List.of(0, 1, 2, 3), values);
+		assertTrue(bus.isClosed());
+		assertEquals(0, bus.getDroppedCount());
+	}
+}
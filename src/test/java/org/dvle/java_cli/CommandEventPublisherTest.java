@@ -0,0 +1,215 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.dvle.java_cli.CommandEventBus.OverflowPolicy;
+import org.dvle.java_cli.CommandEventBus.WaitStrategy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the reactive view of the command events.
+ *
+ * @author federicosilvestri
+ *
+ */
+class CommandEventPublisherTest {
+
+	private Terminal terminal;
+
+	private ArgumentDescription valueDescription;
+
+	private LineContext context;
+
+	@BeforeEach
+	void setUp() {
+		terminal = new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()),
+				ExitCommandDescription.DEFAULT, new CommandRegistry(), false);
+		valueDescription = new ArgumentDescription("value", ArgumentValueType.INTEGER, true);
+		terminal.addCommand(new ParsedCommandDescription("send") {
+
+			{
+				addArgument(valueDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				exe.sendCommandToHandlers("data");
+			}
+
+		});
+		context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+	}
+
+	/**
+	 * A subscriber that records the values of the events and requests them on
+	 * demand.
+	 */
+	private final class ValueSubscriber implements Flow.Subscriber<CommandEvent> {
+
+		final List<Integer> values = Collections.synchronizedList(new ArrayList<>());
+
+		final CountDownLatch completed = new CountDownLatch(1);
+
+		volatile Flow.Subscription subscription;
+
+		private final long initialDemand;
+
+		private final boolean requestNext;
+
+		ValueSubscriber(long initialDemand, boolean requestNext) {
+			this.initialDemand = initialDemand;
+			this.requestNext = requestNext;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (initialDemand > 0) {
+				subscription.request(initialDemand);
+			}
+		}
+
+		@Override
+		public void onNext(CommandEvent item) {
+			assertEquals("data", item.data);
+			values.add(item.commandInvocation.arguments.getInt(valueDescription));
+			if (requestNext) {
+				subscription.request(1);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+	}
+
+	@Test
+	void testDemandAndCompletion() throws Exception {
+		CommandEventPublisher publisher = terminal.createEventPublisher(name -> name.equals("send"), 64,
+				OverflowPolicy.BLOCK);
+		ValueSubscriber subscriber = new ValueSubscriber(1, true);
+		publisher.subscribe(subscriber);
+
+		int lines = 200;
+		for (int i = 0; i < lines; i++) {
+			assertTrue(terminal.executeLine("send --value=" + i, context));
+		}
+
+		// the exit command completes the subscribers after the pending events
+		assertTrue(terminal.executeLine("exit", context));
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertTrue(publisher.isClosed());
+		assertEquals(0, publisher.getDroppedCount());
+
+		// the copies keep their own arguments
+		assertEquals(lines, subscriber.values.size());
+		for (int i = 0; i < lines; i++) {
+			assertEquals(Integer.valueOf(i), subscriber.values.get(i));
+		}
+	}
+
+	@Test
+	void testEndOfInput() throws Exception {
+		// the end of the input stops the terminal without the exit command
+		Terminal reader = new Terminal(new ByteArrayInputStream("send --value=1\n".getBytes()),
+				new PrintStream(new ByteArrayOutputStream()), ExitCommandDescription.DEFAULT, terminal.getRegistry(),
+				false);
+		CommandEventPublisher publisher = reader.createEventPublisher(name -> true, 64, OverflowPolicy.BLOCK);
+		ValueSubscriber subscriber = new ValueSubscriber(Long.MAX_VALUE, false);
+		publisher.subscribe(subscriber);
+		reader.run();
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertTrue(publisher.isClosed());
+		assertEquals(List.of(1), subscriber.values);
+
+		// and so does the end of a batch
+		publisher = terminal.createEventPublisher(name -> true, 64, OverflowPolicy.BLOCK);
+		subscriber = new ValueSubscriber(Long.MAX_VALUE, false);
+		publisher.subscribe(subscriber);
+		terminal.runBatch(new ByteArrayInputStream("send --value=2\nsend --value=3\n".getBytes()));
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertTrue(publisher.isClosed());
+		assertEquals(List.of(2, 3), subscriber.values);
+	}
+
+	@Test
+	void testSlowSubscriber() throws Exception {
+		CommandEventPublisher publisher = terminal.createEventPublisher(name -> true, 4, OverflowPolicy.DROP);
+		ValueSubscriber subscriber = new ValueSubscriber(2, false);
+		publisher.subscribe(subscriber);
+		assertEquals(1, publisher.getNumberOfSubscribers());
+
+		// the commands do not wait for a subscriber without demand
+		int lines = 20;
+		for (int i = 0; i < lines; i++) {
+			assertTrue(terminal.executeLine("send --value=" + i, context));
+		}
+		assertTrue(publisher.getDroppedCount() > 0);
+
+		// the subscriber receives no more than its demand
+		Thread.sleep(100);
+		assertEquals(2, subscriber.values.size());
+		assertEquals(Integer.valueOf(0), subscriber.values.get(0));
+
+		// the completion follows the buffered events
+		publisher.close();
+		assertFalse(subscriber.completed.await(100, TimeUnit.MILLISECONDS));
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertEquals(lines - publisher.getDroppedCount(), subscriber.values.size());
+
+		// the events are not published anymore
+		long dropped = publisher.getDroppedCount();
+		assertTrue(terminal.executeLine("send --value=100", context));
+		assertEquals(dropped, publisher.getDroppedCount());
+	}
+
+	@Test
+	void testStopRequest() throws Exception {
+		List<String> received = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch stopped = new CountDownLatch(1);
+		terminal.addListener(new CommandListener() {
+
+			@Override
+			public void commandRequest(CommandEvent cmdEvt) {
+				received.add("command:" + cmdEvt.commandInvocation.arguments.getInt(valueDescription));
+			}
+
+			@Override
+			public void stopRequest(CommandEvent cmdEvt) {
+				received.add("stop:" + cmdEvt.commandInvocation.command.name);
+				stopped.countDown();
+			}
+		});
+
+		// the stop request follows the events published on the bus
+		terminal.enableEventBus(8, WaitStrategy.BLOCK, OverflowPolicy.BLOCK);
+		assertTrue(terminal.executeLine("send --value=1", context));
+		assertTrue(terminal.executeLine("exit", context));
+		assertTrue(stopped.await(10, TimeUnit.SECONDS));
+		terminal.disableEventBus();
+		assertEquals(List.of("command:1", "stop:exit"), received);
+
+		received.clear();
+		assertTrue(terminal.executeLine("exit", context));
+		assertEquals(List.of("stop:exit"), received);
+	}
+}
@@ -0,0 +1,95 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+
+import org.dvle.java_cli.commands.CounterCommand;
+import org.dvle.java_cli.commands.HelloCommand;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the command factories and of the commands created for each
+ * execution.
+ *
+ * @author federicosilvestri
+ *
+ */
+class CommandFactoryTest {
+
+	/**
+	 * A command that fails when it is created.
+	 */
+	public static class FailingCommand extends ParsedCommandDescription {
+
+		public FailingCommand() {
+			super("failing");
+			throw new IllegalStateException("failing");
+		}
+
+		@Override
+		public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {
+		}
+	}
+
+	@Test
+	void testNewInstance() throws Exception {
+		CommandFactory factory = CommandFactory.of(HelloCommand.class);
+		int instances = HelloCommand.INSTANCES.get();
+
+		CommandDescription first = factory.newInstance();
+		CommandDescription second = factory.get();
+
+		assertTrue(first instanceof HelloCommand);
+		assertNotSame(first, second);
+		assertEquals(instances + 2, HelloCommand.INSTANCES.get());
+		assertEquals(HelloCommand.class, factory.getCommandClass());
+	}
+
+	@Test
+	void testInvalidClasses() throws Exception {
+		assertThrows(InstantiationException.class, () -> CommandFactory.of(CommandDescription.class));
+		assertThrows(NoSuchMethodException.class, () -> CommandFactory.of(ExitCommandDescription.class));
+
+		CommandFactory factory = CommandFactory.of(FailingCommand.class);
+		InvocationTargetException e = assertThrows(InvocationTargetException.class, () -> factory.newInstance());
+		assertTrue(e.getCause() instanceof IllegalStateException);
+	}
+
+	/**
+	 * The command annotated to be created for each execution never sees the
+	 * state of another execution.
+	 */
+	@Test
+	void testPerInvocationFromIndex() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		new CommandLoader(registry).loadFromPackage("org.dvle.java_cli.commands");
+
+		assertCreatedForEachExecution(registry);
+	}
+
+	@Test
+	void testPerInvocation() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		registry.addCommand(CommandFactory.perInvocation(CounterCommand::new));
+
+		assertCreatedForEachExecution(registry);
+	}
+
+	private static void assertCreatedForEachExecution(CommandRegistry registry) {
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]),
+				new PrintStream(new ByteArrayOutputStream()), ExitCommandDescription.DEFAULT, registry);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		LineContext context = new LineContext(new PrintStream(output));
+
+		assertTrue(terminal.executeLine("counter", context));
+		assertTrue(terminal.executeLine("counter", context));
+
+		assertTrue(registry.getCommand("counter").isThreadSafe());
+		assertTrue(output.toString().contains("Executions 1"));
+		assertFalse(output.toString().contains("Executions 2"));
+	}
+}
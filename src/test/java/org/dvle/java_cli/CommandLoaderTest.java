@@ -0,0 +1,243 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.dvle.java_cli.commands.ByeCommand;
+import org.dvle.java_cli.commands.HelloCommand;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the command loader and of the command index.
+ *
+ * @author federicosilvestri
+ *
+ */
+class CommandLoaderTest {
+
+	private static final String COMMANDS_PACKAGE = "org.dvle.java_cli.commands";
+
+	private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+	@AfterEach
+	void tearDown() {
+		Thread.currentThread().setContextClassLoader(contextClassLoader);
+	}
+
+	/**
+	 * The processor runs when the tests are compiled, so the index contains the
+	 * test commands.
+	 */
+	@Test
+	void testIndexIsWritten() throws IOException {
+		URL index = contextClassLoader.getResource(CommandIndexProcessor.INDEX_RESOURCE);
+		assertNotNull(index);
+
+		List<String> entries;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+			entries = reader.lines().collect(Collectors.toList());
+		}
+
+		assertTrue(entries.contains(COMMANDS_PACKAGE + ".HelloCommand\thello\tname:STRING:optional"));
+		assertTrue(entries.contains(COMMANDS_PACKAGE + ".ByeCommand"));
+		// anonymous and non public classes are not commands that can be loaded
+		assertFalse(entries.stream().anyMatch(entry -> entry.startsWith("org.dvle.java_cli.TerminalTest")));
+	}
+
+	@Test
+	void testLoadFromIndex() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		CommandLoader loader = new CommandLoader(registry);
+
+		loader.loadFromPackage(COMMANDS_PACKAGE);
+
+		assertNotNull(registry.getCommand("hello"));
+		assertNotNull(registry.getCommand("bye"));
+		assertEquals(Arrays.asList(ByeCommand.class.getName()), loader.getLoadedClasses());
+	}
+
+	/**
+	 * The annotated command is loaded at its first execution, then it is reused.
+	 */
+	@Test
+	void testLazyCommand() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		CommandLoader loader = new CommandLoader(registry);
+		loader.loadFromPackage(COMMANDS_PACKAGE);
+
+		CommandDescription hello = registry.getCommand("hello");
+		assertFalse(hello instanceof HelloCommand);
+		assertFalse(loader.getLoadedClasses().contains(HelloCommand.class.getName()));
+
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]),
+				new PrintStream(new ByteArrayOutputStream()), ExitCommandDescription.DEFAULT, registry);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		LineContext context = new LineContext(new PrintStream(output));
+		int instances = HelloCommand.INSTANCES.get();
+
+		assertTrue(terminal.executeLine("hello --name=lazy", context));
+		assertTrue(terminal.executeLine("hello", context));
+
+		assertEquals(instances + 1, HelloCommand.INSTANCES.get());
+		assertTrue(loader.getLoadedClasses().contains(HelloCommand.class.getName()));
+		assertTrue(output.toString().contains("Hello lazy"));
+		assertTrue(output.toString().contains("Hello world"));
+	}
+
+	/**
+	 * A command that does not match its description is not executed.
+	 */
+	@Test
+	void testLazyCommandMismatch() {
+		CommandLoader loader = new CommandLoader(new CommandRegistry());
+		LazyCommandDescription hello = new LazyCommandDescription(loader, HelloCommand.class.getName(), "hello",
+				Arrays.asList(new ArgumentDescription("name", ArgumentValueType.INTEGER, false)), false);
+
+		assertThrows(CommandExecutionException.class, () -> hello.resolve());
+		assertFalse(hello.isResolved());
+	}
+
+	/**
+	 * Without the index, the package is scanned.
+	 */
+	@Test
+	void testLoadWithoutIndex() throws Exception {
+		Thread.currentThread()
+				.setContextClassLoader(new HidingClassLoader(contextClassLoader, CommandIndexProcessor.INDEX_RESOURCE));
+		CommandRegistry registry = new CommandRegistry();
+		CommandLoader loader = new CommandLoader(registry);
+
+		loader.loadFromPackage(COMMANDS_PACKAGE);
+
+		assertTrue(registry.getCommand("hello") instanceof HelloCommand);
+		assertNotNull(registry.getCommand("bye"));
+		assertEquals(3, loader.getLoadedClasses().size());
+	}
+
+	/**
+	 * The classes found in a jar are cached until the jar changes.
+	 */
+	@Test
+	void testJarScanCache() throws Exception {
+		Path directory = Files.createTempDirectory("java-cli");
+		try {
+			loadFromCachedJar(directory);
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	private void loadFromCachedJar(Path directory) throws Exception {
+		Path jar = directory.resolve("commands.jar");
+		Path classes = Paths.get(HelloCommand.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		String slashedPackage = COMMANDS_PACKAGE.replace('.', '/');
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+				DirectoryStream<Path> files = Files.newDirectoryStream(classes.resolve(slashedPackage))) {
+			// the entries of the directories, as written by the jar tool
+			for (int slash = slashedPackage.indexOf('/'); slash >= 0; slash = slashedPackage.indexOf('/', slash + 1)) {
+				out.putNextEntry(new JarEntry(slashedPackage.substring(0, slash + 1)));
+			}
+			out.putNextEntry(new JarEntry(slashedPackage + "/"));
+			for (Path file : files) {
+				out.putNextEntry(new JarEntry(slashedPackage + "/" + file.getFileName()));
+				out.write(Files.readAllBytes(file));
+				out.closeEntry();
+			}
+		}
+
+		// the package is found only in the jar
+		ClassLoader parent = new HidingClassLoader(contextClassLoader, CommandIndexProcessor.INDEX_RESOURCE,
+				slashedPackage);
+		Path cache = directory.resolve("cache");
+		try (URLClassLoader jarClassLoader = new URLClassLoader(new URL[] { jar.toUri().toURL() }, parent)) {
+			Thread.currentThread().setContextClassLoader(jarClassLoader);
+
+			CommandRegistry registry = new CommandRegistry();
+			CommandLoader loader = new CommandLoader(registry);
+			loader.setScanCache(cache.toFile());
+			loader.loadFromPackages(COMMANDS_PACKAGE);
+			assertNotNull(registry.getCommand("hello"));
+			assertNotNull(registry.getCommand("bye"));
+
+			List<Path> cacheFiles;
+			try (Stream<Path> stream = Files.list(cache)) {
+				cacheFiles = stream.collect(Collectors.toList());
+			}
+			assertEquals(1, cacheFiles.size());
+
+			// the cache is used instead of the jar
+			List<String> lines = Files.readAllLines(cacheFiles.get(0));
+			lines.remove(ByeCommand.class.getName());
+			Files.write(cacheFiles.get(0), lines);
+
+			registry = new CommandRegistry();
+			loader = new CommandLoader(registry);
+			loader.setScanCache(cache.toFile());
+			loader.loadFromPackage(COMMANDS_PACKAGE);
+			assertNotNull(registry.getCommand("hello"));
+			assertNull(registry.getCommand("bye"));
+
+			// the jar changed
+			Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() - 60_000));
+
+			registry = new CommandRegistry();
+			loader = new CommandLoader(registry);
+			loader.setScanCache(cache.toFile());
+			loader.loadFromPackage(COMMANDS_PACKAGE);
+			assertNotNull(registry.getCommand("bye"));
+		}
+	}
+
+	/**
+	 * A class loader that hides some resources of its parent.
+	 */
+	private static final class HidingClassLoader extends ClassLoader {
+
+		private final List<String> hidden;
+
+		HidingClassLoader(ClassLoader parent, String... hidden) {
+			super(parent);
+			this.hidden = Arrays.asList(hidden);
+		}
+
+		@Override
+		public URL getResource(String name) {
+			return hidden.contains(name) ? null : super.getResource(name);
+		}
+
+		@Override
+		public Enumeration<URL> getResources(String name) throws IOException {
+			return hidden.contains(name) ? Collections.emptyEnumeration() : super.getResources(name);
+		}
+	}
+}
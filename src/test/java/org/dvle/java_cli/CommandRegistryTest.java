@@ -0,0 +1,170 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the shared command registry.
+ *
+ * @author federicosilvestri
+ *
+ */
+class CommandRegistryTest {
+
+	/**
+	 * A command that counts its executions.
+	 */
+	private static final class CountingCommand extends ParsedCommandDescription {
+
+		final AtomicLong executions = new AtomicLong();
+
+		CountingCommand(String name) {
+			super(name);
+		}
+
+		@Override
+		public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) throws CommandExecutionException {
+			executions.incrementAndGet();
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	}
+
+	private static Terminal newTerminal(CommandRegistry registry) {
+		return new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()),
+				ExitCommandDescription.DEFAULT, registry);
+	}
+
+	@Test
+	void testAddAndRemove() {
+		CommandRegistry registry = new CommandRegistry();
+		CountingCommand ls = new CountingCommand("ls");
+		CountingCommand cp = new CountingCommand("cp");
+
+		registry.addCommand(ls);
+		registry.addCommand(cp);
+		assertThrows(RuntimeException.class, () -> registry.addCommand(new CountingCommand("ls")));
+		assertEquals(2, registry.size());
+		assertSame(cp, registry.getCommand("cp"));
+		assertEquals(Arrays.asList(ls, cp), registry.getCommands());
+
+		assertSame(ls, registry.addCommandIfAbsent(new CountingCommand("ls")));
+		assertSame(ls, registry.removeCommand("ls"));
+		assertNull(registry.removeCommand("ls"));
+		assertNull(registry.getCommand("ls"));
+		assertNull(registry.addCommandIfAbsent(ls));
+		assertSame(ls, registry.getCommand("ls"));
+	}
+
+	@Test
+	void testAddCommandsIsAtomic() {
+		CommandRegistry registry = new CommandRegistry();
+		registry.addCommand(new CountingCommand("ls"));
+
+		assertThrows(RuntimeException.class,
+				() -> registry.addCommands(Arrays.asList(new CountingCommand("cp"), new CountingCommand("ls"))));
+		assertEquals(1, registry.size());
+		assertNull(registry.getCommand("cp"));
+	}
+
+	@Test
+	void testReplaceCommands() {
+		CommandRegistry registry = new CommandRegistry();
+		CountingCommand ls = new CountingCommand("ls");
+		CountingCommand cp = new CountingCommand("cp");
+		registry.addCommands(Arrays.asList(ls, cp));
+
+		CountingCommand newLs = new CountingCommand("ls");
+		CountingCommand mv = new CountingCommand("mv");
+		assertEquals(Arrays.asList(ls), registry.replaceCommands(Arrays.asList(newLs, mv)));
+		assertEquals(Arrays.asList(newLs, cp, mv), registry.getCommands());
+
+		assertThrows(RuntimeException.class,
+				() -> registry.replaceCommands(Arrays.asList(new CountingCommand("rm"), new CountingCommand("rm"))));
+		assertEquals(3, registry.size());
+	}
+
+	@Test
+	void testFreeze() {
+		CommandRegistry registry = new CommandRegistry();
+		CountingCommand ls = new CountingCommand("ls");
+		registry.addCommand(ls);
+		registry.freeze();
+
+		assertTrue(registry.isFrozen());
+		assertSame(ls, registry.getCommand("ls"));
+		assertThrows(IllegalStateException.class, () -> registry.addCommand(new CountingCommand("cp")));
+		assertThrows(IllegalStateException.class, () -> registry.removeCommand("ls"));
+		assertThrows(IllegalStateException.class, () -> registry.replaceCommands(Arrays.asList(ls)));
+		assertSame(ls, registry.addCommandIfAbsent(new CountingCommand("ls")));
+	}
+
+	/**
+	 * Many terminals execute the commands of the same registry while commands are
+	 * added and removed.
+	 */
+	@Test
+	void testSharedByConcurrentTerminals() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		CountingCommand ls = new CountingCommand("ls");
+		registry.addCommand(ls);
+
+		int sessions = 4;
+		int lines = 20_000;
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < sessions; i++) {
+			Terminal terminal = newTerminal(registry);
+			threads.add(new Thread(() -> {
+				LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+				for (int j = 0; j < lines; j++) {
+					assertTrue(terminal.executeLine("ls", context));
+					terminal.executeLine("tmp", context);
+				}
+			}));
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (int i = 0; i < 1_000; i++) {
+			registry.addCommand(new CountingCommand("tmp"));
+			registry.removeCommand("tmp");
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals((long) sessions * lines, ls.executions.get());
+		assertEquals(1, registry.size());
+	}
+
+	@Test
+	void testSharedJobControl() {
+		CommandRegistry registry = new CommandRegistry();
+		Terminal first = newTerminal(registry);
+		Terminal second = newTerminal(registry);
+		Terminal third = newTerminal(registry);
+
+		first.enableJobControl(1);
+		second.enableJobControl(1);
+		assertEquals(3, registry.size());
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		LineContext context = new LineContext(new PrintStream(output));
+		assertTrue(second.executeLine("jobs", context));
+		assertFalse(third.executeLine("jobs", context));
+		assertTrue(output.toString().contains("Job control is not enabled"));
+	}
+}
@@ -0,0 +1,83 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.dvle.java_cli.CommandResourceUsage.Usage;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the accounting of CPU time and memory of the commands.
+ *
+ * @author federicosilvestri
+ *
+ */
+class CommandResourceUsageTest {
+
+	private static final int BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * The blocks allocated by the test command, kept to avoid the elimination of
+	 * the allocation.
+	 */
+	private static volatile byte[] block;
+
+	@Test
+	void testResourceUsage() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(output),
+				ExitCommandDescription.DEFAULT, new CommandRegistry(), false);
+		terminal.addCommand(new ParsedCommandDescription("allocate") {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				block = new byte[BLOCK_SIZE];
+			}
+
+		});
+		terminal.addCommand(new ParsedCommandDescription("nothing") {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				// nothing
+			}
+
+		});
+
+		CommandResourceUsage resourceUsage = new CommandResourceUsage();
+		terminal.enableResourceUsage(resourceUsage, true);
+		LineContext context = new LineContext(new PrintStream(output));
+		for (int i = 0; i < 5; i++) {
+			assertTrue(terminal.executeLine("allocate", context));
+			assertTrue(terminal.executeLine("nothing", context));
+		}
+
+		Usage allocate = resourceUsage.getUsage("allocate");
+		Usage nothing = resourceUsage.getUsage("nothing");
+		assertEquals(5, allocate.getInvocations());
+		assertEquals(5, nothing.getInvocations());
+		assertTrue(allocate.getAllocatedBytes() >= 5L * BLOCK_SIZE);
+		assertTrue(nothing.getAllocatedBytes() < BLOCK_SIZE);
+		assertTrue(allocate.getCpuNanos() >= 0);
+		assertNull(resourceUsage.getUsage("unknown"));
+
+		// the commands that allocate more are printed first
+		output.reset();
+		assertTrue(terminal.executeLine("usage --reset", context));
+		String report = output.toString();
+		assertTrue(report.indexOf("allocate") < report.indexOf("nothing"), report);
+		assertTrue(report.contains("5120 KiB"), report);
+		// the usage command is measured after the reset
+		assertEquals("[usage]", resourceUsage.getCommandNames().toString());
+
+		terminal.disableResourceUsage();
+		assertTrue(terminal.executeLine("allocate", context));
+		assertNull(resourceUsage.getUsage("allocate"));
+		assertFalse(terminal.executeLine("usage", context));
+	}
+}
@@ -0,0 +1,98 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.dvle.java_cli.CommandStatistics.Stage;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the latency histograms and of the statistics of the commands.
+ *
+ * @author federicosilvestri
+ *
+ */
+class CommandStatisticsTest {
+
+	@Test
+	void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+
+		for (long value = 1; value <= 10_000; value++) {
+			histogram.record(value * 1_000);
+		}
+
+		assertEquals(10_000, histogram.getCount());
+		assertEquals(10_000_000, histogram.getMax());
+		assertEquals(5_000_000, histogram.getValueAtPercentile(50), 5_000_000 / 32.0);
+		assertEquals(9_900_000, histogram.getValueAtPercentile(99), 9_900_000 / 32.0);
+		assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+		assertTrue(histogram.getValueAtPercentile(50) >= 5_000_000);
+
+		// small values are exact, out of range values are clamped
+		histogram.reset();
+		histogram.record(-5);
+		histogram.record(7);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(0, histogram.getValueAtPercentile(0));
+		assertEquals(7, histogram.getValueAtPercentile(50));
+		assertEquals(3, histogram.getCount());
+		assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+	}
+
+	@Test
+	void testStatistics() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(output),
+				ExitCommandDescription.DEFAULT, new CommandRegistry(), false);
+		ArgumentDescription sizeDescription = new ArgumentDescription("size", ArgumentValueType.INTEGER, true);
+		terminal.addCommand(new ParsedCommandDescription("work") {
+
+			{
+				addArgument(sizeDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				exe.sendCommandToHandlers(arguments.getInt(sizeDescription));
+			}
+
+		});
+
+		LineContext context = new LineContext(new PrintStream(output));
+		assertTrue(terminal.executeLine("work --size=1", context));
+		assertNull(terminal.getStatistics());
+
+		CommandStatistics statistics = new CommandStatistics();
+		terminal.enableStatistics(statistics, true);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(terminal.executeLine("work --size=" + i, context));
+		}
+		assertFalse(terminal.executeLine("work", context));
+
+		assertEquals(1, statistics.getCommandNames().size());
+		for (Stage stage : Stage.values()) {
+			assertEquals(10, statistics.getHistogram("work", stage).getCount(), stage.name());
+		}
+		assertNull(statistics.getHistogram("unknown", Stage.RUN));
+
+		output.reset();
+		assertTrue(terminal.executeLine("stats --command=work --reset", context));
+		String report = output.toString();
+		assertTrue(report.contains("p99"));
+		assertTrue(report.matches("(?s).*work +propagate +10 .*"), report);
+		assertNull(statistics.getHistogram("work", Stage.RUN));
+
+		terminal.disableStatistics();
+		assertTrue(terminal.executeLine("work --size=1", context));
+		assertFalse(statistics.getCommandNames().contains("work"));
+		assertFalse(terminal.executeLine("stats", context));
+	}
+}
@@ -0,0 +1,149 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the reload of the commands whose classes change.
+ *
+ * @author federicosilvestri
+ *
+ */
+class CommandWatcherTest {
+
+	private static final String PACKAGE = "reloaded";
+
+	private static final long TIMEOUT = 10_000;
+
+	private Path directory;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		directory = Files.createTempDirectory("java-cli");
+		Files.createDirectories(directory.resolve(PACKAGE));
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Compile a version of the command in the watched directory.
+	 */
+	private void compile(String version) throws Exception {
+		Path source = directory.resolve("ReloadCommand.java");
+		Files.write(source, ("package " + PACKAGE + ";\n" + "import org.dvle.java_cli.*;\n"
+				+ "public class ReloadCommand extends ParsedCommandDescription {\n"
+				+ "	public ReloadCommand() { super(\"reload\"); }\n" + "	@Override\n"
+				+ "	public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {\n"
+				+ "		exe.out.println(\"" + version + "\");\n" + "	}\n" + "}\n").getBytes(StandardCharsets.UTF_8));
+
+		String classPath = Paths.get(CommandDescription.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+				.toString();
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertEquals(0, compiler.run(null, null, null, "-cp", classPath, "-d", directory.toString(), source.toString()));
+	}
+
+	private static void awaitReloads(CommandWatcher watcher, int reloads) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (watcher.getReloadCount() < reloads && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(reloads, watcher.getReloadCount(), String.valueOf(watcher.getLastFailure()));
+	}
+
+	@Test
+	void testReload() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		CommandLoader loader = new CommandLoader(registry);
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]),
+				new PrintStream(new ByteArrayOutputStream()), ExitCommandDescription.DEFAULT, registry);
+
+		try (CommandWatcher watcher = loader.watch(directory.toFile(), PACKAGE)) {
+			compile("first version");
+			awaitReloads(watcher, 1);
+			CommandDescription first = registry.getCommand("reload");
+			assertNotNull(first);
+
+			compile("second version");
+			awaitReloads(watcher, 2);
+			CommandDescription second = registry.getCommand("reload");
+			assertNotSame(first, second);
+			assertNotSame(first.getClass(), second.getClass());
+			assertEquals(1, registry.size());
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			LineContext context = new LineContext(new PrintStream(output));
+			assertTrue(terminal.executeLine("reload", context));
+			assertEquals("second version", output.toString().trim());
+
+			// the old version can still finish its invocations
+			output.reset();
+			CommandInvocation invocation = new CommandInvocation(first);
+			terminal.runInvocation(invocation, new ExecutionEnvironment(terminal, invocation, new PrintStream(output),
+					new ByteArrayInputStream(new byte[0])));
+			assertEquals("first version", output.toString().trim());
+		}
+	}
+
+	@Test
+	void testReplacedLoaderIsCollected() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		CommandLoader loader = new CommandLoader(registry);
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]),
+				new PrintStream(new ByteArrayOutputStream()), ExitCommandDescription.DEFAULT, registry);
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		try (CommandWatcher watcher = loader.watch(directory.toFile(), PACKAGE)) {
+			compile("first version");
+			awaitReloads(watcher, 1);
+			assertTrue(terminal.executeLine("reload", context));
+			WeakReference<ClassLoader> firstLoader = new WeakReference<>(
+					registry.getCommand("reload").getClass().getClassLoader());
+
+			compile("second version");
+			awaitReloads(watcher, 2);
+			assertTrue(terminal.executeLine("reload", context));
+
+			// the context does not keep the invocation of the old command
+			for (int i = 0; i < 50 && firstLoader.get() != null; i++) {
+				System.gc();
+				Thread.sleep(20);
+			}
+			assertNull(firstLoader.get());
+		}
+	}
+
+	@Test
+	void testFrozenRegistry() {
+		CommandRegistry registry = new CommandRegistry();
+		registry.freeze();
+
+		assertThrows(IllegalStateException.class, () -> new CommandLoader(registry).watch(directory.toFile(), PACKAGE));
+	}
+}
@@ -0,0 +1,101 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Test of the Flight Recorder events of the terminal.
+ *
+ * @author federicosilvestri
+ *
+ */
+class FlightRecorderEventsTest {
+
+	private static final String[] EVENTS = { "org.dvle.java_cli.DetectCommand", "org.dvle.java_cli.ParseArguments",
+			"org.dvle.java_cli.RunCommand", "org.dvle.java_cli.PropagateCommand" };
+
+	@Test
+	void testEvents() throws Exception {
+		Configuration configuration;
+		try (Reader reader = new InputStreamReader(FlightRecorderEvents.class.getResourceAsStream("java-cli.jfc"),
+				StandardCharsets.UTF_8)) {
+			configuration = Configuration.create(reader);
+		}
+		assertEquals("true", configuration.getSettings().get("org.dvle.java_cli.RunCommand#enabled"));
+
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]),
+				new PrintStream(new ByteArrayOutputStream()), ExitCommandDescription.DEFAULT, new CommandRegistry(),
+				false);
+		ArgumentDescription sizeDescription = new ArgumentDescription("size", ArgumentValueType.INTEGER, true);
+		terminal.addCommand(new ParsedCommandDescription("work") {
+
+			{
+				addArgument(sizeDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				exe.sendCommandToHandlers(null);
+			}
+
+		});
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		// nothing is recorded before the recording starts
+		assertTrue(terminal.executeLine("work --size=1", context));
+
+		Path file = Files.createTempFile("java-cli", ".jfr");
+		try {
+			try (Recording recording = new Recording(configuration)) {
+				for (String event : EVENTS) {
+					recording.enable(event).withoutThreshold();
+				}
+				recording.start();
+
+				assertTrue(terminal.executeLine("work --size=2", context));
+				assertFalse(terminal.executeLine("work --size=x", context));
+				assertFalse(terminal.executeLine("unknown", context));
+
+				recording.stop();
+				recording.dump(file);
+			}
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+					.filter(e -> e.getEventType().getName().startsWith("org.dvle.java_cli."))
+					.collect(Collectors.toList());
+			List<String> names = events.stream()
+					.map(e -> e.getEventType().getName().substring("org.dvle.java_cli.".length()) + " "
+							+ e.getString("command") + " " + e.getString("outcome"))
+					.collect(Collectors.toList());
+
+			assertTrue(names.contains("DetectCommand work ok"), names.toString());
+			assertTrue(names.contains("ParseArguments work ok"), names.toString());
+			assertTrue(names.contains("ParseArguments work ArgumentParseException"), names.toString());
+			assertTrue(names.contains("RunCommand work ok"), names.toString());
+			assertTrue(names.contains("PropagateCommand work ok"), names.toString());
+			assertTrue(names.contains("DetectCommand null not found"), names.toString());
+			assertEquals(7, events.size(), names.toString());
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the single-pass line lexer. The expected results are the ones given
+ * by the regular expressions used before the lexer was written.
+ *
+ * @author federicosilvestri
+ *
+ */
+class LineTokenizerTest {
+
+	private LineTokenizer tokenizer;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		tokenizer = new LineTokenizer();
+	}
+
+	@Test
+	void testCommandOnly() throws CommandSyntaxError {
+		assertTrue(tokenizer.tokenize("  ls  "));
+		assertEquals("ls", tokenizer.commandName());
+		assertTrue(tokenizer.isCommandOnly());
+		assertEquals(0, tokenizer.argumentCount());
+	}
+
+	@Test
+	void testBlankLine() throws CommandSyntaxError {
+		assertFalse(tokenizer.tokenize(" \t "));
+	}
+
+	@Test
+	void testArguments() throws CommandSyntaxError {
+		assertTrue(tokenizer.tokenize("get --verbose --file=foo bar.txt\t--n=1"));
+		assertEquals("get", tokenizer.commandName());
+		assertFalse(tokenizer.isCommandOnly());
+		assertEquals(3, tokenizer.argumentCount());
+
+		assertEquals("verbose", tokenizer.argumentName(0));
+		assertFalse(tokenizer.hasValue(0));
+		assertNull(tokenizer.argumentValue(0));
+
+		assertEquals("file", tokenizer.argumentName(1));
+		assertEquals("foo bar.txt", tokenizer.argumentValue(1));
+
+		assertEquals("n", tokenizer.argumentName(2));
+		assertEquals("1", tokenizer.argumentValue(2));
+	}
+
+	@Test
+	void testArgumentWithoutDashes() throws CommandSyntaxError {
+		assertTrue(tokenizer.tokenize("get foo"));
+		assertEquals(1, tokenizer.argumentCount());
+		assertEquals(" foo", tokenizer.argumentName(0));
+	}
+
+	@Test
+	void testDashesInsideValue() throws CommandSyntaxError {
+		assertTrue(tokenizer.tokenize("get --a=b--c"));
+		assertEquals(1, tokenizer.argumentCount());
+		assertEquals("b--c", tokenizer.argumentValue(0));
+	}
+
+	@Test
+	void testReuse() throws CommandSyntaxError {
+		tokenizer.tokenize("a --1 --2 --3 --4 --5 --6 --7 --8 --9 --10");
+		assertEquals(10, tokenizer.argumentCount());
+		assertEquals("10", tokenizer.argumentName(9));
+
+		tokenizer.tokenize("b --x=y");
+		assertEquals("b", tokenizer.commandName());
+		assertEquals(1, tokenizer.argumentCount());
+	}
+
+	@Test
+	void testRegion() throws CommandSyntaxError {
+		assertTrue(tokenizer.tokenize("xx get --a=b &", 3, 13));
+		assertEquals("get", tokenizer.commandName());
+		assertEquals("b", tokenizer.argumentValue(0));
+	}
+
+	@Test
+	void testSyntaxErrors() {
+		assertThrows(CommandSyntaxError.class, () -> tokenizer.tokenize("get --a=b=c"));
+		assertThrows(CommandSyntaxError.class, () -> tokenizer.tokenize("get --a="));
+		assertThrows(CommandSyntaxError.class, () -> tokenizer.tokenize("get --=b"));
+		assertThrows(CommandSyntaxError.class, () -> tokenizer.tokenize("get --a:b"));
+		assertThrows(CommandSyntaxError.class, () -> tokenizer.tokenize("get --a,b"));
+		assertThrows(CommandSyntaxError.class, () -> tokenizer.tokenize("get --a=b;"));
+	}
+}
@@ -0,0 +1,144 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the memory-mapped line source.
+ *
+ * @author federicosilvestri
+ *
+ */
+class MappedLineSourceTest {
+
+	private Path file;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		file = Files.createTempFile("java-cli", ".txt");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	void testLinesAcrossWindows() throws IOException {
+		Files.write(file, "first line\r\nsecond --name=café\n\nlast line".getBytes(StandardCharsets.UTF_8));
+
+		try (MappedLineSource source = new MappedLineSource(file, 24)) {
+			assertEquals("first line", source.nextLine().toString());
+			assertEquals("second --name=café", source.nextLine().toString());
+			assertEquals("", source.nextLine().toString());
+			assertEquals("last line", source.nextLine().toString());
+			assertNull(source.nextLine());
+		}
+	}
+
+	@Test
+	void testFinalCarriageReturn() throws IOException {
+		Files.write(file, "first\r\nlast\r".getBytes(StandardCharsets.UTF_8));
+
+		try (MappedLineSource source = new MappedLineSource(file, 8)) {
+			assertEquals("first", source.nextLine().toString());
+			assertEquals("last", source.nextLine().toString());
+			assertNull(source.nextLine());
+		}
+	}
+
+	@Test
+	void testManyWindows() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 10_000; i++) {
+			content.append("line ").append(i).append('\n');
+		}
+		Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+
+		try (MappedLineSource source = new MappedLineSource(file, 16)) {
+			for (int i = 0; i < 10_000; i++) {
+				assertEquals("line " + i, source.nextLine().toString());
+			}
+			assertNull(source.nextLine());
+		}
+	}
+
+	@Test
+	void testViewAfterClose() throws IOException {
+		Files.write(file, "first --name=one\nsecond --name=two\n".getBytes(StandardCharsets.UTF_8));
+
+		// a view kept after the next window is mapped and after the close is still valid
+		CharSequence value;
+		try (MappedLineSource source = new MappedLineSource(file, 18)) {
+			CharSequence first = source.nextLine();
+			value = first.subSequence(13, 16);
+			assertEquals("second --name=two", source.nextLine().toString());
+			assertNull(source.nextLine());
+		}
+		assertEquals("one", value.toString());
+	}
+
+	@Test
+	void testEmptyFile() throws IOException {
+		try (MappedLineSource source = new MappedLineSource(file)) {
+			assertNull(source.nextLine());
+		}
+	}
+
+	@Test
+	void testLineLongerThanWindow() throws IOException {
+		Files.write(file, "a very long line\n".getBytes(StandardCharsets.UTF_8));
+
+		try (MappedLineSource source = new MappedLineSource(file, 4)) {
+			assertThrows(IOException.class, () -> source.nextLine());
+		}
+	}
+
+	@Test
+	void testNonAsciiExitName() throws IOException {
+		Files.write(file, "send\nfiné\nsend\n".getBytes(StandardCharsets.UTF_8));
+
+		// the exit name is compared with the decoded line, not with its bytes
+		Terminal terminal = new Terminal(new ByteArrayInputStream(new byte[0]),
+				new PrintStream(new ByteArrayOutputStream()), new ExitCommandDescription("finé"),
+				new CommandRegistry(), false);
+		AtomicInteger sent = new AtomicInteger();
+		terminal.addCommand(new ParsedCommandDescription("send") {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {
+				sent.incrementAndGet();
+			}
+
+		});
+
+		terminal.runMappedScript(file);
+		assertEquals(1, sent.get());
+		assertTrue(terminal.isStopped());
+	}
+
+	@Test
+	void testTokenizeMappedLine() throws IOException, CommandSyntaxError {
+		Files.write(file, "get --name=café --verbose\n".getBytes(StandardCharsets.UTF_8));
+
+		try (MappedLineSource source = new MappedLineSource(file)) {
+			LineTokenizer tokenizer = new LineTokenizer();
+			assertTrue(tokenizer.tokenize(source.nextLine()));
+			assertEquals("get", tokenizer.commandName());
+			assertEquals("café", tokenizer.argumentValue(0));
+			assertEquals("verbose", tokenizer.argumentName(1));
+		}
+	}
+}
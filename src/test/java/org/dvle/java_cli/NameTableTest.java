@@ -0,0 +1,77 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the perfect hash table of names.
+ *
+ * @author federicosilvestri
+ *
+ */
+class NameTableTest {
+
+	@Test
+	void testManyNames() {
+		List<String> names = new ArrayList<>();
+		List<Integer> values = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			names.add("command" + i);
+			values.add(i);
+		}
+
+		NameTable<Integer> table = new NameTable<>(names, values);
+
+		assertEquals(10_000, table.size());
+		for (int i = 0; i < names.size(); i++) {
+			assertEquals(i, table.indexOf(names.get(i)));
+			assertEquals(Integer.valueOf(i), table.valueAt(i));
+		}
+		assertEquals(-1, table.indexOf("command10000"));
+		assertEquals(-1, table.indexOf("command"));
+		assertEquals(-1, table.indexOf(""));
+	}
+
+	@Test
+	void testRegion() {
+		NameTable<String> table = new NameTable<>(Arrays.asList("ls", "cp", "Aa", "BB"),
+				Arrays.asList("list", "copy", "first", "second"));
+		StringBuilder line = new StringBuilder("cp --from=ls --to=BB");
+
+		assertEquals("copy", table.get(line, 0, 2));
+		assertEquals("list", table.get(line, 10, 12));
+		assertEquals("second", table.get(line, 18, 20));
+		assertNull(table.get(line, 3, 5));
+		// same String hash code of "BB"
+		assertEquals(2, table.indexOf("Aa"));
+	}
+
+	@Test
+	void testNonAsciiNames() {
+		NameTable<String> table = new NameTable<>(Arrays.asList("café", "cafe"), Arrays.asList("1", "2"));
+
+		assertEquals(0, table.indexOf("café"));
+		assertEquals("1", table.get(new StringBuilder("x café"), 2, 6));
+		assertEquals(1, table.indexOf("cafe"));
+	}
+
+	@Test
+	void testEmptyTable() {
+		NameTable<String> table = new NameTable<>(Collections.emptyList(), Collections.emptyList());
+
+		assertEquals(0, table.size());
+		assertEquals(-1, table.indexOf("ls"));
+	}
+
+	@Test
+	void testDuplicatedNames() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new NameTable<>(Arrays.asList("ls", "ls"), Arrays.asList("1", "2")));
+	}
+}
@@ -0,0 +1,100 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.fusesource.jansi.Ansi;
+import org.fusesource.jansi.Ansi.Color;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the buffered output of the interactive terminal.
+ *
+ * @author federicosilvestri
+ *
+ */
+class TerminalOutputStreamTest {
+
+	private static final String COLORED = Ansi.ansi().fg(Color.RED).a("error").reset().a(" and ")
+			.bold().a("bold").boldOff().toString() + "\u001b]0;title\u0007 text\u001b]2;other\u001b\\.\u001b7\n";
+
+	@Test
+	void testStrip() throws IOException {
+		byte[] bytes = COLORED.getBytes(StandardCharsets.UTF_8);
+
+		// the escape sequences can be split between writes
+		for (int split = 0; split <= bytes.length; split++) {
+			ByteArrayOutputStream sink = new ByteArrayOutputStream();
+			TerminalOutputStream out = new TerminalOutputStream(sink, true, 16);
+			out.write(bytes, 0, split);
+			for (int i = split; i < bytes.length; i++) {
+				out.write(bytes[i]);
+			}
+			out.flush();
+
+			assertEquals("error and bold text.\n", sink.toString("UTF-8"));
+		}
+	}
+
+	@Test
+	void testConsoleDetection() throws IOException {
+		// only the standard streams can be a console
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		PrintStream stream = new PrintStream(sink, false, "UTF-8");
+		assertFalse(TerminalOutputStream.isConsole(stream));
+
+		PrintStream out = TerminalOutputStream.wrap(stream);
+		out.print(COLORED);
+		out.flush();
+		assertEquals("error and bold text.\n", sink.toString("UTF-8"));
+
+		// each standard stream is checked, with or without the native library
+		TerminalOutputStream.isConsole(System.out);
+		TerminalOutputStream.isConsole(System.err);
+	}
+
+	@Test
+	void testPassThrough() throws IOException {
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(new TerminalOutputStream(sink, false, 1024), false, "UTF-8");
+
+		out.print(COLORED);
+		out.flush();
+		assertEquals(COLORED, sink.toString("UTF-8"));
+	}
+
+	@Test
+	void testBuffering() throws IOException {
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(new TerminalOutputStream(sink, true, 64), false, "UTF-8");
+
+		// the lines are written when the buffer is full or flushed
+		out.println("first line");
+		out.println("second line");
+		assertEquals(0, sink.size());
+
+		for (int i = 0; i < 10; i++) {
+			out.println(Ansi.ansi().fg(Color.GREEN).a("row " + i).reset());
+		}
+		assertTrue(sink.size() > 0 && sink.size() <= 64 * 2);
+
+		out.flush();
+		StringBuilder expected = new StringBuilder("first line\nsecond line\n");
+		for (int i = 0; i < 10; i++) {
+			expected.append("row ").append(i).append('\n');
+		}
+		assertEquals(expected.toString(), sink.toString("UTF-8").replace(System.lineSeparator(), "\n"));
+
+		// a write larger than the buffer is not copied
+		byte[] large = new byte[200];
+		Arrays.fill(large, (byte) 'x');
+		out.write(large);
+		out.flush();
+		assertTrue(sink.toString("UTF-8").endsWith(new String(large, StandardCharsets.UTF_8)));
+	}
+}
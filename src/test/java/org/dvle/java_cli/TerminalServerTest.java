@@ -0,0 +1,273 @@
+package org.dvle.java_cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the TCP server, on the loopback interface.
+ *
+ * @author federicosilvestri
+ *
+ */
+class TerminalServerTest {
+
+	private TerminalServer server;
+	private InetSocketAddress address;
+
+	private final CountDownLatch blocked = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicInteger counted = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		CommandRegistry registry = new CommandRegistry();
+		ArgumentDescription textDescription = new ArgumentDescription("text", ArgumentValueType.STRING, true);
+		registry.addCommand(new ParsedCommandDescription("echo") {
+
+			{
+				addArgument(textDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				exe.out.println("echo:" + arguments.getString(textDescription));
+			}
+
+			@Override
+			public boolean isThreadSafe() {
+				return true;
+			}
+
+		});
+
+		registry.addCommand(new ParsedCommandDescription("fail") {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				throw new IllegalStateException("broken command");
+			}
+
+		});
+
+		registry.addCommand(new ParsedCommandDescription("block") {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+		});
+
+		registry.addCommand(new ParsedCommandDescription("count") {
+
+			{
+				addArgument(new ArgumentDescription("text", ArgumentValueType.STRING, false));
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				counted.incrementAndGet();
+			}
+
+		});
+
+		server = new TerminalServer(registry, ExitCommandDescription.DEFAULT);
+		address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+	}
+
+	private Socket connect() throws IOException {
+		Socket socket = new Socket(address.getAddress(), address.getPort());
+		socket.setSoTimeout(10_000);
+		return socket;
+	}
+
+	private static void send(Socket socket, String text) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write(text.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	/**
+	 * Read lines until one contains the expected text.
+	 */
+	private static void expect(BufferedReader reader, String expected) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.contains(expected)) {
+				return;
+			}
+		}
+		fail("Expected \"" + expected + "\" before the end of the stream");
+	}
+
+	private static BufferedReader reader(Socket socket) throws IOException {
+		return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void testSessionsAreIndependent() throws Exception {
+		try (Socket first = connect(); Socket second = connect()) {
+			BufferedReader firstReader = reader(first);
+			BufferedReader secondReader = reader(second);
+
+			send(first, "echo --text=one\r\n");
+			send(second, "echo --text=two\nunknown\n");
+			expect(firstReader, "echo:one");
+			expect(secondReader, "echo:two");
+			expect(secondReader, "Command not found");
+
+			// a line split in many packets
+			send(first, "echo --te");
+			Thread.sleep(50);
+			send(first, "xt=caffè\n");
+			expect(firstReader, "echo:caffè");
+		}
+	}
+
+	@Test
+	void testFailedCommandKeepsSession() throws Exception {
+		try (Socket socket = connect()) {
+			BufferedReader reader = reader(socket);
+
+			// the lines after a command that throws are still executed
+			send(socket, "fail\necho --text=after\n");
+			expect(reader, "broken command");
+			expect(reader, "echo:after");
+
+			send(socket, "fail\n");
+			expect(reader, "broken command");
+			send(socket, "echo --text=again\n");
+			expect(reader, "echo:again");
+		}
+	}
+
+	@Test
+	void testExitClosesSession() throws Exception {
+		try (Socket socket = connect()) {
+			BufferedReader reader = reader(socket);
+			send(socket, "echo --text=bye\nexit\necho --text=never\n");
+
+			expect(reader, "echo:bye");
+			String line;
+			while ((line = reader.readLine()) != null) {
+				assertFalse(line.contains("never"));
+			}
+		}
+
+		for (int i = 0; i < 100 && server.getSessionCount() > 0; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(0, server.getSessionCount());
+	}
+
+	@Test
+	void testManyIdleSessions() throws Exception {
+		List<Socket> sockets = new ArrayList<>();
+		try {
+			for (int i = 0; i < 200; i++) {
+				sockets.add(connect());
+			}
+
+			for (int i = 0; i < 100 && server.getSessionCount() < sockets.size(); i++) {
+				Thread.sleep(20);
+			}
+			assertEquals(sockets.size(), server.getSessionCount());
+
+			Socket last = sockets.get(sockets.size() - 1);
+			send(last, "echo --text=last\n");
+			expect(reader(last), "echo:last");
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	@Test
+	void testFloodIsThrottled() throws Exception {
+		// a flood much larger than the pending input and the socket buffers
+		char[] text = new char[1000];
+		Arrays.fill(text, 'x');
+		byte[] line = ("count --text=" + new String(text) + "\n").getBytes(StandardCharsets.UTF_8);
+		int lines = 48 * 1024;
+
+		try (Socket socket = connect()) {
+			send(socket, "block\n");
+			assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+			Thread drainer = new Thread(() -> {
+				try {
+					BufferedReader reader = reader(socket);
+					while (reader.readLine() != null) {
+						// the prompts are discarded
+					}
+				} catch (IOException e) {
+					// the socket is closed
+				}
+			});
+			drainer.setDaemon(true);
+			drainer.start();
+
+			Thread flooder = new Thread(() -> {
+				try {
+					OutputStream out = socket.getOutputStream();
+					for (int i = 0; i < lines; i++) {
+						out.write(line);
+					}
+					out.flush();
+				} catch (IOException e) {
+					// the socket is closed
+				}
+			});
+			flooder.setDaemon(true);
+			flooder.start();
+
+			// the server does not read the lines that the blocked session cannot execute
+			flooder.join(1000);
+			assertTrue(flooder.isAlive());
+			assertEquals(0, counted.get());
+
+			// and reads them again once they are executed, without losing any
+			release.countDown();
+			flooder.join(60_000);
+			assertFalse(flooder.isAlive());
+			for (int i = 0; i < 3000 && counted.get() < lines; i++) {
+				Thread.sleep(20);
+			}
+			assertEquals(lines, counted.get());
+		}
+	}
+}
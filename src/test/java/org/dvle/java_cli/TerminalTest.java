@@ -4,12 +4,23 @@
 package org.dvle.java_cli;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -91,20 +102,170 @@ class TerminalTest {
 		}
 	}
 
+	@Test
+	void testRunEndOfInput() throws Exception {
+		ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+		Terminal inputTerminal = new Terminal(new ByteArrayInputStream("\r\n\r\n".getBytes()),
+				new PrintStream(outputBuffer), exitCommandDescription);
+
+		// the terminal stops at the end of the input, without the exit command
+		inputTerminal.run();
+		assertTrue(outputBuffer.toString().contains("Goodbye by Terminal"));
+
+		// the output is not a console, the colors are removed
+		assertEquals(-1, outputBuffer.toString().indexOf('\u001b'));
+	}
+
 	/**
-	 * Test method for
-	 * {@link unipisa.cd.rcl.turing.com.term.Terminal#addListener(unipisa.cd.rcl.turing.com.term.CommandListener)}.
+	 * Test method for {@link ExitCommandDescription#isCalled(String)}. An exit
+	 * command that overrides it decides which lines stop the terminal.
 	 */
 	@Test
-	void testAddListener() {
+	void testExitCommandIsCalled() {
+		ExitCommandDescription quit = new ExitCommandDescription("quit") {
+
+			@Override
+			public boolean isCalled(String line) {
+				return line.equals("quit") || line.equals("q");
+			}
+		};
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		Terminal quitTerminal = new Terminal(new ByteArrayInputStream(new byte[0]),
+				new PrintStream(new ByteArrayOutputStream()), quit);
+		assertFalse(quitTerminal.executeLine("exit", context));
+		assertFalse(quitTerminal.isStopped());
+		assertTrue(quitTerminal.executeLine("q", context));
+		assertTrue(quitTerminal.isStopped());
+
+		// the default exit command is detected without isCalled
+		assertTrue(terminal.executeLine("exit", context));
+		assertTrue(terminal.isStopped());
 	}
 
 	/**
-	 * Test method for
-	 * {@link unipisa.cd.rcl.turing.com.term.Terminal#removeListener(unipisa.cd.rcl.turing.com.term.CommandListener)}.
+	 * A listener that records the events it receives.
+	 */
+	private static final class RecordingListener implements CommandListener {
+
+		private final List<String> received;
+
+		private final String name;
+
+		private final boolean consume;
+
+		RecordingListener(List<String> received, String name, boolean consume) {
+			this.received = received;
+			this.name = name;
+			this.consume = consume;
+		}
+
+		@Override
+		public void commandRequest(CommandEvent cmdEvt) {
+			received.add(name + ":" + cmdEvt.commandInvocation.command.name);
+			if (consume) {
+				cmdEvt.consume();
+			}
+		}
+
+		@Override
+		public void stopRequest(CommandEvent cmdEvt) {
+		}
+	}
+
+	/**
+	 * Add a command that sends an event to the listeners.
+	 */
+	private void addSendingCommand(String name) {
+		terminal.addCommand(new ParsedCommandDescription(name) {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				exe.sendCommandToHandlers(null);
+			}
+
+		});
+	}
+
+	/**
+	 * Test method for {@link Terminal#addListener(CommandListener)}. Listeners
+	 * do not need to be comparable, they subscribe by name or filter and are
+	 * called in order until the event is consumed.
+	 */
+	@Test
+	void testAddListener() throws InterruptedException {
+		addSendingCommand("first");
+		addSendingCommand("second");
+		List<String> received = Collections.synchronizedList(new ArrayList<>());
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		CommandListener all = new RecordingListener(received, "all", false);
+		terminal.addListener(all);
+		terminal.addListener(all);
+		terminal.addListener("second", new RecordingListener(received, "named", true));
+		terminal.addListener(name -> name.startsWith("f"), new RecordingListener(received, "filtered", false), false);
+		terminal.addListener(name -> true, new RecordingListener(received, "last", false), false);
+
+		assertTrue(terminal.executeLine("first", context));
+		assertEquals(Arrays.asList("all:first", "filtered:first", "last:first"), received);
+
+		// the named listener consumes the event
+		received.clear();
+		assertTrue(terminal.executeLine("second", context));
+		assertEquals(Arrays.asList("all:second", "named:second"), received);
+
+		// independent listeners receive the consumed events too, the command does not wait for them
+		received.clear();
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch delivered = new CountDownLatch(1);
+		terminal.setListenerExecutor(runnable -> new Thread(runnable).start());
+		terminal.addListener(name -> true, new CommandListener() {
+
+			@Override
+			public void commandRequest(CommandEvent cmdEvt) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				received.add("independent:" + cmdEvt.commandInvocation.command.name);
+				delivered.countDown();
+			}
+
+			@Override
+			public void stopRequest(CommandEvent cmdEvt) {
+			}
+		}, true);
+		assertTrue(terminal.executeLine("second", context));
+		assertEquals(Arrays.asList("all:second", "named:second"), received);
+
+		release.countDown();
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		assertTrue(received.contains("independent:second"));
+		assertEquals(3, received.size());
+	}
+
+	/**
+	 * Test method for {@link Terminal#removeListener(CommandListener)}. All the
+	 * subscriptions of the listener are removed.
 	 */
 	@Test
 	void testRemoveListener() {
+		addSendingCommand("first");
+		List<String> received = new ArrayList<>();
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		CommandListener listener = new RecordingListener(received, "listener", false);
+		terminal.addListener(listener);
+		terminal.addListener("first", listener);
+		assertTrue(terminal.executeLine("first", context));
+		assertEquals(Arrays.asList("listener:first"), received);
+
+		terminal.removeListener(listener);
+		assertTrue(terminal.executeLine("first", context));
+		assertEquals(1, received.size());
+		assertThrows(RuntimeException.class, () -> terminal.removeListener(listener));
 	}
 
 	/**
@@ -139,4 +300,478 @@ class TerminalTest {
 		};
 		assertThrows(RuntimeException.class, () -> terminal.addCommand(c2));
 	}
+
+	/**
+	 * Test method for {@link Terminal#freeze()}. Frozen commands are still
+	 * executed, but commands and arguments cannot be added anymore.
+	 */
+	@Test
+	void testFreeze() {
+		ArgumentDescription sizeDescription = new ArgumentDescription("size", ArgumentValueType.INTEGER, true);
+		int[] received = new int[1];
+		CommandDescription command = new ParsedCommandDescription(TEST_COMMAND_NAME) {
+
+			{
+				addArgument(sizeDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				received[0] = arguments.getInt(sizeDescription);
+			}
+
+		};
+		terminal.addCommand(command);
+		terminal.freeze();
+		terminal.freeze();
+
+		assertTrue(terminal.isFrozen());
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+		assertTrue(terminal.executeLine(TEST_COMMAND_NAME + " --size=5", context));
+		assertEquals(5, received[0]);
+		assertFalse(terminal.executeLine("unknown", context));
+
+		assertThrows(IllegalStateException.class, () -> terminal.addCommand(new ParsedCommandDescription("other") {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {
+			}
+		}));
+		assertThrows(IllegalStateException.class,
+				() -> command.addArgument(new ArgumentDescription("verbose")));
+	}
+
+	/**
+	 * Test method for {@link Terminal#runBatch(InputStream)}. Empty lines are
+	 * skipped, errors are counted and the batch stops at the exit command.
+	 */
+	@Test
+	void testRunBatch() throws Exception {
+		int[] counter = new int[1];
+		terminal.addCommand(new CommandDescription(TEST_COMMAND_NAME) {
+
+			@Override
+			public void runCommand(Map<ArgumentDescription, Object> arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				counter[0]++;
+				exe.out.println("ok");
+			}
+
+		});
+
+		String script = TEST_COMMAND_NAME + "\n\n" + TEST_COMMAND_NAME + "\nunknown\n" + TEST_COMMAND_NAME
+				+ " --x\nexit\n" + TEST_COMMAND_NAME + "\n";
+		BatchSummary summary = terminal.runBatch(new ByteArrayInputStream(script.getBytes()));
+
+		assertEquals(2, counter[0]);
+		assertEquals(3, summary.executed);
+		assertEquals(2, summary.failed);
+	}
+
+	/**
+	 * Test method for {@link Terminal#runParallelBatch(InputStream, boolean)}.
+	 * With ordered output, lines executed in parallel are written in the order of
+	 * the script.
+	 */
+	@Test
+	void testRunParallelBatch() throws Exception {
+		ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+		Terminal parallelTerminal = new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(outputBuffer),
+				exitCommandDescription);
+		ArgumentDescription valueDescription = new ArgumentDescription("value", ArgumentValueType.INTEGER, true);
+		CommandDescription echo = new CommandDescription(TEST_COMMAND_NAME) {
+
+			{
+				addArgument(valueDescription);
+			}
+
+			@Override
+			public void runCommand(Map<ArgumentDescription, Object> arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				exe.out.println(arguments.get(valueDescription));
+			}
+
+			@Override
+			public boolean isThreadSafe() {
+				return true;
+			}
+
+		};
+		parallelTerminal.addCommand(echo);
+
+		StringBuilder script = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		int lines = 10_000;
+		for (int i = 0; i < lines; i++) {
+			script.append(TEST_COMMAND_NAME).append(" --value=").append(i).append('\n');
+			expected.append(i).append(System.lineSeparator());
+		}
+		script.append("unknown\n");
+
+		BatchSummary summary = parallelTerminal
+				.runParallelBatch(new ByteArrayInputStream(script.toString().getBytes()), true);
+
+		assertEquals(lines, summary.executed);
+		assertEquals(1, summary.failed);
+		assertTrue(outputBuffer.toString().startsWith(expected.toString()));
+	}
+
+	/**
+	 * Test method for {@link Terminal#runParallelBatch(InputStream, boolean)}. A
+	 * command that throws an exception or an error fails the rest of its chunk,
+	 * the other chunks are still executed and written.
+	 */
+	@Test
+	void testRunParallelBatchFailure() throws Exception {
+		ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+		Terminal parallelTerminal = new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(outputBuffer),
+				exitCommandDescription);
+		ArgumentDescription valueDescription = new ArgumentDescription("value", ArgumentValueType.INTEGER, true);
+		parallelTerminal.addCommand(new ParsedCommandDescription(TEST_COMMAND_NAME) {
+
+			{
+				addArgument(valueDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {
+				int value = arguments.getInt(valueDescription);
+				if (value == 1500) {
+					throw new IllegalStateException("broken");
+				} else if (value == 2500) {
+					throw new AssertionError("error");
+				}
+				exe.out.println(value);
+			}
+
+			@Override
+			public boolean isThreadSafe() {
+				return true;
+			}
+
+		});
+
+		int chunk = ShardedScriptRunner.DEFAULT_CHUNK_SIZE;
+		int lines = chunk * 3;
+		StringBuilder script = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			script.append(TEST_COMMAND_NAME).append(" --value=").append(i).append('\n');
+		}
+
+		BatchSummary summary = parallelTerminal
+				.runParallelBatch(new ByteArrayInputStream(script.toString().getBytes()), true);
+
+		// an error fails the rest of its chunk too
+		long failed = (2 * chunk - 1500) + (3 * chunk - 2500);
+		assertEquals(lines - failed, summary.executed);
+		assertEquals(failed, summary.failed);
+
+		String newLine = System.lineSeparator();
+		String output = outputBuffer.toString();
+		// the pool can rethrow a copy of the exception that wraps the original one
+		int failure = output.indexOf("IllegalStateException");
+		assertTrue(output.indexOf(newLine + "1499" + newLine) < failure);
+		assertTrue(output.indexOf("broken", failure) < output.indexOf(newLine + (2 * chunk) + newLine));
+		assertFalse(output.contains(newLine + "1500" + newLine));
+		assertTrue(output.indexOf(newLine + "2499" + newLine) < output.indexOf("AssertionError"));
+		assertFalse(output.contains(newLine + "2500" + newLine));
+	}
+
+	/**
+	 * Test method for {@link Terminal#enableJobControl(int)}. Background commands
+	 * are bounded, tagged with the job identifier and handled by the built-in
+	 * commands.
+	 */
+	@Test
+	void testJobControl() throws Exception {
+		ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+		Terminal jobTerminal = new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(outputBuffer),
+				exitCommandDescription);
+		CountDownLatch latch = new CountDownLatch(1);
+		jobTerminal.addCommand(new CommandDescription(TEST_COMMAND_NAME) {
+
+			@Override
+			public void runCommand(Map<ArgumentDescription, Object> arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				exe.out.print("first ");
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					throw new CommandExecutionException("interrupted", e);
+				}
+				exe.out.println("line");
+				exe.out.println("second line");
+			}
+
+		});
+		jobTerminal.enableJobControl(1);
+
+		String script = TEST_COMMAND_NAME + " &\n" + TEST_COMMAND_NAME + "&\n";
+		BatchSummary summary = jobTerminal.runBatch(new ByteArrayInputStream(script.getBytes()));
+		assertEquals(1, summary.executed);
+		assertEquals(1, summary.failed);
+
+		latch.countDown();
+		summary = jobTerminal.runBatch(new ByteArrayInputStream("wait\njobs\njobs\n".getBytes()));
+		assertEquals(3, summary.executed);
+
+		String output = outputBuffer.toString();
+		String newLine = System.lineSeparator();
+		assertTrue(output.contains("[1] first line" + newLine + "[1] second line" + newLine));
+		assertEquals(output.indexOf("[1] Done " + TEST_COMMAND_NAME), output.lastIndexOf("[1] Done"));
+	}
+
+	/**
+	 * Test method for {@link Terminal#enableJobControl(int)}. A command that is
+	 * not thread safe, blocked in a job, does not block the same command on the
+	 * interactive path: only the parallel scripts serialize it.
+	 */
+	@Test
+	void testUnsafeCommandNotSerialized() throws Exception {
+		Terminal jobTerminal = new Terminal(new ByteArrayInputStream(new byte[0]),
+				new PrintStream(new ByteArrayOutputStream()), exitCommandDescription);
+		ArgumentDescription waitDescription = new ArgumentDescription("wait");
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		jobTerminal.addCommand(new CommandDescription(TEST_COMMAND_NAME) {
+
+			{
+				addArgument(waitDescription);
+			}
+
+			@Override
+			public void runCommand(Map<ArgumentDescription, Object> arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				if (arguments.containsKey(waitDescription)) {
+					running.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new CommandExecutionException("interrupted", e);
+					}
+				}
+			}
+
+		});
+		jobTerminal.enableJobControl(1);
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+
+		try {
+			assertTrue(jobTerminal.executeLine(TEST_COMMAND_NAME + " --wait &", context));
+			assertTrue(running.await(10, TimeUnit.SECONDS));
+			assertTimeoutPreemptively(Duration.ofSeconds(10),
+					() -> assertTrue(jobTerminal.executeLine(TEST_COMMAND_NAME, context)));
+		} finally {
+			release.countDown();
+		}
+	}
+
+	/**
+	 * Test method for {@link Terminal#enableJobControl(int)}. A killed job keeps
+	 * its permit until the command returns, and the terminated jobs not yet
+	 * reported are bounded.
+	 */
+	@Test
+	void testJobControlBounds() throws Exception {
+		ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+		Terminal jobTerminal = new Terminal(new ByteArrayInputStream(new byte[0]), new PrintStream(outputBuffer),
+				exitCommandDescription);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch latch = new CountDownLatch(1);
+		jobTerminal.addCommand(new ParsedCommandDescription(TEST_COMMAND_NAME) {
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) {
+				running.countDown();
+
+				// the command ignores the interruption of kill
+				while (latch.getCount() > 0) {
+					try {
+						latch.await();
+					} catch (InterruptedException e) {
+						// keep running
+					}
+				}
+			}
+
+		});
+		jobTerminal.enableJobControl(1);
+
+		String background = TEST_COMMAND_NAME + " &\n";
+		assertEquals(1, jobTerminal.runBatch(new ByteArrayInputStream(background.getBytes())).executed);
+		assertTrue(running.await(10, TimeUnit.SECONDS));
+		assertEquals(1, jobTerminal.runBatch(new ByteArrayInputStream("kill --id=1\n".getBytes())).executed);
+
+		// the killed command is still running
+		assertEquals(1, jobTerminal.runBatch(new ByteArrayInputStream(background.getBytes())).failed);
+
+		latch.countDown();
+		int jobs = 1;
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (jobs < JobControl.MAX_TERMINATED_JOBS + 10) {
+			BatchSummary summary = jobTerminal
+					.runBatch(new ByteArrayInputStream((background + "wait\n").getBytes()));
+			if (summary.failed == 0) {
+				jobs++;
+			} else {
+				assertTrue(System.nanoTime() < deadline);
+			}
+		}
+
+		outputBuffer.reset();
+		jobTerminal.runBatch(new ByteArrayInputStream("jobs\njobs\n".getBytes()));
+		String output = outputBuffer.toString();
+		assertTrue(output.startsWith((jobs - JobControl.MAX_TERMINATED_JOBS) + " terminated jobs were not reported"));
+		assertTrue(output.contains("[" + jobs + "] Done"));
+		assertEquals(JobControl.MAX_TERMINATED_JOBS + 1, output.split(System.lineSeparator()).length);
+	}
+
+	/**
+	 * Test method for {@link ParsedArguments}: primitive getters, default values,
+	 * type checks and the map view.
+	 */
+	@Test
+	void testParsedArguments() throws CommandExecutionException {
+		ArgumentDescription countDescription = new ArgumentDescription("count", ArgumentValueType.INTEGER, true);
+		ArgumentDescription totalDescription = new ArgumentDescription("total", ArgumentValueType.LONG, false);
+		ArgumentDescription ratioDescription = new ArgumentDescription("ratio", ArgumentValueType.DECIMAL, false);
+		ArgumentDescription forceDescription = new ArgumentDescription("force", ArgumentValueType.BOOLEAN, false);
+		ArgumentDescription nameDescription = new ArgumentDescription("name", ArgumentValueType.STRING, false);
+		ArgumentDescription quietDescription = new ArgumentDescription("quiet");
+		ParsedArguments[] received = new ParsedArguments[1];
+		Map<?, ?>[] receivedMap = new Map<?, ?>[1];
+		CommandDescription parsed = new ParsedCommandDescription(TEST_COMMAND_NAME) {
+
+			{
+				addArgument(countDescription);
+				addArgument(totalDescription);
+				addArgument(ratioDescription);
+				addArgument(forceDescription);
+				addArgument(nameDescription);
+				addArgument(quietDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				received[0] = arguments.copy();
+			}
+
+		};
+		terminal.addCommand(parsed);
+		terminal.addCommand(new CommandDescription("legacy") {
+
+			{
+				addArgument(countDescription);
+			}
+
+			@Override
+			public void runCommand(Map<ArgumentDescription, Object> arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				receivedMap[0] = new java.util.HashMap<>(arguments);
+			}
+
+		});
+
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+		assertTrue(terminal.executeLine(
+				TEST_COMMAND_NAME + " --count=7 --total=12345678901 --ratio=0.5 --force=TRUE --quiet", context));
+
+		ParsedArguments arguments = received[0];
+		assertEquals(5, arguments.size());
+		assertEquals(7, arguments.getInt(countDescription));
+		assertEquals(12345678901L, arguments.getLong(totalDescription));
+		assertEquals(0.5, arguments.getDouble(ratioDescription));
+		assertTrue(arguments.getBoolean(forceDescription));
+		assertTrue(arguments.has(quietDescription));
+		assertFalse(arguments.has(nameDescription));
+		assertNull(arguments.getString(nameDescription));
+		assertEquals(Integer.valueOf(7), arguments.get(countDescription));
+		assertEquals(Boolean.TRUE, arguments.asMap().get(forceDescription));
+		assertTrue(arguments.asMap().containsKey(quietDescription));
+		assertNull(arguments.asMap().get(quietDescription));
+		assertThrows(IllegalArgumentException.class, () -> arguments.getLong(countDescription));
+
+		assertTrue(terminal.executeLine(TEST_COMMAND_NAME + " --count=1", context));
+		assertEquals(42L, received[0].getLong(totalDescription, 42L));
+		assertFalse(received[0].getBoolean(forceDescription, false));
+		assertThrows(java.util.NoSuchElementException.class, () -> received[0].getDouble(ratioDescription));
+
+		// commands that implement the map version receive the same values
+		assertTrue(terminal.executeLine("legacy --count=3", context));
+		assertEquals(Integer.valueOf(3), receivedMap[0].get(countDescription));
+
+		// and the map given to a command that reads the parsed arguments is converted
+		Map<ArgumentDescription, Object> map = new java.util.HashMap<>();
+		map.put(countDescription, 9);
+		map.put(ratioDescription, 1.5);
+		map.put(forceDescription, Boolean.TRUE);
+		map.put(quietDescription, null);
+		parsed.runCommand(map, null);
+		assertEquals(4, received[0].size());
+		assertEquals(9, received[0].getInt(countDescription));
+		assertEquals(1.5, received[0].getDouble(ratioDescription));
+		assertTrue(received[0].getBoolean(forceDescription));
+		assertTrue(received[0].has(quietDescription));
+		assertThrows(IllegalArgumentException.class,
+				() -> parsed.runCommand(Map.of(new ArgumentDescription("other"), ""), null));
+	}
+
+	/**
+	 * Test method for {@link Terminal#executeLine(CharSequence, LineContext)}.
+	 * Once the invocation and the environment of the context are created, the
+	 * execution of a command must not allocate memory.
+	 */
+	@Test
+	void testExecuteLineDoesNotAllocate() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		ArgumentDescription sizeDescription = new ArgumentDescription("size", ArgumentValueType.INTEGER, true);
+		ArgumentDescription forceDescription = new ArgumentDescription("force", ArgumentValueType.BOOLEAN, false);
+		ArgumentDescription verboseDescription = new ArgumentDescription("verbose");
+		long[] checksum = new long[1];
+		terminal.addCommand(new ParsedCommandDescription(TEST_COMMAND_NAME) {
+
+			{
+				addArgument(sizeDescription);
+				addArgument(forceDescription);
+				addArgument(verboseDescription);
+			}
+
+			@Override
+			public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe)
+					throws CommandExecutionException {
+				checksum[0] += arguments.getInt(sizeDescription);
+				if (arguments.has(verboseDescription) && arguments.getBoolean(forceDescription, false)) {
+					checksum[0]++;
+				}
+			}
+
+		});
+
+		LineContext context = new LineContext(new PrintStream(new ByteArrayOutputStream()));
+		String line = TEST_COMMAND_NAME + " --size=42 --force=true --verbose";
+		long threadId = Thread.currentThread().getId();
+
+		// warm up, it creates the pooled objects and compiles the path
+		for (int i = 0; i < 20_000; i++) {
+			assertTrue(terminal.executeLine(line, context));
+		}
+
+		int iterations = 10_000;
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < iterations; i++) {
+			terminal.executeLine(line, context);
+		}
+		long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+		assertEquals(30_000L * 43, checksum[0]);
+		// a small tolerance for the measurement itself
+		assertTrue(allocated < 1024, "Allocated " + allocated + " bytes for " + iterations + " commands");
+	}
 }
@@ -0,0 +1,27 @@
+package org.dvle.java_cli.commands;
+
+import java.util.Map;
+
+import org.dvle.java_cli.ArgumentDescription;
+import org.dvle.java_cli.CommandDescription;
+import org.dvle.java_cli.CommandExecutionException;
+import org.dvle.java_cli.ExecutionEnvironment;
+
+/**
+ * A command loaded by the tests of the command loader.
+ *
+ * @author federicosilvestri
+ *
+ */
+public class ByeCommand extends CommandDescription {
+
+	public ByeCommand() {
+		super("bye");
+	}
+
+	@Override
+	public void runCommand(Map<ArgumentDescription, Object> arguments, ExecutionEnvironment exe)
+			throws CommandExecutionException {
+		exe.out.println("Bye");
+	}
+}
@@ -0,0 +1,30 @@
+package org.dvle.java_cli.commands;
+
+import org.dvle.java_cli.CommandExecutionException;
+import org.dvle.java_cli.CommandInfo;
+import org.dvle.java_cli.ExecutionEnvironment;
+import org.dvle.java_cli.ParsedArguments;
+import org.dvle.java_cli.ParsedCommandDescription;
+
+/**
+ * A command that keeps the number of its executions in a field, so it prints 1
+ * when a new instance is created for each execution.
+ *
+ * @author federicosilvestri
+ *
+ */
+@CommandInfo(name = "counter", perInvocation = true)
+public class CounterCommand extends ParsedCommandDescription {
+
+	private int executions;
+
+	public CounterCommand() {
+		super("counter");
+	}
+
+	@Override
+	public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) throws CommandExecutionException {
+		executions++;
+		exe.out.println("Executions " + executions);
+	}
+}
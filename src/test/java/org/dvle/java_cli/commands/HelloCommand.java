@@ -0,0 +1,43 @@
+package org.dvle.java_cli.commands;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dvle.java_cli.ArgumentDescription;
+import org.dvle.java_cli.ArgumentDescription.ArgumentValueType;
+import org.dvle.java_cli.CommandExecutionException;
+import org.dvle.java_cli.CommandInfo;
+import org.dvle.java_cli.CommandInfo.Argument;
+import org.dvle.java_cli.ExecutionEnvironment;
+import org.dvle.java_cli.ParsedArguments;
+import org.dvle.java_cli.ParsedCommandDescription;
+
+/**
+ * A command loaded by the tests of the command loader, that is loaded at the
+ * first execution.
+ *
+ * @author federicosilvestri
+ *
+ */
+@CommandInfo(name = "hello", arguments = @Argument(name = "name", type = ArgumentValueType.STRING))
+public class HelloCommand extends ParsedCommandDescription {
+
+	/**
+	 * The number of instances created.
+	 */
+	public static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	private final ArgumentDescription nameDescription;
+
+	public HelloCommand() {
+		super("hello");
+		nameDescription = new ArgumentDescription("name", ArgumentValueType.STRING, false);
+		addArgument(nameDescription);
+		INSTANCES.incrementAndGet();
+	}
+
+	@Override
+	public void runCommand(ParsedArguments arguments, ExecutionEnvironment exe) throws CommandExecutionException {
+		String name = arguments.getString(nameDescription);
+		exe.out.println("Hello " + (name == null ? "world" : name));
+	}
+}